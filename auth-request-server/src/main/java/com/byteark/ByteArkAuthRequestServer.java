@@ -0,0 +1,302 @@
+package com.byteark;
+
+import com.sun.net.httpserver.Headers;
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.util.Objects;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.LongSupplier;
+
+/**
+ * Local HTTP endpoint for nginx {@code auth_request} that verifies the
+ * original request URI of each subrequest.
+ *
+ * <pre>
+ * location = /auth {
+ *     internal;
+ *     proxy_pass http://127.0.0.1:8080;
+ *     proxy_pass_request_body off;
+ *     proxy_set_header Content-Length "";
+ *     proxy_set_header X-Original-URI $request_uri;
+ *     proxy_set_header X-Original-Host $host;
+ *     proxy_set_header X-Real-IP $remote_addr;
+ * }
+ * </pre>
+ *
+ * <p>Any path is answered: 204 when the URI verifies, 403 otherwise, with
+ * the {@link ByteArkSignedUrlVerifyResult} name in the
+ * {@code X-ByteArk-Verify-Result} header. A request without the URI header
+ * is a configuration error and gets 400, and a verification that throws
+ * gets 500 with {@value #ERROR_RESULT} in the header. The host is taken from the host
+ * header, falling back to {@code Host}, without its port, and the client
+ * address from {@code X-Real-IP}.
+ *
+ * <p>Requests run on virtual threads when the JDK has them, otherwise on a
+ * bounded pool that runs excess requests on the accepting thread, which
+ * slows down accepting instead of queueing without limit.
+ */
+public final class ByteArkAuthRequestServer implements AutoCloseable {
+    public static final String RESULT_HEADER = "X-ByteArk-Verify-Result";
+    /**
+     * The {@link #RESULT_HEADER} value of a 500 response, sent when
+     * verification threw.
+     */
+    public static final String ERROR_RESULT = "ERROR";
+
+    private interface Verifier {
+        ByteArkSignedUrlVerifyResult verify(String host,
+                                            String path,
+                                            CharSequence rawQuery,
+                                            CharSequence clientIp,
+                                            long now);
+    }
+
+    private final Verifier verifier;
+    private final String uriHeader;
+    private final String hostHeader;
+    private final String clientIpHeader;
+    private final LongSupplier clock;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final boolean virtualThreads;
+
+    private ByteArkAuthRequestServer(Builder builder) throws IOException {
+        this.verifier = builder.verifier;
+        this.uriHeader = builder.uriHeader;
+        this.hostHeader = builder.hostHeader;
+        this.clientIpHeader = builder.clientIpHeader;
+        this.clock = builder.clock;
+        ExecutorService virtual = builder.threads == 0 ? newVirtualThreadExecutor() : null;
+        this.virtualThreads = virtual != null;
+        this.executor = virtual != null ? virtual : newBoundedExecutor(
+                builder.threads > 0 ? builder.threads : Runtime.getRuntime().availableProcessors() * 2,
+                builder.queueSize);
+        this.server = HttpServer.create(builder.address, builder.backlog);
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+    }
+
+    public ByteArkAuthRequestServer start() {
+        server.start();
+        return this;
+    }
+
+    /**
+     * The bound address, with the actual port when started on port 0.
+     */
+    public InetSocketAddress getAddress() {
+        return server.getAddress();
+    }
+
+    public boolean usesVirtualThreads() {
+        return virtualThreads;
+    }
+
+    /**
+     * Stops accepting and waits up to {@code delaySeconds} for requests in
+     * progress.
+     */
+    public void stop(int delaySeconds) {
+        server.stop(delaySeconds);
+        executor.shutdown();
+    }
+
+    @Override
+    public void close() {
+        stop(0);
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try {
+            drain(exchange.getRequestBody());
+            Headers headers = exchange.getRequestHeaders();
+            String uri = headers.getFirst(uriHeader);
+            String host = headers.getFirst(hostHeader);
+            if (host == null) {
+                host = headers.getFirst("Host");
+            }
+            if (uri == null || host == null) {
+                exchange.sendResponseHeaders(400, -1);
+                return;
+            }
+
+            int queryStart = uri.indexOf('?');
+            int fragment = uri.indexOf('#');
+            int pathEnd = queryStart >= 0 ? queryStart : fragment >= 0 ? fragment : uri.length();
+            String query = queryStart < 0
+                    ? null
+                    : uri.substring(queryStart + 1, fragment > queryStart ? fragment : uri.length());
+            ByteArkSignedUrlVerifyResult result;
+            try {
+                result = verifier.verify(
+                        stripPort(host),
+                        uri.substring(0, pathEnd),
+                        query,
+                        headers.getFirst(clientIpHeader),
+                        clock.getAsLong());
+            } catch (RuntimeException e) {
+                // Answered, so that nginx sees a 5xx rather than a reset connection
+                exchange.getResponseHeaders().set(RESULT_HEADER, ERROR_RESULT);
+                exchange.sendResponseHeaders(500, -1);
+                return;
+            }
+            exchange.getResponseHeaders().set(RESULT_HEADER, result.name());
+            exchange.sendResponseHeaders(result.isValid() ? 204 : 403, -1);
+        } finally {
+            exchange.close();
+        }
+    }
+
+    private static void drain(InputStream body) throws IOException {
+        byte[] buffer = new byte[256];
+        while (body.read(buffer) >= 0) {
+            // discard
+        }
+    }
+
+    private static String stripPort(String host) {
+        int colon = host.lastIndexOf(':');
+        if (colon < 0 || host.indexOf(']') > colon) {
+            return host;
+        }
+        return host.substring(0, colon);
+    }
+
+    /**
+     * {@code Executors.newVirtualThreadPerTaskExecutor()}, looked up
+     * reflectively so that this class still runs on Java 8; null when the
+     * JDK does not have it or has virtual threads disabled.
+     */
+    private static ExecutorService newVirtualThreadExecutor() {
+        try {
+            return (ExecutorService) Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    private static ExecutorService newBoundedExecutor(int threads, int queueSize) {
+        AtomicInteger count = new AtomicInteger();
+        return new ThreadPoolExecutor(
+                threads,
+                threads,
+                60,
+                TimeUnit.SECONDS,
+                new ArrayBlockingQueue<>(queueSize),
+                r -> {
+                    Thread t = new Thread(r, "byteark-auth-request-" + count.incrementAndGet());
+                    t.setDaemon(true);
+                    return t;
+                },
+                new ThreadPoolExecutor.CallerRunsPolicy());
+    }
+
+    public static final class Builder {
+        private final Verifier verifier;
+        private InetSocketAddress address = new InetSocketAddress(InetAddress.getLoopbackAddress(), 8080);
+        private int backlog = 1024;
+        private int threads = 0;
+        private int queueSize = 1024;
+        private String uriHeader = "X-Original-URI";
+        private String hostHeader = "X-Original-Host";
+        private String clientIpHeader = "X-Real-IP";
+        private LongSupplier clock = () -> System.currentTimeMillis() / 1000;
+
+        public Builder(ByteArkV2UrlSigner signer) {
+            Objects.requireNonNull(signer);
+            this.verifier = signer::verifyResult;
+        }
+
+        public Builder(ByteArkV2KeyRingVerifier keyRing) {
+            Objects.requireNonNull(keyRing);
+            this.verifier = keyRing::verifyResult;
+        }
+
+        /**
+         * Defaults to 127.0.0.1:8080. Port 0 binds to any free port.
+         */
+        public Builder withAddress(InetSocketAddress address) {
+            this.address = Objects.requireNonNull(address);
+            return this;
+        }
+
+        public Builder withBacklog(int backlog) {
+            this.backlog = backlog;
+            return this;
+        }
+
+        /**
+         * Uses a pool of this many threads even when virtual threads are
+         * available. By default, virtual threads are used when available
+         * and otherwise twice the number of processors.
+         */
+        public Builder withThreads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Requests waiting for a pool thread before they run on the
+         * accepting thread. Not used with virtual threads.
+         */
+        public Builder withQueueSize(int queueSize) {
+            if (queueSize < 1) {
+                throw new IllegalArgumentException("queueSize must be positive");
+            }
+            this.queueSize = queueSize;
+            return this;
+        }
+
+        /**
+         * The header holding the original request URI (path and query).
+         */
+        public Builder withUriHeader(String uriHeader) {
+            this.uriHeader = Objects.requireNonNull(uriHeader);
+            return this;
+        }
+
+        /**
+         * The header holding the original host; {@code Host} is used when
+         * it is absent.
+         */
+        public Builder withHostHeader(String hostHeader) {
+            this.hostHeader = Objects.requireNonNull(hostHeader);
+            return this;
+        }
+
+        /**
+         * The header holding the client address, for the client_ip,
+         * client_ip_range and geo_allow policies. Those are not checked for
+         * requests without it.
+         */
+        public Builder withClientIpHeader(String clientIpHeader) {
+            this.clientIpHeader = Objects.requireNonNull(clientIpHeader);
+            return this;
+        }
+
+        /**
+         * Source of the current Unix time in seconds.
+         */
+        public Builder withClock(LongSupplier clock) {
+            this.clock = Objects.requireNonNull(clock);
+            return this;
+        }
+
+        public ByteArkAuthRequestServer build() throws IOException {
+            return new ByteArkAuthRequestServer(this);
+        }
+    }
+}
@@ -0,0 +1,187 @@
+package com.byteark;
+
+import java.io.BufferedInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.Socket;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Closed-loop load generator for {@link ByteArkAuthRequestServer}: each
+ * connection is a thread sending keep-alive subrequests back to back, the
+ * way nginx reuses upstream connections, and the report is requests per
+ * second with latency percentiles.
+ *
+ * <pre>
+ * java -cp ... com.byteark.ByteArkAuthRequestLoadGenerator [connections] [seconds] [host:port]
+ * </pre>
+ *
+ * <p>Without an address, a server is started in this JVM on a free port.
+ * Against another server, it must use the same access key as
+ * {@link #signer()}. Nine in ten requests carry a valid signature; the rest
+ * are expired or tampered.
+ */
+public class ByteArkAuthRequestLoadGenerator {
+    static final String HOST = "example.cdn.byteark.com";
+
+    public static void main(String[] args) throws Exception {
+        int connections = args.length > 0 ? Integer.parseInt(args[0]) : 16;
+        int seconds = args.length > 1 ? Integer.parseInt(args[1]) : 10;
+        ByteArkV2UrlSigner signer = signer();
+        ByteArkAuthRequestServer server = null;
+        InetSocketAddress address;
+        if (args.length > 2) {
+            int colon = args[2].lastIndexOf(':');
+            address = new InetSocketAddress(args[2].substring(0, colon), Integer.parseInt(args[2].substring(colon + 1)));
+        } else {
+            server = new ByteArkAuthRequestServer.Builder(signer)
+                    .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                    .build()
+                    .start();
+            address = server.getAddress();
+            System.out.printf("Server on %s, %s%n", address,
+                    server.usesVirtualThreads() ? "virtual threads" : "thread pool");
+        }
+
+        ByteArkHistogram latency = new ByteArkHistogram();
+        LongAdder allowed = new LongAdder();
+        LongAdder denied = new LongAdder();
+        LongAdder errors = new LongAdder();
+        long now = System.currentTimeMillis() / 1000;
+
+        // A short warmup so that the report is not dominated by JIT compilation.
+        run(address, connections, Math.min(seconds, 3), requests(signer, now), new ByteArkHistogram(),
+                new LongAdder(), new LongAdder(), new LongAdder());
+        long start = System.nanoTime();
+        run(address, connections, seconds, requests(signer, now), latency, allowed, denied, errors);
+        double elapsed = (System.nanoTime() - start) / 1e9;
+
+        System.out.printf("%d connections, %.1f s%n", connections, elapsed);
+        System.out.printf("requests/s %12.0f%n", latency.getCount() / elapsed);
+        System.out.printf("allowed    %12d%n", allowed.sum());
+        System.out.printf("denied     %12d%n", denied.sum());
+        System.out.printf("errors     %12d%n", errors.sum());
+        for (double p : new double[]{50, 90, 99, 99.9}) {
+            System.out.printf("p%-9s %12.1f us%n", p, latency.getValueAtPercentile(p) / 1e3);
+        }
+        System.out.printf("max        %12.1f us%n", latency.getMax() / 1e3);
+
+        if (server != null) {
+            server.close();
+        }
+    }
+
+    static ByteArkV2UrlSigner signer() {
+        return new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+    }
+
+    static byte[][] requests(ByteArkV2UrlSigner signer, long now) {
+        byte[][] requests = new byte[100][];
+        for (int i = 0; i < requests.length; i++) {
+            String path = "/live/" + i + "/segment.ts";
+            String query = signer.makeSignedQueryParams(HOST, path, i % 20 == 1 ? now - 60 : now + 3600, null);
+            if (i % 20 == 2) {
+                query = query.replace("x_ark_signature=", "x_ark_signature=A");
+            }
+            requests[i] = ("GET /auth HTTP/1.1\r\n"
+                    + "Host: 127.0.0.1\r\n"
+                    + "X-Original-URI: " + path + "?" + query + "\r\n"
+                    + "X-Original-Host: " + HOST + "\r\n"
+                    + "\r\n").getBytes(StandardCharsets.US_ASCII);
+        }
+        return requests;
+    }
+
+    static void run(InetSocketAddress address,
+                    int connections,
+                    int seconds,
+                    byte[][] requests,
+                    ByteArkHistogram latency,
+                    LongAdder allowed,
+                    LongAdder denied,
+                    LongAdder errors) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(seconds);
+        List<Thread> threads = new ArrayList<>();
+        for (int c = 0; c < connections; c++) {
+            int offset = c;
+            Thread thread = new Thread(() -> {
+                int i = offset;
+                while (System.nanoTime() < deadline) {
+                    try (Socket socket = new Socket(address.getAddress(), address.getPort())) {
+                        socket.setTcpNoDelay(true);
+                        OutputStream out = socket.getOutputStream();
+                        InputStream in = new BufferedInputStream(socket.getInputStream());
+                        while (System.nanoTime() < deadline) {
+                            long start = System.nanoTime();
+                            out.write(requests[i++ % requests.length]);
+                            out.flush();
+                            int status = readResponse(in);
+                            latency.record(System.nanoTime() - start);
+                            if (status == 204) {
+                                allowed.increment();
+                            } else if (status == 403) {
+                                denied.increment();
+                            } else {
+                                errors.increment();
+                            }
+                        }
+                    } catch (IOException e) {
+                        errors.increment();
+                    }
+                }
+            }, "load-" + c);
+            thread.start();
+            threads.add(thread);
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+    }
+
+    /**
+     * Reads one response and returns its status code.
+     */
+    static int readResponse(InputStream in) throws IOException {
+        StringBuilder line = new StringBuilder();
+        int status = -1;
+        long contentLength = 0;
+        while (true) {
+            line.setLength(0);
+            int b;
+            while ((b = in.read()) != '\n') {
+                if (b < 0) {
+                    throw new IOException("Connection closed");
+                }
+                if (b != '\r') {
+                    line.append((char) b);
+                }
+            }
+            if (line.length() == 0) {
+                break;
+            }
+            if (status < 0) {
+                status = Integer.parseInt(line.substring(9, 12));
+            } else if (line.length() > 15 && line.substring(0, 15).equalsIgnoreCase("content-length:")) {
+                contentLength = Long.parseLong(line.substring(15).trim());
+            }
+        }
+        for (long skipped = 0; skipped < contentLength; ) {
+            long n = in.skip(contentLength - skipped);
+            if (n <= 0) {
+                throw new IOException("Connection closed");
+            }
+            skipped += n;
+        }
+        return status;
+    }
+}
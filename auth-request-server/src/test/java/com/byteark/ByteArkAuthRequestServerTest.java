@@ -0,0 +1,126 @@
+package com.byteark;
+
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.net.HttpURLConnection;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+
+class ByteArkAuthRequestServerTest {
+    static final String HOST = "example.cdn.byteark.com";
+
+    ByteArkV2UrlSigner signer;
+    ByteArkAuthRequestServer server;
+
+    @BeforeEach
+    void setup() throws IOException {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        server = new ByteArkAuthRequestServer.Builder(signer)
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .withThreads(2)
+                .withClock(() -> 1514764700)
+                .build()
+                .start();
+    }
+
+    @AfterEach
+    void tearDown() {
+        server.close();
+    }
+
+    @Test
+    void verifyOriginalUri() throws IOException {
+        String query = signer.makeSignedQueryParams(HOST, "/path/to/file.png", 1514764800, null);
+        HttpURLConnection ok = request("/path/to/file.png?" + query, HOST + ":8443");
+        assertEquals(204, ok.getResponseCode());
+        assertEquals("OK", ok.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+
+        HttpURLConnection tampered = request("/path/to/other.png?" + query, HOST);
+        assertEquals(403, tampered.getResponseCode());
+        assertEquals("INVALID_SIGNATURE", tampered.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+
+        String expired = signer.makeSignedQueryParams(HOST, "/path/to/file.png", 1514764600, null);
+        HttpURLConnection stale = request("/path/to/file.png?" + expired + "#t=10", HOST);
+        assertEquals(403, stale.getResponseCode());
+        assertEquals("EXPIRED", stale.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+
+        HttpURLConnection unsigned = request("/path/to/file.png", HOST);
+        assertEquals(403, unsigned.getResponseCode());
+    }
+
+    @Test
+    void verifyClientIp() throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("client_ip_range", "203.0.113.0/24");
+        String uri = "/path/to/file.png?" + signer.makeSignedQueryParams(HOST, "/path/to/file.png", 1514764800, options);
+
+        HttpURLConnection inside = request(uri, HOST);
+        inside.setRequestProperty("X-Real-IP", "203.0.113.9");
+        assertEquals(204, inside.getResponseCode());
+
+        HttpURLConnection outside = request(uri, HOST);
+        outside.setRequestProperty("X-Real-IP", "198.51.100.9");
+        assertEquals(403, outside.getResponseCode());
+        assertEquals("INVALID_CONDITION", outside.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+    }
+
+    @Test
+    void rejectMissingUri() throws IOException {
+        HttpURLConnection connection = request(null, HOST);
+        assertEquals(400, connection.getResponseCode());
+        assertNull(connection.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+    }
+
+    @Test
+    void answerVerifierFailures() throws IOException {
+        ByteArkV2UrlSigner failing = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withListener(new ByteArkV2UrlSignerListener() {
+                    @Override
+                    public void onVerify(CharSequence host,
+                                         CharSequence path,
+                                         ByteArkSignedUrlVerifyResult result,
+                                         long expires,
+                                         long now,
+                                         long nanos) {
+                        throw new IllegalStateException("listener failed");
+                    }
+                })
+                .build();
+        server.close();
+        server = new ByteArkAuthRequestServer.Builder(failing)
+                .withAddress(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0))
+                .withThreads(2)
+                .build()
+                .start();
+
+        HttpURLConnection connection = request("/path/to/file.png?x_ark_expires=1", HOST);
+        assertEquals(500, connection.getResponseCode());
+        assertEquals(ByteArkAuthRequestServer.ERROR_RESULT,
+                connection.getHeaderField(ByteArkAuthRequestServer.RESULT_HEADER));
+    }
+
+    HttpURLConnection request(String uri, String host) throws IOException {
+        InetSocketAddress address = server.getAddress();
+        URL url = new URL("http", address.getHostString(), address.getPort(), "/auth");
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        if (uri != null) {
+            connection.setRequestProperty("X-Original-URI", uri);
+        }
+        connection.setRequestProperty("X-Original-Host", host);
+        return connection;
+    }
+}
@@ -0,0 +1,345 @@
+package com.byteark;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Signs a newline-delimited file of URLs into an output file with one
+ * signed URL per line, in input order.
+ *
+ * <p>The input is memory-mapped in chunks cut at line boundaries. Chunks
+ * are signed in parallel, each into its own output buffer, and written out
+ * in order; only a few chunks per thread are in flight at a time. Empty
+ * lines are kept as they are, and CRLF line endings are written as LF.
+ * Lines that are not absolute URLs are copied unchanged, so output lines
+ * stay in step with input lines, and are counted in the {@link Result}.
+ */
+public final class ByteArkBulkSigner {
+    /**
+     * Largest chunk size; a chunk and its signed output must fit in arrays.
+     */
+    public static final int MAX_CHUNK_SIZE = 1 << 28;
+    // Some JVMs reserve header words in arrays
+    private static final int MAX_ARRAY_SIZE = Integer.MAX_VALUE - 8;
+
+    private final ByteArkV2UrlSigner signer;
+    private final int threads;
+    private final int chunkSize;
+    private final ProgressListener progressListener;
+
+    /**
+     * Receives progress after each chunk is written.
+     */
+    public interface ProgressListener {
+        void onProgress(long lines, long bytesRead, long totalBytes, long elapsedNanos);
+    }
+
+    public static final class Result {
+        private final long lines;
+        private final long failedLines;
+        private final long firstFailedLine;
+        private final long bytesRead;
+        private final long bytesWritten;
+        private final long elapsedNanos;
+
+        private Result(long lines,
+                       long failedLines,
+                       long firstFailedLine,
+                       long bytesRead,
+                       long bytesWritten,
+                       long elapsedNanos) {
+            this.lines = lines;
+            this.failedLines = failedLines;
+            this.firstFailedLine = firstFailedLine;
+            this.bytesRead = bytesRead;
+            this.bytesWritten = bytesWritten;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        public long getLines() {
+            return lines;
+        }
+
+        /**
+         * Lines that could not be signed, such as relative paths, and were
+         * copied unchanged.
+         */
+        public long getFailedLines() {
+            return failedLines;
+        }
+
+        /**
+         * The 1-based number of the first line that could not be signed,
+         * or 0 if every line was signed.
+         */
+        public long getFirstFailedLine() {
+            return firstFailedLine;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getBytesWritten() {
+            return bytesWritten;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getLinesPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            String summary = String.format("%d lines in %.3f s (%.0f lines/s)",
+                    lines, elapsedNanos / 1e9, getLinesPerSecond());
+            if (failedLines > 0) {
+                summary += String.format(", %d not signed from line %d", failedLines, firstFailedLine);
+            }
+            return summary;
+        }
+    }
+
+    private ByteArkBulkSigner(Builder builder) {
+        this.signer = builder.signer;
+        this.threads = builder.threads;
+        this.chunkSize = builder.chunkSize;
+        this.progressListener = builder.progressListener;
+    }
+
+    public Result sign(Path input, Path output, long expires, Map<String, String> options) throws IOException {
+        long started = System.nanoTime();
+        ByteArkV2UrlSigner.PreparedPolicy policy = signer.prepare(options);
+        long resolvedExpires = signer.resolveExpires(expires);
+
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (FileChannel in = FileChannel.open(input, StandardOpenOption.READ);
+             FileChannel out = FileChannel.open(output,
+                     StandardOpenOption.WRITE,
+                     StandardOpenOption.CREATE,
+                     StandardOpenOption.TRUNCATE_EXISTING)) {
+            long size = in.size();
+            ArrayDeque<Future<Chunk>> pending = new ArrayDeque<>();
+            long position = 0;
+            long lines = 0;
+            long failedLines = 0;
+            long firstFailedLine = 0;
+            long bytesRead = 0;
+            long bytesWritten = 0;
+            while (position < size || !pending.isEmpty()) {
+                if (position < size && pending.size() < threads * 2) {
+                    ByteBuffer region = nextRegion(in, position, size, chunkSize);
+                    position += region.remaining();
+                    pending.add(pool.submit(() -> signChunk(region, resolvedExpires, policy)));
+                    continue;
+                }
+                Chunk chunk = await(pending.poll());
+                bytesWritten += chunk.length;
+                ByteBuffer buffer = ByteBuffer.wrap(chunk.bytes, 0, chunk.length);
+                while (buffer.hasRemaining()) {
+                    out.write(buffer);
+                }
+                if (firstFailedLine == 0 && chunk.failedLines > 0) {
+                    firstFailedLine = lines + chunk.firstFailedLine + 1;
+                }
+                failedLines += chunk.failedLines;
+                lines += chunk.lines;
+                bytesRead += chunk.bytesRead;
+                if (progressListener != null) {
+                    progressListener.onProgress(lines, bytesRead, size, System.nanoTime() - started);
+                }
+            }
+            return new Result(lines, failedLines, firstFailedLine, bytesRead, bytesWritten,
+                    System.nanoTime() - started);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    /**
+     * Maps the next chunk, ending it after the last newline it contains.
+     * A line longer than the chunk size gets a larger chunk, up to the
+     * largest region that can be mapped.
+     */
+    static ByteBuffer nextRegion(FileChannel in, long position, long size, int chunkSize) throws IOException {
+        long length = Math.min(chunkSize, size - position);
+        while (true) {
+            MappedByteBuffer mapped = in.map(FileChannel.MapMode.READ_ONLY, position, length);
+            if (position + length == size) {
+                return mapped;
+            }
+            for (int i = (int) length - 1; i >= 0; i--) {
+                if (mapped.get(i) == '\n') {
+                    ((Buffer) mapped).limit(i + 1);
+                    return mapped;
+                }
+            }
+            if (length == Integer.MAX_VALUE) {
+                throw new IOException("No line break within " + length + " bytes from offset " + position);
+            }
+            length = Math.min(Math.min(length * 2, Integer.MAX_VALUE), size - position);
+        }
+    }
+
+    private Chunk signChunk(ByteBuffer region, long expires, ByteArkV2UrlSigner.PreparedPolicy policy) {
+        // Signed URLs are typically about three times as long as the input
+        Chunk chunk = new Chunk((int) Math.min(region.remaining() * 3L + 256, MAX_ARRAY_SIZE));
+        chunk.bytesRead = region.remaining();
+        StringBuilder signed = new StringBuilder(256);
+        byte[] line = new byte[256];
+        int end = region.limit();
+        int i = region.position();
+        while (i < end) {
+            int lineEnd = i;
+            while (lineEnd < end && region.get(lineEnd) != '\n') {
+                lineEnd++;
+            }
+            int contentEnd = lineEnd;
+            if (contentEnd > i && region.get(contentEnd - 1) == '\r') {
+                contentEnd--;
+            }
+            int length = contentEnd - i;
+            if (length > 0) {
+                if (length > line.length) {
+                    line = new byte[Math.max(length, line.length * 2)];
+                }
+                ((Buffer) region).position(i);
+                region.get(line, 0, length);
+                String url = new String(line, 0, length, StandardCharsets.UTF_8);
+                signed.setLength(0);
+                try {
+                    signer.signPrepared(url, expires, policy, signed);
+                    chunk.append(signed);
+                } catch (RuntimeException e) {
+                    if (chunk.failedLines++ == 0) {
+                        chunk.firstFailedLine = chunk.lines;
+                    }
+                    chunk.append(line, length);
+                }
+            }
+            chunk.append('\n');
+            chunk.lines++;
+            i = lineEnd + 1;
+        }
+        return chunk;
+    }
+
+    private static Chunk await(Future<Chunk> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw new IOException(e.getCause());
+        }
+    }
+
+    private static final class Chunk {
+        byte[] bytes;
+        int length;
+        long lines;
+        long failedLines;
+        // Index within the chunk of its first failed line
+        long firstFailedLine;
+        long bytesRead;
+
+        Chunk(int capacity) {
+            bytes = new byte[capacity];
+        }
+
+        void append(char c) {
+            ensureCapacity(1);
+            bytes[length++] = (byte) c;
+        }
+
+        void append(byte[] b, int n) {
+            ensureCapacity(n);
+            System.arraycopy(b, 0, bytes, length, n);
+            length += n;
+        }
+
+        void append(CharSequence s) {
+            int n = s.length();
+            ensureCapacity(n);
+            for (int i = 0; i < n; i++) {
+                char c = s.charAt(i);
+                if (c >= 0x80) {
+                    byte[] encoded = s.subSequence(i, n).toString().getBytes(StandardCharsets.UTF_8);
+                    ensureCapacity(encoded.length);
+                    System.arraycopy(encoded, 0, bytes, length, encoded.length);
+                    length += encoded.length;
+                    return;
+                }
+                bytes[length++] = (byte) c;
+            }
+        }
+
+        private void ensureCapacity(int extra) {
+            long needed = (long) length + extra;
+            if (needed > bytes.length) {
+                if (needed > MAX_ARRAY_SIZE) {
+                    throw new OutOfMemoryError("Signed chunk larger than " + MAX_ARRAY_SIZE + " bytes");
+                }
+                bytes = Arrays.copyOf(bytes, (int) Math.min(Math.max(bytes.length * 2L, needed), MAX_ARRAY_SIZE));
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final ByteArkV2UrlSigner signer;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int chunkSize = 1 << 20;
+        private ProgressListener progressListener;
+
+        public Builder(ByteArkV2UrlSigner signer) {
+            this.signer = Objects.requireNonNull(signer);
+        }
+
+        public Builder withThreads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Bytes of input handed to a worker at a time, at most
+         * {@link #MAX_CHUNK_SIZE}.
+         */
+        public Builder withChunkSize(int chunkSize) {
+            if (chunkSize < 1 || chunkSize > MAX_CHUNK_SIZE) {
+                throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        public Builder withProgressListener(ProgressListener progressListener) {
+            this.progressListener = progressListener;
+            return this;
+        }
+
+        public ByteArkBulkSigner build() {
+            return new ByteArkBulkSigner(this);
+        }
+    }
+}
@@ -0,0 +1,229 @@
+package com.byteark;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicIntegerFieldUpdater;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Signer that rounds expiry up to fixed buckets and memoizes the signed
+ * URL per URL, options and bucket, so repeated renders of the same asset
+ * produce the same URL and stay cacheable by CDNs and browsers.
+ *
+ * <p>A URL signed now expires at {@code now + minAge} rounded up to a
+ * multiple of {@code alignment}, so it always has at least {@code minAge}
+ * seconds left. With refresh-ahead enabled, an entry that is requested within
+ * {@code refreshAhead} seconds of its bucket rolling over has the next
+ * bucket's URL signed in the background, and that URL is served once the
+ * bucket rolls over.
+ */
+public final class ByteArkCachingUrlSigner {
+    private final ByteArkV2UrlSigner signer;
+    private final long minAge;
+    private final long alignment;
+    private final long refreshAhead;
+    private final Executor refreshExecutor;
+    private final LongSupplier clock;
+
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder refreshes = new LongAdder();
+
+    private ByteArkCachingUrlSigner(Builder builder) {
+        this.signer = builder.signer;
+        this.minAge = builder.minAge < 0 ? signer.getDefaultAge() : builder.minAge;
+        this.alignment = builder.alignment;
+        this.refreshAhead = builder.refreshAhead;
+        this.refreshExecutor = builder.refreshExecutor;
+        this.clock = builder.clock;
+        int capacity = Integer.highestOneBit(builder.maxEntries - 1) << 1;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+    }
+
+    public String sign(String url) {
+        return sign(url, null);
+    }
+
+    public String sign(String url, Map<String, String> options) {
+        long now = clock.getAsLong();
+        int hash = url.hashCode() * 31 + (options == null ? 0 : options.hashCode());
+        int i = hash & mask;
+        int slot = i;
+        Entry e = find(i, hash, url, options);
+        if (e == null) {
+            slot = i ^ 1;
+            e = find(slot, hash, url, options);
+        }
+
+        if (e != null) {
+            long deadline = now + minAge;
+            if (e.expires >= deadline) {
+                if (refreshAhead > 0 && e.expires < deadline + refreshAhead) {
+                    scheduleRefresh(e);
+                }
+                hits.increment();
+                return e.signedUrl;
+            }
+            Entry next = e.next;
+            if (next != null && next.expires >= deadline) {
+                table.compareAndSet(slot, e, next);
+                hits.increment();
+                return next.signedUrl;
+            }
+        }
+
+        misses.increment();
+        long expires = bucketOf(now);
+        Map<String, String> copy = options == null
+                ? null
+                : Collections.unmodifiableMap(new HashMap<>(options));
+        Entry created = new Entry(hash, url, copy, expires, signer.sign(url, expires, copy));
+        insert(i, created);
+        return created.signedUrl;
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getRefreshCount() {
+        return refreshes.sum();
+    }
+
+    /**
+     * The expiry given to URLs signed at {@code now} (Unix seconds).
+     */
+    public long bucketOf(long now) {
+        long deadline = now + minAge;
+        long remainder = Math.floorMod(deadline, alignment);
+        return remainder == 0 ? deadline : deadline - remainder + alignment;
+    }
+
+    private Entry find(int i, int hash, String url, Map<String, String> options) {
+        Entry e = table.get(i);
+        if (e != null && e.hash == hash && e.url.equals(url) && Objects.equals(e.options, options)) {
+            return e;
+        }
+        return null;
+    }
+
+    private void insert(int i, Entry created) {
+        Entry a = table.get(i);
+        Entry b = table.get(i ^ 1);
+        if (a == null || (b != null && a.expires <= b.expires)) {
+            table.compareAndSet(i, a, created);
+        } else {
+            table.compareAndSet(i ^ 1, b, created);
+        }
+    }
+
+    private void scheduleRefresh(Entry e) {
+        if (!Entry.REFRESHING.compareAndSet(e, 0, 1)) {
+            return;
+        }
+        refreshExecutor.execute(() -> {
+            long expires = e.expires + alignment;
+            e.next = new Entry(e.hash, e.url, e.options, expires, signer.sign(e.url, expires, e.options));
+            refreshes.increment();
+        });
+    }
+
+    private static final class Entry {
+        static final AtomicIntegerFieldUpdater<Entry> REFRESHING =
+                AtomicIntegerFieldUpdater.newUpdater(Entry.class, "refreshing");
+
+        final int hash;
+        final String url;
+        final Map<String, String> options;
+        final long expires;
+        final String signedUrl;
+        volatile Entry next;
+        volatile int refreshing;
+
+        Entry(int hash, String url, Map<String, String> options, long expires, String signedUrl) {
+            this.hash = hash;
+            this.url = url;
+            this.options = options;
+            this.expires = expires;
+            this.signedUrl = signedUrl;
+        }
+    }
+
+    public static final class Builder {
+        private final ByteArkV2UrlSigner signer;
+        private long minAge = -1;
+        private long alignment = 300;
+        private int maxEntries = 4096;
+        private long refreshAhead = 0;
+        private Executor refreshExecutor = ForkJoinPool.commonPool();
+        private LongSupplier clock = () -> System.currentTimeMillis() / 1000;
+
+        public Builder(ByteArkV2UrlSigner signer) {
+            this.signer = Objects.requireNonNull(signer);
+        }
+
+        /**
+         * Minimum seconds left on a returned URL. Defaults to the signer's
+         * defaultAge.
+         */
+        public Builder withMinAge(long minAge) {
+            this.minAge = minAge;
+            return this;
+        }
+
+        /**
+         * Expiry bucket size in seconds.
+         */
+        public Builder withAlignment(long alignment) {
+            if (alignment <= 0) {
+                throw new IllegalArgumentException("alignment must be positive");
+            }
+            this.alignment = alignment;
+            return this;
+        }
+
+        public Builder withMaxEntries(int maxEntries) {
+            if (maxEntries < 2) {
+                throw new IllegalArgumentException("maxEntries must be at least 2");
+            }
+            this.maxEntries = maxEntries;
+            return this;
+        }
+
+        /**
+         * Signs the next bucket's URL in the background for entries requested
+         * within {@code seconds} of their bucket rolling over.
+         */
+        public Builder withRefreshAhead(long seconds, Executor executor) {
+            this.refreshAhead = seconds;
+            this.refreshExecutor = Objects.requireNonNull(executor);
+            return this;
+        }
+
+        /**
+         * Source of the current Unix time in seconds.
+         */
+        public Builder withClock(LongSupplier clock) {
+            this.clock = Objects.requireNonNull(clock);
+            return this;
+        }
+
+        public ByteArkCachingUrlSigner build() {
+            return new ByteArkCachingUrlSigner(this);
+        }
+    }
+}
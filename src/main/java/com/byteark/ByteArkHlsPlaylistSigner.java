@@ -0,0 +1,224 @@
+package com.byteark;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Reader;
+import java.io.Writer;
+import java.net.URI;
+import java.nio.channels.Channels;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Rewrites an HLS playlist so that every URI in it is signed: URI lines
+ * (variant playlists and segments) and {@code URI="..."} attributes of tags
+ * such as EXT-X-KEY, EXT-X-MAP and EXT-X-MEDIA.
+ *
+ * <p>The playlist is streamed line by line, so memory stays bounded by the
+ * longest line. URIs keep their original (possibly relative) form with the
+ * signed query appended; they are resolved against the playlist URL only
+ * to find the host and path to sign. As with
+ * {@link ByteArkV2UrlSigner#sign(String, long, Map)}, existing
+ * {@code x_ark_*} parameters are replaced and the signed query goes before
+ * any fragment. URIs with a scheme other than http(s), such as
+ * {@code data:} or FairPlay {@code skd://} key URIs, are written unchanged;
+ * an http(s) or relative URI that cannot be resolved fails the whole
+ * playlist with an {@link IOException} naming its line. Line terminators
+ * are kept as they are. With path_prefix, URIs on the same host are hashed
+ * once.
+ */
+public final class ByteArkHlsPlaylistSigner {
+    private final ByteArkV2UrlSigner signer;
+
+    public ByteArkHlsPlaylistSigner(ByteArkV2UrlSigner signer) {
+        this.signer = signer;
+    }
+
+    public void sign(String playlistUrl,
+                     ReadableByteChannel in,
+                     WritableByteChannel out,
+                     long expires,
+                     Map<String, String> options) throws IOException {
+        OutputStream stream = Channels.newOutputStream(out);
+        sign(playlistUrl, Channels.newInputStream(in), stream, expires, options);
+        stream.flush();
+    }
+
+    public void sign(String playlistUrl,
+                     InputStream in,
+                     OutputStream out,
+                     long expires,
+                     Map<String, String> options) throws IOException {
+        LineReader reader = new LineReader(new InputStreamReader(in, StandardCharsets.UTF_8));
+        Writer writer = new BufferedWriter(new OutputStreamWriter(out, StandardCharsets.UTF_8));
+        URI base = URI.create(playlistUrl);
+        if (!isHttp(base.getScheme()) || base.getHost() == null) {
+            throw new IllegalArgumentException("Not an http(s) playlist URL: " + playlistUrl);
+        }
+        Rewriter rewriter = new Rewriter(base, signer.resolveExpires(expires), signer.prepare(options));
+        while (reader.next()) {
+            rewriter.rewriteLine(reader.line.toString(), writer);
+            writer.write(reader.terminator);
+        }
+        writer.flush();
+    }
+
+    private final class Rewriter {
+        private final URI base;
+        private final long expires;
+        private final ByteArkV2UrlSigner.PreparedPolicy policy;
+        private final Map<String, String> queries = new HashMap<>();
+        private final UrlSplitter parts = new UrlSplitter();
+        private final StringBuilder signed = new StringBuilder(256);
+        private int lineNumber;
+
+        Rewriter(URI base, long expires, ByteArkV2UrlSigner.PreparedPolicy policy) {
+            this.base = base;
+            this.expires = expires;
+            this.policy = policy;
+        }
+
+        void rewriteLine(String line, Writer out) throws IOException {
+            lineNumber++;
+            String trimmed = line.trim();
+            if (trimmed.isEmpty()) {
+                out.write(line);
+            } else if (trimmed.charAt(0) == '#') {
+                rewriteTag(line, out);
+            } else {
+                writeSigned(trimmed, out);
+            }
+        }
+
+        private void rewriteTag(String line, Writer out) throws IOException {
+            int written = 0;
+            int from = 0;
+            int attr;
+            while ((attr = line.indexOf("URI=\"", from)) >= 0) {
+                int valueStart = attr + 5;
+                int valueEnd = line.indexOf('"', valueStart);
+                if (valueEnd < 0) {
+                    break;
+                }
+                char before = attr > 0 ? line.charAt(attr - 1) : ':';
+                if ((before == ':' || before == ',') && valueEnd > valueStart) {
+                    out.write(line, written, valueStart - written);
+                    writeSigned(line.substring(valueStart, valueEnd), out);
+                    written = valueEnd;
+                }
+                from = valueEnd + 1;
+            }
+            out.write(line, written, line.length() - written);
+        }
+
+        private void writeSigned(String uri, Writer out) throws IOException {
+            URI resolved = resolve(uri);
+            if (resolved == null) {
+                out.write(uri);
+                return;
+            }
+            String query = signer.sharedQueryParams(
+                    resolved.getHost(),
+                    resolved.getRawPath(),
+                    expires,
+                    policy,
+                    queries);
+            parts.splitReference(uri);
+            try {
+                signed.setLength(0);
+                parts.appendUnsigned(signed);
+                signed.append(query);
+                parts.appendFragment(signed);
+                out.append(signed);
+            } finally {
+                parts.clear();
+            }
+        }
+
+        /**
+         * The URI resolved against the playlist URL, or null if it has
+         * another scheme than http(s), such as a data: or skd:// key URI,
+         * and is written unchanged.
+         */
+        private URI resolve(String uri) throws IOException {
+            int schemeEnd = UrlSplitter.schemeEnd(uri);
+            if (schemeEnd >= 0 && !isHttp(uri.substring(0, schemeEnd - 1))) {
+                return null;
+            }
+            URI resolved;
+            try {
+                resolved = base.resolve(uri);
+            } catch (IllegalArgumentException e) {
+                throw new IOException("Cannot sign the URI on line " + lineNumber + ": " + uri, e);
+            }
+            if (resolved.getHost() == null) {
+                throw new IOException("Cannot sign the URI on line " + lineNumber + ": " + uri);
+            }
+            return resolved;
+        }
+    }
+
+    private static boolean isHttp(String scheme) {
+        return "http".equalsIgnoreCase(scheme) || "https".equalsIgnoreCase(scheme);
+    }
+
+    /**
+     * Reads lines as {@link java.io.BufferedReader#readLine()} does, but
+     * keeps each line's terminator: {@code \n}, {@code \r\n}, {@code \r}, or
+     * none for a last line without one.
+     */
+    private static final class LineReader {
+        private final Reader in;
+        private final char[] buffer = new char[8192];
+        private int position;
+        private int limit;
+        final StringBuilder line = new StringBuilder(256);
+        String terminator;
+
+        LineReader(Reader in) {
+            this.in = in;
+        }
+
+        boolean next() throws IOException {
+            line.setLength(0);
+            while (true) {
+                if (position == limit && !fill()) {
+                    terminator = "";
+                    return line.length() > 0;
+                }
+                char c = buffer[position++];
+                if (c == '\n') {
+                    terminator = "\n";
+                    return true;
+                }
+                if (c == '\r') {
+                    if ((position < limit || fill()) && buffer[position] == '\n') {
+                        position++;
+                        terminator = "\r\n";
+                    } else {
+                        terminator = "\r";
+                    }
+                    return true;
+                }
+                line.append(c);
+            }
+        }
+
+        private boolean fill() throws IOException {
+            int n = in.read(buffer);
+            if (n <= 0) {
+                return false;
+            }
+            position = 0;
+            limit = n;
+            return true;
+        }
+    }
+}
@@ -0,0 +1,397 @@
+package com.byteark;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Immutable longest-prefix map from IPv4 and IPv6 networks to labels such
+ * as country codes, for {@code geo_allow} checks in verify (see
+ * {@link ByteArkV2UrlSigner.Builder#withGeoIp(ByteArkIpTrie)}).
+ *
+ * <p>A path-compressed binary radix trie over 128-bit addresses, with
+ * IPv4 mapped into {@code ::ffff:0:0/96}. Each node is packed into 32
+ * adjacent bytes of one array, so a lookup touches one cache line per node
+ * it visits, at most one per distinct prefix length on its path. Lookups
+ * start from a direct index on the first 16 bits of the IPv4 or IPv6
+ * address, which skips the densest levels. With at most two nodes per
+ * network a table of a million ranges takes tens of megabytes. Instances
+ * are safe to share between threads.
+ */
+public final class ByteArkIpTrie {
+    // Per node: prefix high bits, prefix low bits, zero child << 32 | one
+    // child, prefix length << 32 | value index; -1 for no child or value
+    private static final int NODE_SIZE = 4;
+    private static final int INDEX_BITS = 16;
+    private static final long IPV4_MAPPED = 0xffffL << 32;
+
+    private final long[] nodes;
+    private final String[] values;
+    private final int root;
+    private final int networks;
+    // Per first 16 bits: the node to continue from and the value found
+    // above it, as node << 32 | value
+    private final long[] ipv4Index;
+    private final long[] ipv6Index;
+
+    private ByteArkIpTrie(Builder builder) {
+        int n = builder.size;
+        this.nodes = new long[n * NODE_SIZE];
+        for (int i = 0; i < n; i++) {
+            int at = i * NODE_SIZE;
+            nodes[at] = builder.nodeHi[i];
+            nodes[at + 1] = builder.nodeLo[i];
+            nodes[at + 2] = (long) builder.zero[i] << 32 | (builder.one[i] & 0xffffffffL);
+            nodes[at + 3] = (long) (builder.nodeLength[i] & 0xff) << 32 | (builder.nodeValue[i] & 0xffffffffL);
+        }
+        this.values = builder.values.toArray(new String[0]);
+        this.root = builder.root;
+        this.networks = builder.networks;
+        this.ipv4Index = new long[1 << INDEX_BITS];
+        this.ipv6Index = new long[1 << INDEX_BITS];
+        for (int i = 0; i < 1 << INDEX_BITS; i++) {
+            ipv4Index[i] = descend(0, IPV4_MAPPED | (long) i << 16, IpAddress.IPV4_MAPPED_PREFIX + INDEX_BITS);
+            ipv6Index[i] = descend((long) i << 48, 0, INDEX_BITS);
+        }
+    }
+
+    /**
+     * Loads a range file with one {@code first,last,label} or
+     * {@code network/length,label} entry per line, such as the CSV exports
+     * of common IP-to-country databases. Fields may be quoted; further
+     * fields, blank lines and lines starting with {@code #} are ignored.
+     * Where entries overlap, the smaller network wins.
+     */
+    public static ByteArkIpTrie load(Path file) throws IOException {
+        Builder builder = new Builder();
+        try (BufferedReader reader = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line;
+            int lineNumber = 0;
+            while ((line = reader.readLine()) != null) {
+                lineNumber++;
+                if (line.trim().isEmpty() || line.startsWith("#")) {
+                    continue;
+                }
+                String[] fields = line.split(",");
+                try {
+                    if (fields.length >= 3 && unquote(fields[0]).indexOf('/') < 0) {
+                        builder.addRange(unquote(fields[0]), unquote(fields[1]), unquote(fields[2]));
+                    } else if (fields.length >= 2) {
+                        builder.add(unquote(fields[0]), unquote(fields[1]));
+                    } else {
+                        throw new IllegalArgumentException("Expected at least two fields");
+                    }
+                } catch (IllegalArgumentException e) {
+                    throw new IOException("Malformed IP range file " + file + " at line " + lineNumber, e);
+                }
+            }
+        }
+        return builder.build();
+    }
+
+    /**
+     * The label of the smallest network containing {@code ip}, or null if
+     * none does or {@code ip} is not an IPv4 or IPv6 address.
+     */
+    public String lookup(CharSequence ip) {
+        long[] address = SigningContext.current().address;
+        if (!IpAddress.parse(ip, address)) {
+            return null;
+        }
+        return lookup(address[0], address[1]);
+    }
+
+    String lookup(long hi, long lo) {
+        int value = find(hi, lo);
+        return value < 0 ? null : values[value];
+    }
+
+    /**
+     * Number of networks added, after splitting ranges into networks.
+     */
+    public int getNetworkCount() {
+        return networks;
+    }
+
+    public int getNodeCount() {
+        return nodes.length / NODE_SIZE;
+    }
+
+    private int find(long hi, long lo) {
+        long start = IpAddress.isIpv4(hi, lo)
+                ? ipv4Index[(int) (lo >>> 16) & 0xffff]
+                : ipv6Index[(int) (hi >>> 48)];
+        int n = (int) (start >> 32);
+        int best = (int) start;
+        long[] nodes = this.nodes;
+        while (n >= 0) {
+            int at = n * NODE_SIZE;
+            long meta = nodes[at + 3];
+            int length = (int) (meta >>> 32);
+            if (!IpAddress.matches(hi, lo, nodes[at], nodes[at + 1], length)) {
+                break;
+            }
+            if ((int) meta >= 0) {
+                best = (int) meta;
+            }
+            if (length == 128) {
+                break;
+            }
+            long children = nodes[at + 2];
+            n = bit(hi, lo, length) == 0 ? (int) (children >> 32) : (int) children;
+        }
+        return best;
+    }
+
+    /**
+     * Walks the nodes whose prefixes are no longer than {@code bits}, which
+     * every address starting with the same {@code bits} bits visits alike.
+     */
+    private long descend(long hi, long lo, int bits) {
+        int best = -1;
+        int n = root;
+        while (n >= 0) {
+            int at = n * NODE_SIZE;
+            long meta = nodes[at + 3];
+            int length = (int) (meta >>> 32);
+            if (length >= bits) {
+                break;
+            }
+            if (!IpAddress.matches(hi, lo, nodes[at], nodes[at + 1], length)) {
+                n = -1;
+                break;
+            }
+            if ((int) meta >= 0) {
+                best = (int) meta;
+            }
+            long children = nodes[at + 2];
+            n = bit(hi, lo, length) == 0 ? (int) (children >> 32) : (int) children;
+        }
+        return (long) n << 32 | (best & 0xffffffffL);
+    }
+
+    private static int bit(long hi, long lo, int index) {
+        return (int) (index < 64 ? hi >>> (63 - index) : lo >>> (127 - index)) & 1;
+    }
+
+    private static String unquote(String field) {
+        String s = field.trim();
+        if (s.length() >= 2 && s.charAt(0) == '"' && s.charAt(s.length() - 1) == '"') {
+            return s.substring(1, s.length() - 1);
+        }
+        return s;
+    }
+
+    public static final class Builder {
+        private long[] nodeHi = new long[64];
+        private long[] nodeLo = new long[64];
+        private byte[] nodeLength = new byte[64];
+        private int[] zero = new int[64];
+        private int[] one = new int[64];
+        private int[] nodeValue = new int[64];
+        private int size;
+        private int root = -1;
+        private int networks;
+
+        private final List<String> values = new ArrayList<>();
+        private final Map<String, Integer> valueIndex = new HashMap<>();
+        private final long[] first = new long[2];
+        private final long[] last = new long[2];
+
+        /**
+         * Maps a network such as {@code 203.0.113.0/24} or
+         * {@code 2001:db8::/32} (or a single address) to a label.
+         */
+        public Builder add(String network, String value) {
+            int slash = network.indexOf('/');
+            int end = slash < 0 ? network.length() : slash;
+            if (!IpAddress.parse(network, 0, end, first)) {
+                throw new IllegalArgumentException("Invalid network: " + network);
+            }
+            int max = network.indexOf(':') < 0 ? 32 : 128;
+            int length = max;
+            if (slash >= 0) {
+                try {
+                    length = Integer.parseInt(network.substring(slash + 1));
+                } catch (NumberFormatException e) {
+                    length = -1;
+                }
+                if (length < 0 || length > max) {
+                    throw new IllegalArgumentException("Invalid network: " + network);
+                }
+            }
+            insert(first[0], first[1], max == 32 ? length + IpAddress.IPV4_MAPPED_PREFIX : length, indexOf(value));
+            return this;
+        }
+
+        /**
+         * Maps every address from {@code firstAddress} to
+         * {@code lastAddress} inclusive to a label; both must be of the
+         * same family.
+         */
+        public Builder addRange(String firstAddress, String lastAddress, String value) {
+            if (!IpAddress.parse(firstAddress, first) || !IpAddress.parse(lastAddress, last)) {
+                throw new IllegalArgumentException("Invalid range: " + firstAddress + " - " + lastAddress);
+            }
+            if (IpAddress.isIpv4(first[0], first[1]) != IpAddress.isIpv4(last[0], last[1])
+                    || compare(first[0], first[1], last[0], last[1]) > 0) {
+                throw new IllegalArgumentException("Invalid range: " + firstAddress + " - " + lastAddress);
+            }
+            int v = indexOf(value);
+            long hi = first[0];
+            long lo = first[1];
+            long lastHi = last[0];
+            long lastLo = last[1];
+            // Cover the range with the largest aligned networks, left to right
+            while (true) {
+                int bits = Math.min(trailingZeros(hi, lo), floorLog2OfCount(hi, lo, lastHi, lastLo));
+                insert(hi, lo, 128 - bits, v);
+                if (bits == 128) {
+                    return this;
+                }
+                // next = start + 2^bits, stopping past the last address
+                long nextLo = bits < 64 ? lo + (1L << bits) : lo;
+                long nextHi = bits < 64 ? hi + (Long.compareUnsigned(nextLo, lo) < 0 ? 1 : 0) : hi + (1L << (bits - 64));
+                if ((nextHi == 0 && nextLo == 0) || compare(nextHi, nextLo, lastHi, lastLo) > 0) {
+                    return this;
+                }
+                hi = nextHi;
+                lo = nextLo;
+            }
+        }
+
+        public ByteArkIpTrie build() {
+            return new ByteArkIpTrie(this);
+        }
+
+        private int indexOf(String value) {
+            Integer index = valueIndex.get(value);
+            if (index == null) {
+                index = values.size();
+                values.add(value);
+                valueIndex.put(value, index);
+            }
+            return index;
+        }
+
+        private void insert(long hi, long lo, int length, int value) {
+            networks++;
+            if (length <= 64) {
+                hi &= IpAddress.mask(length);
+                lo = 0;
+            } else {
+                lo &= IpAddress.mask(length - 64);
+            }
+            if (root < 0) {
+                root = newNode(hi, lo, length, value);
+                return;
+            }
+            int parent = -1;
+            int side = 0;
+            int n = root;
+            while (true) {
+                int nodeLen = nodeLength[n] & 0xff;
+                int common = commonPrefix(hi, lo, nodeHi[n], nodeLo[n], Math.min(length, nodeLen));
+                if (common < nodeLen) {
+                    // The key leaves this node's prefix early: put a node at
+                    // the branching point above it
+                    int branch;
+                    if (common == length) {
+                        branch = newNode(hi, lo, length, value);
+                    } else {
+                        long branchHi = common <= 64 ? hi & IpAddress.mask(common) : hi;
+                        long branchLo = common <= 64 ? 0 : lo & IpAddress.mask(common - 64);
+                        branch = newNode(branchHi, branchLo, common, -1);
+                        setChild(branch, bit(hi, lo, common), newNode(hi, lo, length, value));
+                    }
+                    setChild(branch, bit(nodeHi[n], nodeLo[n], common), n);
+                    if (parent < 0) {
+                        root = branch;
+                    } else {
+                        setChild(parent, side, branch);
+                    }
+                    return;
+                }
+                if (length == nodeLen) {
+                    nodeValue[n] = value;
+                    return;
+                }
+                int b = bit(hi, lo, nodeLen);
+                int child = b == 0 ? zero[n] : one[n];
+                if (child < 0) {
+                    setChild(n, b, newNode(hi, lo, length, value));
+                    return;
+                }
+                parent = n;
+                side = b;
+                n = child;
+            }
+        }
+
+        private void setChild(int node, int bit, int child) {
+            if (bit == 0) {
+                zero[node] = child;
+            } else {
+                one[node] = child;
+            }
+        }
+
+        private int newNode(long hi, long lo, int length, int value) {
+            if (size == nodeHi.length) {
+                int capacity = size * 2;
+                nodeHi = Arrays.copyOf(nodeHi, capacity);
+                nodeLo = Arrays.copyOf(nodeLo, capacity);
+                nodeLength = Arrays.copyOf(nodeLength, capacity);
+                zero = Arrays.copyOf(zero, capacity);
+                one = Arrays.copyOf(one, capacity);
+                nodeValue = Arrays.copyOf(nodeValue, capacity);
+            }
+            nodeHi[size] = hi;
+            nodeLo[size] = lo;
+            nodeLength[size] = (byte) length;
+            zero[size] = -1;
+            one[size] = -1;
+            nodeValue[size] = value;
+            return size++;
+        }
+
+        private static int commonPrefix(long aHi, long aLo, long bHi, long bLo, int max) {
+            long x = aHi ^ bHi;
+            if (x != 0) {
+                return Math.min(Long.numberOfLeadingZeros(x), max);
+            }
+            x = aLo ^ bLo;
+            return Math.min(x != 0 ? 64 + Long.numberOfLeadingZeros(x) : 128, max);
+        }
+
+        private static int trailingZeros(long hi, long lo) {
+            return lo != 0 ? Long.numberOfTrailingZeros(lo) : hi != 0 ? 64 + Long.numberOfTrailingZeros(hi) : 128;
+        }
+
+        /**
+         * floor(log2(last - first + 1)), or 128 for the whole space.
+         */
+        private static int floorLog2OfCount(long firstHi, long firstLo, long lastHi, long lastLo) {
+            long diffLo = lastLo - firstLo;
+            long diffHi = lastHi - firstHi - (Long.compareUnsigned(lastLo, firstLo) < 0 ? 1 : 0);
+            long countLo = diffLo + 1;
+            long countHi = diffHi + (countLo == 0 ? 1 : 0);
+            if (countHi == 0 && countLo == 0) {
+                return 128;
+            }
+            return countHi != 0 ? 127 - Long.numberOfLeadingZeros(countHi) : 63 - Long.numberOfLeadingZeros(countLo);
+        }
+
+        private static int compare(long aHi, long aLo, long bHi, long bLo) {
+            int c = Long.compareUnsigned(aHi, bHi);
+            return c != 0 ? c : Long.compareUnsigned(aLo, bLo);
+        }
+    }
+}
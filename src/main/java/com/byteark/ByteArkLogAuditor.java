@@ -0,0 +1,618 @@
+package com.byteark;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.PriorityQueue;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+/**
+ * Verifies every signed URL in access logs and counts the outcomes, for
+ * finding requests that were served with an expired, tampered or
+ * out-of-policy URL.
+ *
+ * <p>Lines are in the nginx and Apache combined format:
+ * <pre>
+ * 203.0.113.9 - - [10/Oct/2019:13:55:36 +0700] "GET /path?x_ark_... HTTP/1.1" 200 ...
+ * </pre>
+ * Each URL is verified as of the time it was logged, and by default for
+ * the logged client address. The request target may be a path, in which
+ * case the host is the one given to the builder, or an absolute URL.
+ * Lines that cannot be read this way are counted as malformed, and lines
+ * whose URL has no {@code x_ark_*} parameter as unsigned.
+ *
+ * <p>URLs are verified with a copy of the signer that has no verify cache
+ * and no listener, so an audit neither fills the cache of live traffic nor
+ * shows up in its metrics.
+ *
+ * <p>Files are memory-mapped in chunks cut at line boundaries, as in
+ * {@link ByteArkBulkSigner}. Each thread takes chunks in turn and keeps its
+ * own counts, which are merged once all are done. Lines are verified in
+ * place without exceptions; only lines that fail allocate, for the path
+ * they are counted under.
+ */
+public final class ByteArkLogAuditor {
+    private static final ByteArkSignedUrlVerifyResult[] RESULTS = ByteArkSignedUrlVerifyResult.values();
+    private static final String MONTHS = "JanFebMarAprMayJunJulAugSepOctNovDec";
+
+    private final ByteArkV2UrlSigner signer;
+    private final String host;
+    private final int threads;
+    private final int chunkSize;
+    private final int topPaths;
+    private final int maxTrackedPaths;
+    private final boolean clientIpCheck;
+    private final long verifyTime;
+
+    /**
+     * Number of lines and outcomes for one path.
+     */
+    public static final class PathCount {
+        private final String path;
+        private final long[] counts;
+        private final long total;
+
+        private PathCount(String path, long[] counts) {
+            this.path = path;
+            this.counts = counts;
+            this.total = sum(counts);
+        }
+
+        public String getPath() {
+            return path;
+        }
+
+        public long getCount() {
+            return total;
+        }
+
+        public long getCount(ByteArkSignedUrlVerifyResult result) {
+            return counts[result.ordinal()];
+        }
+
+        @Override
+        public String toString() {
+            return path + " " + total;
+        }
+    }
+
+    public static final class Report {
+        private final long lines;
+        private final long malformedLines;
+        private final long unsignedLines;
+        private final long[] counts;
+        private final long untrackedCount;
+        private final List<PathCount> topPaths;
+        private final long bytesRead;
+        private final long elapsedNanos;
+
+        private Report(Tally tally, int topPaths, long elapsedNanos) {
+            this.lines = tally.lines;
+            this.malformedLines = tally.malformed;
+            this.unsignedLines = tally.unsigned;
+            this.counts = tally.counts;
+            this.untrackedCount = tally.untracked;
+            this.topPaths = top(tally.paths, topPaths);
+            this.bytesRead = tally.bytesRead;
+            this.elapsedNanos = elapsedNanos;
+        }
+
+        /**
+         * Non-empty lines read, malformed ones included.
+         */
+        public long getLines() {
+            return lines;
+        }
+
+        public long getMalformedLines() {
+            return malformedLines;
+        }
+
+        /**
+         * Lines whose URL has no {@code x_ark_*} parameter. They are not
+         * verified and are not counted as invalid.
+         */
+        public long getUnsignedLines() {
+            return unsignedLines;
+        }
+
+        public long getCount(ByteArkSignedUrlVerifyResult result) {
+            return counts[result.ordinal()];
+        }
+
+        /**
+         * Signed lines that did not verify.
+         */
+        public long getInvalidCount() {
+            return lines - malformedLines - unsignedLines - getCount(ByteArkSignedUrlVerifyResult.OK);
+        }
+
+        /**
+         * Invalid lines whose path was not counted in {@link #getTopPaths()}
+         * because too many distinct paths had already failed.
+         */
+        public long getUntrackedCount() {
+            return untrackedCount;
+        }
+
+        /**
+         * Paths with the most invalid lines, most first.
+         */
+        public List<PathCount> getTopPaths() {
+            return topPaths;
+        }
+
+        public long getBytesRead() {
+            return bytesRead;
+        }
+
+        public long getElapsedNanos() {
+            return elapsedNanos;
+        }
+
+        public double getLinesPerSecond() {
+            return elapsedNanos == 0 ? 0 : lines * 1e9 / elapsedNanos;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append(String.format("%d lines in %.3f s (%.0f lines/s)%n",
+                    lines, elapsedNanos / 1e9, getLinesPerSecond()));
+            for (ByteArkSignedUrlVerifyResult result : RESULTS) {
+                if (getCount(result) > 0) {
+                    sb.append(String.format("%-18s %12d%n", result, getCount(result)));
+                }
+            }
+            if (unsignedLines > 0) {
+                sb.append(String.format("%-18s %12d%n", "UNSIGNED", unsignedLines));
+            }
+            if (malformedLines > 0) {
+                sb.append(String.format("%-18s %12d%n", "MALFORMED", malformedLines));
+            }
+            for (PathCount path : topPaths) {
+                sb.append(String.format("%12d %s%n", path.getCount(), path.getPath()));
+            }
+            return sb.toString();
+        }
+
+        private static List<PathCount> top(Map<String, long[]> paths, int n) {
+            PriorityQueue<PathCount> heap = new PriorityQueue<>(
+                    (a, b) -> a.total != b.total ? Long.compare(a.total, b.total) : b.path.compareTo(a.path));
+            for (Map.Entry<String, long[]> entry : paths.entrySet()) {
+                heap.add(new PathCount(entry.getKey(), entry.getValue()));
+                if (heap.size() > n) {
+                    heap.poll();
+                }
+            }
+            List<PathCount> top = new ArrayList<>(heap.size());
+            while (!heap.isEmpty()) {
+                top.add(heap.poll());
+            }
+            Collections.reverse(top);
+            return Collections.unmodifiableList(top);
+        }
+    }
+
+    private ByteArkLogAuditor(Builder builder) {
+        this.signer = builder.signer.withoutCacheAndListener();
+        this.host = builder.host;
+        this.threads = builder.threads;
+        this.chunkSize = builder.chunkSize;
+        this.topPaths = builder.topPaths;
+        this.maxTrackedPaths = builder.maxTrackedPaths;
+        this.clientIpCheck = builder.clientIpCheck;
+        this.verifyTime = builder.verifyTime;
+    }
+
+    public Report audit(Path... files) throws IOException {
+        long started = System.nanoTime();
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try (Regions regions = new Regions(files, chunkSize)) {
+            List<Future<Tally>> workers = new ArrayList<>(threads);
+            for (int i = 0; i < threads; i++) {
+                workers.add(pool.submit(() -> auditRegions(regions)));
+            }
+            Tally total = new Tally(maxTrackedPaths);
+            for (Future<Tally> worker : workers) {
+                total.merge(await(worker));
+            }
+            return new Report(total, topPaths, System.nanoTime() - started);
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
+    private Tally auditRegions(Regions regions) throws IOException {
+        Tally tally = new Tally(maxTrackedPaths);
+        Line line = new Line();
+        // Copied out of the mapping once, so the views read a heap array
+        byte[] chunk = new byte[0];
+        ByteBuffer region;
+        while ((region = regions.next()) != null) {
+            int length = region.remaining();
+            if (chunk.length < length) {
+                chunk = new byte[length];
+            }
+            region.get(chunk, 0, length);
+            tally.bytesRead += length;
+            int i = 0;
+            while (i < length) {
+                int lineEnd = ByteArrays.indexOf(chunk, (byte) '\n', i, length);
+                int contentEnd = lineEnd;
+                if (contentEnd > i && chunk[contentEnd - 1] == '\r') {
+                    contentEnd--;
+                }
+                if (contentEnd > i) {
+                    tally.lines++;
+                    if (!auditLine(chunk, i, contentEnd, line, tally)) {
+                        tally.malformed++;
+                    }
+                }
+                i = lineEnd + 1;
+            }
+        }
+        return tally;
+    }
+
+    /**
+     * Verifies one line into the tally, or returns false if it is not a
+     * combined log line with a usable request.
+     */
+    private boolean auditLine(byte[] b, int start, int end, Line line, Tally tally) {
+        int addressEnd = indexOf(b, ' ', start, end);
+        int timeStart = indexOf(b, '[', addressEnd, end) + 1;
+        int timeEnd = indexOf(b, ']', timeStart, end);
+        int methodStart = indexOf(b, '"', timeEnd, end) + 1;
+        int targetStart = indexOf(b, ' ', methodStart, end) + 1;
+        if (addressEnd == start || targetStart >= end) {
+            return false;
+        }
+        int targetEnd = targetStart;
+        while (targetEnd < end && b[targetEnd] != ' ' && b[targetEnd] != '"') {
+            targetEnd++;
+        }
+
+        long now = verifyTime;
+        if (now < 0) {
+            now = parseTime(b, timeStart, timeEnd);
+            if (now == Long.MIN_VALUE) {
+                return false;
+            }
+        }
+
+        SigningContext ctx = SigningContext.current();
+        UrlSplitter url = ctx.url;
+        try {
+            CharSequence requestHost;
+            CharSequence path;
+            CharSequence query;
+            if (b[targetStart] == '/') {
+                int pathEnd = indexOf(b, '?', targetStart, targetEnd);
+                requestHost = host;
+                path = line.path.set(b, targetStart, pathEnd);
+                query = pathEnd == targetEnd ? null : line.query.set(b, pathEnd + 1, targetEnd);
+            } else {
+                // Split as sign and verify do, without user info or port
+                if (!url.split(line.target.set(b, targetStart, targetEnd))) {
+                    return false;
+                }
+                requestHost = url.host;
+                path = url.path;
+                query = url.hasQuery() ? url.query : null;
+            }
+            if (requestHost == null || requestHost.length() == 0) {
+                return false;
+            }
+            ctx.query.scan(query);
+            if (!ctx.query.isSigned()) {
+                tally.unsigned++;
+                return true;
+            }
+            ByteSequence clientIp = clientIpCheck ? line.clientIp.set(b, start, addressEnd) : null;
+            tally.count(signer.verifyScanned(ctx, requestHost, path, clientIp, now), path);
+            return true;
+        } finally {
+            ctx.query.clear();
+            url.clear();
+        }
+    }
+
+    /**
+     * Seconds since the epoch of a {@code 10/Oct/2019:13:55:36 +0700}
+     * timestamp, or {@link Long#MIN_VALUE} if it is not one.
+     */
+    static long parseTime(byte[] b, int start, int end) {
+        if (end - start != 26 || b[start + 2] != '/' || b[start + 6] != '/' || b[start + 11] != ':'
+                || b[start + 14] != ':' || b[start + 17] != ':' || b[start + 20] != ' ') {
+            return Long.MIN_VALUE;
+        }
+        int month = 0;
+        while (month < 12 && !(MONTHS.charAt(month * 3) == b[start + 3]
+                && MONTHS.charAt(month * 3 + 1) == b[start + 4]
+                && MONTHS.charAt(month * 3 + 2) == b[start + 5])) {
+            month++;
+        }
+        int day = digits(b, start, 2);
+        int year = digits(b, start + 7, 4);
+        int hour = digits(b, start + 12, 2);
+        int minute = digits(b, start + 15, 2);
+        int second = digits(b, start + 18, 2);
+        int offset = digits(b, start + 22, 2) * 3600 + digits(b, start + 24, 2) * 60;
+        byte sign = b[start + 21];
+        if (month == 12 || (day | year | hour | minute | second | offset) < 0 || (sign != '+' && sign != '-')) {
+            return Long.MIN_VALUE;
+        }
+        long local = epochDay(year, month + 1, day) * 86400 + hour * 3600 + minute * 60 + second;
+        return sign == '+' ? local - offset : local + offset;
+    }
+
+    /**
+     * The decimal value of {@code count} digits, or a negative number if
+     * any is not a digit.
+     */
+    private static int digits(byte[] b, int start, int count) {
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            int digit = b[i] - '0';
+            if (digit < 0 || digit > 9) {
+                return Integer.MIN_VALUE;
+            }
+            value = value * 10 + digit;
+        }
+        return value;
+    }
+
+    /**
+     * Days since 1970-01-01 of a proleptic Gregorian date.
+     */
+    private static long epochDay(int year, int month, int day) {
+        int y = month <= 2 ? year - 1 : year;
+        int era = Math.floorDiv(y, 400);
+        int yearOfEra = y - era * 400;
+        int dayOfYear = (153 * (month + (month > 2 ? -3 : 9)) + 2) / 5 + day - 1;
+        int dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097L + dayOfEra - 719468;
+    }
+
+    private static int indexOf(byte[] b, char c, int from, int end) {
+        for (int i = from; i < end; i++) {
+            if (b[i] == c) {
+                return i;
+            }
+        }
+        return end;
+    }
+
+    private static long sum(long[] counts) {
+        long total = 0;
+        for (long count : counts) {
+            total += count;
+        }
+        return total;
+    }
+
+    private static Tally await(Future<Tally> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new IOException(e);
+        } catch (ExecutionException e) {
+            throw e.getCause() instanceof IOException ? (IOException) e.getCause() : new IOException(e.getCause());
+        }
+    }
+
+    /**
+     * Views of the fields of the current line, reused for every line.
+     */
+    private static final class Line {
+        final ByteSequence target = new ByteSequence();
+        final ByteSequence path = new ByteSequence();
+        final ByteSequence query = new ByteSequence();
+        final ByteSequence clientIp = new ByteSequence();
+    }
+
+    /**
+     * Counts kept by one thread, merged into the report at the end.
+     */
+    private static final class Tally {
+        final long[] counts = new long[RESULTS.length];
+        final Map<String, long[]> paths = new HashMap<>();
+        final int maxTrackedPaths;
+        long lines;
+        long malformed;
+        long unsigned;
+        long untracked;
+        long bytesRead;
+
+        Tally(int maxTrackedPaths) {
+            this.maxTrackedPaths = maxTrackedPaths;
+        }
+
+        void count(ByteArkSignedUrlVerifyResult result, CharSequence path) {
+            counts[result.ordinal()]++;
+            if (!result.isValid()) {
+                add(path.toString(), result.ordinal(), 1);
+            }
+        }
+
+        private void add(String path, int result, long count) {
+            long[] perPath = paths.get(path);
+            if (perPath == null) {
+                if (paths.size() >= maxTrackedPaths) {
+                    untracked += count;
+                    return;
+                }
+                perPath = new long[RESULTS.length];
+                paths.put(path, perPath);
+            }
+            perPath[result] += count;
+        }
+
+        void merge(Tally other) {
+            for (int i = 0; i < counts.length; i++) {
+                counts[i] += other.counts[i];
+            }
+            for (Map.Entry<String, long[]> entry : other.paths.entrySet()) {
+                long[] perPath = entry.getValue();
+                for (int i = 0; i < perPath.length; i++) {
+                    if (perPath[i] != 0) {
+                        add(entry.getKey(), i, perPath[i]);
+                    }
+                }
+            }
+            lines += other.lines;
+            malformed += other.malformed;
+            unsigned += other.unsigned;
+            untracked += other.untracked;
+            bytesRead += other.bytesRead;
+        }
+    }
+
+    /**
+     * Hands out the chunks of the files in turn to the threads.
+     */
+    private static final class Regions implements Closeable {
+        private final Path[] files;
+        private final int chunkSize;
+        private int file = -1;
+        private FileChannel channel;
+        private long position;
+        private long size;
+
+        Regions(Path[] files, int chunkSize) {
+            this.files = Arrays.copyOf(files, files.length);
+            this.chunkSize = chunkSize;
+        }
+
+        /**
+         * The next chunk, or null after the last file.
+         */
+        synchronized ByteBuffer next() throws IOException {
+            while (channel == null || position == size) {
+                close();
+                if (++file >= files.length) {
+                    return null;
+                }
+                channel = FileChannel.open(files[file], StandardOpenOption.READ);
+                position = 0;
+                size = channel.size();
+            }
+            ByteBuffer region = ByteArkBulkSigner.nextRegion(channel, position, size, chunkSize);
+            position += region.remaining();
+            return region;
+        }
+
+        @Override
+        public synchronized void close() throws IOException {
+            if (channel != null) {
+                channel.close();
+                channel = null;
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final ByteArkV2UrlSigner signer;
+        private String host;
+        private int threads = Runtime.getRuntime().availableProcessors();
+        private int chunkSize = 1 << 20;
+        private int topPaths = 10;
+        private int maxTrackedPaths = 100000;
+        private boolean clientIpCheck = true;
+        private long verifyTime = -1;
+
+        public Builder(ByteArkV2UrlSigner signer) {
+            this.signer = Objects.requireNonNull(signer);
+        }
+
+        /**
+         * The host that URLs logged as a path were requested from.
+         */
+        public Builder withHost(String host) {
+            this.host = host;
+            return this;
+        }
+
+        public Builder withThreads(int threads) {
+            if (threads < 1) {
+                throw new IllegalArgumentException("threads must be positive");
+            }
+            this.threads = threads;
+            return this;
+        }
+
+        /**
+         * Bytes of log handed to a thread at a time.
+         */
+        public Builder withChunkSize(int chunkSize) {
+            if (chunkSize < 1) {
+                throw new IllegalArgumentException("chunkSize must be positive");
+            }
+            this.chunkSize = chunkSize;
+            return this;
+        }
+
+        /**
+         * Number of paths with the most invalid lines to report; 10 by
+         * default.
+         */
+        public Builder withTopPaths(int topPaths) {
+            if (topPaths < 0) {
+                throw new IllegalArgumentException("topPaths must not be negative");
+            }
+            this.topPaths = topPaths;
+            return this;
+        }
+
+        /**
+         * Bounds the memory used for per-path counts: each thread counts
+         * invalid lines for at most this many distinct paths, 100000 by
+         * default, and only counts the rest in total.
+         */
+        public Builder withMaxTrackedPaths(int maxTrackedPaths) {
+            if (maxTrackedPaths < 0) {
+                throw new IllegalArgumentException("maxTrackedPaths must not be negative");
+            }
+            this.maxTrackedPaths = maxTrackedPaths;
+            return this;
+        }
+
+        /**
+         * Whether to check client_ip, client_ip_range and geo_allow against
+         * the logged client address; true by default. Turn it off when the
+         * log holds the address of a proxy.
+         */
+        public Builder withClientIpCheck(boolean clientIpCheck) {
+            this.clientIpCheck = clientIpCheck;
+            return this;
+        }
+
+        /**
+         * Verifies every line as of {@code now}, in seconds since the epoch,
+         * instead of the logged time.
+         */
+        public Builder withVerifyTime(long now) {
+            this.verifyTime = now;
+            return this;
+        }
+
+        public ByteArkLogAuditor build() {
+            return new ByteArkLogAuditor(this);
+        }
+    }
+}
@@ -0,0 +1,418 @@
+package com.byteark;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Chooses the sign options and age of a URL from rules keyed by path
+ * prefix, such as {@code /live/*}{@code /} for 60 seconds signed with the
+ * channel directory as path_prefix, and signs it in the same call.
+ *
+ * <p>A rule pattern is a directory: it starts and ends with {@code /}, and
+ * a segment of {@code *} stands for any one segment. A URL takes the rule
+ * with the longest pattern that is a directory of its path; at the same
+ * depth a literal segment is preferred to {@code *}. URLs that match no
+ * rule are signed without options for the signer's default age.
+ *
+ * <p>Rules are compiled into a trie of path segments whose children are
+ * looked up by hashing the segment in place, with {@code *} branches merged
+ * into their literal siblings, so a lookup reads the path once without
+ * backtracking however many rules there are. Each rule's options are
+ * prepared with {@link ByteArkV2UrlSigner#prepare(Map)} when compiled.
+ * {@link #update(Builder)} swaps in a new rule set atomically.
+ */
+public final class ByteArkPolicyRouter {
+    static final int MAX_CACHED_PREFIXES = 10000;
+
+    private final ByteArkV2UrlSigner signer;
+    private volatile Rules rules;
+
+    /**
+     * A compiled rule.
+     */
+    public static final class Route {
+        private final ByteArkV2UrlSigner signer;
+        private final String pattern;
+        private final int depth;
+        private final int ttl;
+        private final Map<String, String> options;
+        private final boolean signsPathPrefix;
+        private final ByteArkV2UrlSigner.PreparedPolicy policy;
+        private final Map<String, ByteArkV2UrlSigner.PreparedPolicy> prefixPolicies;
+
+        private Route(ByteArkV2UrlSigner signer,
+                      String pattern,
+                      int ttl,
+                      Map<String, String> options,
+                      boolean signsPathPrefix) {
+            this.signer = signer;
+            this.pattern = pattern;
+            this.depth = pattern == null ? 0 : segments(pattern).size();
+            this.ttl = ttl;
+            this.options = options;
+            this.signsPathPrefix = signsPathPrefix;
+            boolean literal = pattern == null || pattern.indexOf('*') < 0;
+            this.policy = signer.prepare(signsPathPrefix && literal ? withPathPrefix(options, pattern) : options);
+            this.prefixPolicies = signsPathPrefix && !literal ? new ConcurrentHashMap<>() : null;
+        }
+
+        /**
+         * The rule pattern, or null for URLs that match no rule.
+         */
+        public String getPattern() {
+            return pattern;
+        }
+
+        /**
+         * Seconds the signed URL is valid for; 0 for the signer's default.
+         */
+        public int getTtl() {
+            return ttl;
+        }
+
+        public Map<String, String> getOptions() {
+            return options;
+        }
+
+        /**
+         * Whether the directory the pattern matched is signed as path_prefix.
+         */
+        public boolean isPathPrefixSigned() {
+            return signsPathPrefix;
+        }
+
+        /**
+         * The prepared policy for a path this route was chosen for. Rules
+         * with {@code *} that sign their directory as path_prefix have one
+         * policy per directory, prepared on first use and dropped all
+         * together once too many directories have been seen.
+         */
+        public ByteArkV2UrlSigner.PreparedPolicy getPolicy(CharSequence path) {
+            if (prefixPolicies == null) {
+                return policy;
+            }
+            String prefix = directory(path, depth);
+            ByteArkV2UrlSigner.PreparedPolicy prepared = prefixPolicies.get(prefix);
+            if (prepared == null) {
+                prepared = signer.prepare(withPathPrefix(options, prefix));
+                if (prefixPolicies.size() >= MAX_CACHED_PREFIXES) {
+                    prefixPolicies.clear();
+                }
+                prefixPolicies.put(prefix, prepared);
+            }
+            return prepared;
+        }
+
+        long expires(long now) {
+            return now + (ttl > 0 ? ttl : signer.getDefaultAge());
+        }
+
+        @Override
+        public String toString() {
+            return pattern + " " + ttl + "s " + options;
+        }
+
+        private static Map<String, String> withPathPrefix(Map<String, String> options, String prefix) {
+            Map<String, String> result = new HashMap<>(options);
+            result.put("path_prefix", prefix);
+            return result;
+        }
+
+        /**
+         * The path up to and including the slash after its first
+         * {@code depth} segments.
+         */
+        private static String directory(CharSequence path, int depth) {
+            int end = 0;
+            for (int i = 0; i < depth; i++) {
+                do {
+                    end++;
+                } while (path.charAt(end) != '/');
+            }
+            return path.subSequence(0, end + 1).toString();
+        }
+    }
+
+    private ByteArkPolicyRouter(Builder builder) {
+        this.signer = builder.signer;
+        this.rules = builder.compile();
+    }
+
+    /**
+     * The route for a path, never null.
+     */
+    public Route route(CharSequence path) {
+        return rules.lookup(path);
+    }
+
+    public String sign(String url, long now) {
+        return sign(url, now, new StringBuilder(url.length() + 160)).toString();
+    }
+
+    /**
+     * Appends the URL signed with the policy of its route, expiring
+     * {@link Route#getTtl()} seconds after {@code now}.
+     */
+    public StringBuilder sign(String url, long now, StringBuilder out) {
+        UrlSplitter parts = ByteArkV2UrlSigner.split(url);
+        try {
+            Route route = rules.lookup(parts.path);
+            return signer.sign(parts, route.expires(now), route.getPolicy(parts.path), out);
+        } finally {
+            parts.clear();
+        }
+    }
+
+    /**
+     * Replaces the rules with those of {@code builder}, which must be for
+     * the same signer. Lookups in progress finish with the old rules.
+     */
+    public void update(Builder builder) {
+        if (builder.signer != signer) {
+            throw new IllegalArgumentException("Rules are for another signer");
+        }
+        rules = builder.compile();
+    }
+
+    public int getRuleCount() {
+        return rules.count;
+    }
+
+    private static List<String> segments(String pattern) {
+        if (pattern.isEmpty() || pattern.charAt(0) != '/' || pattern.charAt(pattern.length() - 1) != '/') {
+            throw new IllegalArgumentException("Pattern must start and end with /: " + pattern);
+        }
+        List<String> segments = new ArrayList<>();
+        int start = 1;
+        for (int i = 1; i < pattern.length(); i++) {
+            if (pattern.charAt(i) == '/') {
+                String segment = pattern.substring(start, i);
+                if (segment.isEmpty() || (segment.indexOf('*') >= 0 && !segment.equals("*"))) {
+                    throw new IllegalArgumentException("Invalid segment in pattern: " + pattern);
+                }
+                segments.add(segment);
+                start = i + 1;
+            }
+        }
+        return segments;
+    }
+
+    private static final class Rules {
+        final Node root;
+        final int count;
+
+        Rules(Node root, int count) {
+            this.root = root;
+            this.count = count;
+        }
+
+        Route lookup(CharSequence path) {
+            Node node = root;
+            Route best = node.route;
+            int length = path.length();
+            if (length == 0 || path.charAt(0) != '/') {
+                return best;
+            }
+            int start = 1;
+            int h = 0;
+            for (int i = 1; i < length; i++) {
+                char c = path.charAt(i);
+                if (c != '/') {
+                    h = 31 * h + c;
+                    continue;
+                }
+                node = node.child(path, start, i, h);
+                if (node == null) {
+                    break;
+                }
+                if (node.route != null) {
+                    best = node.route;
+                }
+                start = i + 1;
+                h = 0;
+            }
+            return best;
+        }
+    }
+
+    /**
+     * A trie node with its literal children in an open-addressed table
+     * keyed by segment, probed with the segment's {@link String#hashCode()}.
+     */
+    private static final class Node {
+        final String[] keys;
+        final Node[] children;
+        final Node wildcard;
+        final Route route;
+
+        Node(BuildNode node) {
+            int capacity = Integer.highestOneBit(Math.max(1, node.children.size()) * 2 - 1) << 1;
+            keys = new String[capacity];
+            children = new Node[capacity];
+            for (Map.Entry<String, BuildNode> entry : node.children.entrySet()) {
+                int slot = slot(entry.getKey().hashCode());
+                while (keys[slot] != null) {
+                    slot = (slot + 1) & (capacity - 1);
+                }
+                keys[slot] = entry.getKey();
+                children[slot] = new Node(entry.getValue());
+            }
+            wildcard = node.wildcard == null ? null : new Node(node.wildcard);
+            route = node.route;
+        }
+
+        Node child(CharSequence path, int start, int end, int h) {
+            int length = end - start;
+            for (int slot = slot(h); ; slot = (slot + 1) & (keys.length - 1)) {
+                String key = keys[slot];
+                if (key == null) {
+                    return length == 0 ? null : wildcard;
+                }
+                if (key.length() == length && regionEquals(key, path, start)) {
+                    return children[slot];
+                }
+            }
+        }
+
+        private int slot(int h) {
+            return (h ^ (h >>> 16)) & (keys.length - 1);
+        }
+
+        private static boolean regionEquals(String key, CharSequence path, int start) {
+            for (int i = 0; i < key.length(); i++) {
+                if (key.charAt(i) != path.charAt(start + i)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
+    private static final class BuildNode {
+        final Map<String, BuildNode> children = new HashMap<>();
+        BuildNode wildcard;
+        Route route;
+
+        BuildNode copy() {
+            BuildNode copy = new BuildNode();
+            for (Map.Entry<String, BuildNode> entry : children.entrySet()) {
+                copy.children.put(entry.getKey(), entry.getValue().copy());
+            }
+            copy.wildcard = wildcard == null ? null : wildcard.copy();
+            copy.route = route;
+            return copy;
+        }
+
+        /**
+         * Adds the rules under {@code other} to this node, keeping this
+         * node's own route where both have one.
+         */
+        void merge(BuildNode other) {
+            if (route == null) {
+                route = other.route;
+            }
+            for (Map.Entry<String, BuildNode> entry : other.children.entrySet()) {
+                BuildNode child = children.get(entry.getKey());
+                if (child == null) {
+                    children.put(entry.getKey(), entry.getValue().copy());
+                } else {
+                    child.merge(entry.getValue());
+                }
+            }
+            if (other.wildcard != null) {
+                if (wildcard == null) {
+                    wildcard = other.wildcard.copy();
+                } else {
+                    wildcard.merge(other.wildcard);
+                }
+            }
+        }
+
+        /**
+         * Merges each {@code *} branch into its literal siblings, so that a
+         * lookup that takes a literal branch never has to come back for the
+         * {@code *} one.
+         */
+        void mergeWildcards() {
+            if (wildcard != null) {
+                for (BuildNode child : children.values()) {
+                    child.merge(wildcard);
+                }
+                wildcard.mergeWildcards();
+            }
+            for (BuildNode child : children.values()) {
+                child.mergeWildcards();
+            }
+        }
+    }
+
+    public static final class Builder {
+        private final ByteArkV2UrlSigner signer;
+        private final List<Route> routes = new ArrayList<>();
+
+        public Builder(ByteArkV2UrlSigner signer) {
+            this.signer = Objects.requireNonNull(signer);
+        }
+
+        /**
+         * Signs URLs under {@code pattern} with {@code options}, valid for
+         * {@code ttl} seconds, or the signer's default age if 0.
+         */
+        public Builder add(String pattern, int ttl, Map<String, String> options) {
+            return add(pattern, ttl, options, false);
+        }
+
+        /**
+         * As {@link #add(String, int, Map)}, also signing the directory the
+         * pattern matched as path_prefix, so that one signature serves
+         * every URL under it.
+         */
+        public Builder addWithPathPrefix(String pattern, int ttl, Map<String, String> options) {
+            return add(pattern, ttl, options, true);
+        }
+
+        private Builder add(String pattern, int ttl, Map<String, String> options, boolean signsPathPrefix) {
+            if (ttl < 0) {
+                throw new IllegalArgumentException("ttl must not be negative");
+            }
+            segments(pattern);
+            Map<String, String> copy = options == null ? new HashMap<>() : new HashMap<>(options);
+            routes.add(new Route(signer, pattern, ttl, copy, signsPathPrefix));
+            return this;
+        }
+
+        public ByteArkPolicyRouter build() {
+            return new ByteArkPolicyRouter(this);
+        }
+
+        private Rules compile() {
+            BuildNode root = new BuildNode();
+            root.route = new Route(signer, null, 0, new HashMap<>(), false);
+            boolean hasRoot = false;
+            for (Route route : routes) {
+                BuildNode node = root;
+                for (String segment : segments(route.pattern)) {
+                    if (segment.equals("*")) {
+                        if (node.wildcard == null) {
+                            node.wildcard = new BuildNode();
+                        }
+                        node = node.wildcard;
+                    } else {
+                        node = node.children.computeIfAbsent(segment, k -> new BuildNode());
+                    }
+                }
+                if (node == root ? hasRoot : node.route != null) {
+                    throw new IllegalArgumentException("Duplicate pattern: " + route.pattern);
+                }
+                hasRoot |= node == root;
+                node.route = route;
+            }
+            root.mergeWildcards();
+            return new Rules(new Node(root), routes.size());
+        }
+    }
+}
@@ -0,0 +1,469 @@
+package com.byteark;
+
+import java.io.IOException;
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Signed URLs revoked before their {@code x_ark_expires}, by signature or
+ * by path prefix, for a signer built with
+ * {@link ByteArkV2UrlSigner.Builder#withRevocationList(ByteArkRevocationList)}.
+ * Revoked URLs verify as {@link ByteArkSignedUrlVerifyResult#REVOKED}.
+ *
+ * <p>Verify first asks a blocked Bloom filter, which answers in one cache
+ * line per probe and never misses a revoked entry; only its hits are
+ * confirmed against the exact entries. Path prefixes are probed only at the
+ * lengths that some revoked prefix has, so an empty or signature-only list
+ * does not look at the path.
+ *
+ * <p>A signature is revoked until the URL expires. A path prefix is revoked
+ * for {@code maxTokenLifetime} seconds, by which time every URL signed
+ * before the revocation has expired; URLs signed under it in that time are
+ * rejected as well. {@link #prune(long)} drops entries
+ * past that time and rebuilds the filter; adding an entry does so when an
+ * entry is past due. The filter doubles when it is full. {@link #save()}
+ * writes the filter and entries to a snapshot file that
+ * {@link Builder#build()} maps back in on restart.
+ *
+ * <p>Lookups are lock-free; changes are serialized.
+ */
+public final class ByteArkRevocationList {
+    private static final int MAGIC = 0x42415256;
+    private static final int VERSION = 1;
+    private static final int HEADER_LENGTH = 12;
+    private static final byte SIGNATURE = 0;
+    private static final byte PATH_PREFIX = 1;
+    private static final long SIGNATURE_SEED = 0xcbf29ce484222325L;
+    private static final long PATH_PREFIX_SEED = 0x84222325cbf29ce4L;
+    private static final long FNV_PRIME = 0x100000001b3L;
+    private static final int SIGNATURE_HASH_CHARS = 8;
+
+    private final long maxTokenLifetime;
+    private final int expectedEntries;
+    private final Path snapshotFile;
+
+    // Revoked until, in Unix seconds
+    private final Map<String, Long> signatures = new ConcurrentHashMap<>();
+    private final Map<String, Long> pathPrefixes = new ConcurrentHashMap<>();
+    // Re-assigned after every change, which publishes the bits set in it
+    private volatile Filter filter;
+    private long nextPrune = Long.MAX_VALUE;
+
+    private final LongAdder filterHits = new LongAdder();
+    private final LongAdder falsePositives = new LongAdder();
+
+    private ByteArkRevocationList(Builder builder) throws IOException {
+        this.maxTokenLifetime = builder.maxTokenLifetime;
+        this.expectedEntries = builder.expectedEntries;
+        this.snapshotFile = builder.snapshotFile;
+        if (snapshotFile != null && Files.exists(snapshotFile)) {
+            load(snapshotFile);
+        } else {
+            filter = new Filter(expectedEntries);
+        }
+    }
+
+    /**
+     * Revokes every URL with this {@code x_ark_signature} until
+     * {@code expires}, the URL's {@code x_ark_expires}.
+     */
+    public synchronized void revokeSignature(String signature, long expires, long now) {
+        Filter f = prepareAdd(now);
+        if (signatures.put(signature, Math.max(expires, signatures.getOrDefault(signature, expires))) == null) {
+            f.add(signatureHash(signature, 0, signature.length()));
+            f.signatureCount++;
+        }
+        nextPrune = Math.min(nextPrune, expires);
+        filter = f;
+    }
+
+    /**
+     * Rejects every URL whose path starts with {@code pathPrefix} for
+     * {@code maxTokenLifetime} seconds from {@code now}. A signed URL does
+     * not say when it was signed, so URLs signed under the prefix after the
+     * revocation are rejected too until that time. The prefix is either a
+     * directory ending with {@code /} or a whole path, and is matched
+     * against the path as requested, still percent-encoded.
+     */
+    public synchronized void revokePathPrefix(String pathPrefix, long now) {
+        if (pathPrefix.isEmpty()) {
+            throw new IllegalArgumentException("Empty path prefix");
+        }
+        long until = now + maxTokenLifetime;
+        Filter f = prepareAdd(now);
+        if (pathPrefixes.put(pathPrefix, until) == null) {
+            f.addPathPrefix(pathPrefix);
+        }
+        nextPrune = Math.min(nextPrune, until);
+        filter = f;
+    }
+
+    /**
+     * Whether a URL with this path and signature is revoked at {@code now}.
+     * Either may be null.
+     */
+    public boolean isRevoked(CharSequence path, CharSequence signature, long now) {
+        return (signature != null && isSignatureRevoked(signature, 0, signature.length(), now))
+                || (path != null && isPathRevoked(path, now));
+    }
+
+    boolean isQueryRevoked(CharSequence path, SignedUrlQuery query, long now) {
+        return (query.has(SignedUrlQuery.SIGNATURE)
+                && isSignatureRevoked(query.raw(),
+                        query.start(SignedUrlQuery.SIGNATURE),
+                        query.end(SignedUrlQuery.SIGNATURE),
+                        now))
+                || isPathRevoked(path, now);
+    }
+
+    /**
+     * Drops entries that expired before {@code now} and rebuilds the filter
+     * without them.
+     *
+     * @return the number of entries dropped
+     */
+    public synchronized int prune(long now) {
+        int before = size();
+        signatures.values().removeIf(until -> until < now);
+        pathPrefixes.values().removeIf(until -> until < now);
+        rebuild(Math.max(expectedEntries, size()));
+        return before - size();
+    }
+
+    public int size() {
+        return signatures.size() + pathPrefixes.size();
+    }
+
+    /**
+     * Lookups that the filter could not rule out.
+     */
+    public long getFilterHitCount() {
+        return filterHits.sum();
+    }
+
+    /**
+     * Filter hits that were not revoked after all.
+     */
+    public long getFalsePositiveCount() {
+        return falsePositives.sum();
+    }
+
+    /**
+     * Writes a snapshot to the file given to
+     * {@link Builder#withSnapshotFile(Path)}, replacing it atomically.
+     */
+    public void save() throws IOException {
+        if (snapshotFile == null) {
+            throw new IllegalStateException("No snapshot file");
+        }
+        save(snapshotFile);
+    }
+
+    /**
+     * Writes a snapshot to {@code file}, replacing it atomically.
+     */
+    public synchronized void save(Path file) throws IOException {
+        Filter f = filter;
+        int length = HEADER_LENGTH + f.bits.length * 8 + 4
+                + entriesLength(signatures) + entriesLength(pathPrefixes) + 4;
+        ByteBuffer out = ByteBuffer.allocate(length);
+        out.putInt(MAGIC).putInt(VERSION).putInt(f.blocks);
+        out.asLongBuffer().put(f.bits);
+        ((Buffer) out).position(HEADER_LENGTH + f.bits.length * 8);
+        out.putInt(size());
+        putEntries(out, SIGNATURE, signatures);
+        putEntries(out, PATH_PREFIX, pathPrefixes);
+        out.putInt(MAGIC);
+        ((Buffer) out).flip();
+
+        Path temp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(temp,
+                StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING, StandardOpenOption.WRITE)) {
+            while (out.hasRemaining()) {
+                channel.write(out);
+            }
+            channel.force(true);
+        }
+        Files.move(temp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    private boolean isSignatureRevoked(CharSequence s, int start, int end, long now) {
+        Filter f = filter;
+        if (f.signatureCount == 0
+                || !f.mightContain(signatureHash(s, start, end))) {
+            return false;
+        }
+        return confirm(signatures, s.subSequence(start, end).toString(), now);
+    }
+
+    private boolean isPathRevoked(CharSequence path, long now) {
+        Filter f = filter;
+        int max = Math.min(f.maxPrefixLength, path.length());
+        if (max == 0) {
+            return false;
+        }
+        long lengths = f.prefixLengths;
+        long h = PATH_PREFIX_SEED;
+        for (int i = 0; i < max; i++) {
+            char c = path.charAt(i);
+            h = (h ^ c) * FNV_PRIME;
+            int length = i + 1;
+            if ((c == '/' || length == path.length())
+                    && (length >= 64 || (lengths & 1L << length) != 0)
+                    && f.mightContain(h)
+                    && confirm(pathPrefixes, path.subSequence(0, length).toString(), now)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean confirm(Map<String, Long> entries, String key, long now) {
+        filterHits.increment();
+        Long until = entries.get(key);
+        if (until != null && until >= now) {
+            return true;
+        }
+        falsePositives.increment();
+        return false;
+    }
+
+    /**
+     * Prunes when the oldest entry is past due and grows the filter when it
+     * is full, before adding one entry.
+     */
+    private Filter prepareAdd(long now) {
+        if (nextPrune < now) {
+            prune(now);
+        }
+        Filter f = filter;
+        if (size() >= f.capacity) {
+            rebuild(f.capacity * 2);
+            f = filter;
+        }
+        return f;
+    }
+
+    private void rebuild(int capacity) {
+        Filter f = new Filter(capacity);
+        for (String signature : signatures.keySet()) {
+            f.add(signatureHash(signature, 0, signature.length()));
+        }
+        f.signatureCount = signatures.size();
+        for (String pathPrefix : pathPrefixes.keySet()) {
+            f.addPathPrefix(pathPrefix);
+        }
+        nextPrune = Math.min(earliest(signatures), earliest(pathPrefixes));
+        filter = f;
+    }
+
+    private void load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            ByteBuffer in = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            try {
+                if (in.getInt() != MAGIC || in.getInt() != VERSION) {
+                    throw new IOException("Not a revocation list snapshot: " + file);
+                }
+                int blocks = in.getInt();
+                Filter f = new Filter(blocks, 0);
+                in.asLongBuffer().get(f.bits);
+                ((Buffer) in).position(HEADER_LENGTH + f.bits.length * 8);
+                int count = in.getInt();
+                for (int i = 0; i < count; i++) {
+                    byte type = in.get();
+                    long until = in.getLong();
+                    byte[] key = new byte[in.getInt()];
+                    in.get(key);
+                    String s = new String(key, StandardCharsets.UTF_8);
+                    if (type == SIGNATURE) {
+                        signatures.put(s, until);
+                        f.signatureCount++;
+                    } else {
+                        pathPrefixes.put(s, until);
+                        f.notePathPrefix(s);
+                    }
+                    nextPrune = Math.min(nextPrune, until);
+                }
+                if (in.getInt() != MAGIC) {
+                    throw new IOException("Truncated revocation list snapshot: " + file);
+                }
+                filter = f;
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed revocation list snapshot: " + file, e);
+            }
+        }
+    }
+
+    private static long earliest(Map<String, Long> entries) {
+        long earliest = Long.MAX_VALUE;
+        for (long until : entries.values()) {
+            earliest = Math.min(earliest, until);
+        }
+        return earliest;
+    }
+
+    private static int entriesLength(Map<String, Long> entries) {
+        int length = 0;
+        for (String key : entries.keySet()) {
+            length += 1 + 8 + 4 + key.getBytes(StandardCharsets.UTF_8).length;
+        }
+        return length;
+    }
+
+    private static void putEntries(ByteBuffer out, byte type, Map<String, Long> entries) {
+        for (Map.Entry<String, Long> e : entries.entrySet()) {
+            byte[] key = e.getKey().getBytes(StandardCharsets.UTF_8);
+            out.put(type).putLong(e.getValue()).putInt(key.length).put(key);
+        }
+    }
+
+    /**
+     * FNV-1a over the chars; path prefixes are hashed incrementally with the
+     * same steps in {@link #isPathRevoked(CharSequence, long)}.
+     */
+    private static long hash(long seed, CharSequence s, int start, int end) {
+        long h = seed;
+        for (int i = start; i < end; i++) {
+            h = (h ^ s.charAt(i)) * FNV_PRIME;
+        }
+        return h;
+    }
+
+    /**
+     * Signatures are random, so their last chars are as good a key for
+     * the filter as all of them; hits are confirmed on the whole signature.
+     */
+    private static long signatureHash(CharSequence s, int start, int end) {
+        return hash(SIGNATURE_SEED, s, Math.max(start, end - SIGNATURE_HASH_CHARS), end);
+    }
+
+    /**
+     * A Bloom filter whose probes for one key fall in one 64-byte block.
+     * Only the owning list sets bits, under its lock.
+     */
+    private static final class Filter {
+        static final int BITS_PER_ENTRY = 16;
+        static final int PROBES = 6;
+
+        final long[] bits;
+        final int blocks;
+        final int capacity;
+        int signatureCount;
+        // Bit n set if a prefix of length n < 64 is revoked
+        long prefixLengths;
+        int maxPrefixLength;
+
+        Filter(int capacity) {
+            this(Math.max(1, Integer.highestOneBit(Math.max(1, capacity * BITS_PER_ENTRY / 512 - 1)) << 1),
+                    capacity);
+        }
+
+        Filter(int blocks, int capacity) {
+            if (Integer.bitCount(blocks) != 1) {
+                throw new IllegalArgumentException("Block count must be a power of two");
+            }
+            this.blocks = blocks;
+            this.bits = new long[blocks * 8];
+            this.capacity = Math.max(capacity, blocks * 512 / BITS_PER_ENTRY);
+        }
+
+        void addPathPrefix(String pathPrefix) {
+            add(hash(PATH_PREFIX_SEED, pathPrefix, 0, pathPrefix.length()));
+            notePathPrefix(pathPrefix);
+        }
+
+        void notePathPrefix(String pathPrefix) {
+            int length = pathPrefix.length();
+            if (length < 64) {
+                prefixLengths |= 1L << length;
+            }
+            maxPrefixLength = Math.max(maxPrefixLength, length);
+        }
+
+        void add(long hash) {
+            long h = mix(hash);
+            int base = block(h);
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (int) (h >>> (9 * i)) & 511;
+                bits[base + (bit >>> 6)] |= 1L << bit;
+            }
+        }
+
+        boolean mightContain(long hash) {
+            long h = mix(hash);
+            int base = block(h);
+            for (int i = 0; i < PROBES; i++) {
+                int bit = (int) (h >>> (9 * i)) & 511;
+                if ((bits[base + (bit >>> 6)] & 1L << bit) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private int block(long h) {
+            return ((int) ((h * 0x9e3779b97f4a7c15L) >>> 40) & (blocks - 1)) * 8;
+        }
+
+        private static long mix(long h) {
+            h ^= h >>> 33;
+            h *= 0xff51afd7ed558ccdL;
+            h ^= h >>> 33;
+            h *= 0xc4ceb9fe1a85ec53L;
+            return h ^ (h >>> 33);
+        }
+    }
+
+    public static final class Builder {
+        private long maxTokenLifetime = 86400;
+        private int expectedEntries = 1024;
+        private Path snapshotFile;
+
+        /**
+         * The longest time between signing a URL and its
+         * {@code x_ark_expires}, in seconds; 1 day by default. Path prefix
+         * revocations are kept this long.
+         */
+        public Builder withMaxTokenLifetime(long maxTokenLifetime) {
+            if (maxTokenLifetime <= 0) {
+                throw new IllegalArgumentException("maxTokenLifetime must be positive");
+            }
+            this.maxTokenLifetime = maxTokenLifetime;
+            return this;
+        }
+
+        /**
+         * Entries the filter is first sized for; it doubles when full.
+         */
+        public Builder withExpectedEntries(int expectedEntries) {
+            if (expectedEntries < 1) {
+                throw new IllegalArgumentException("expectedEntries must be positive");
+            }
+            this.expectedEntries = expectedEntries;
+            return this;
+        }
+
+        /**
+         * Snapshot file for {@link ByteArkRevocationList#save()}, loaded by
+         * {@link #build()} if it exists.
+         */
+        public Builder withSnapshotFile(Path snapshotFile) {
+            this.snapshotFile = Objects.requireNonNull(snapshotFile);
+            return this;
+        }
+
+        public ByteArkRevocationList build() throws IOException {
+            return new ByteArkRevocationList(this);
+        }
+    }
+}
@@ -1,4 +1,7 @@
 package com.byteark;
 
 public class ByteArkSignedUrlExpiredException extends Throwable {
+    public ByteArkSignedUrlExpiredException() {
+        super(null, null, false, false);
+    }
 }
@@ -1,4 +1,7 @@
 package com.byteark;
 
 public class ByteArkSignedUrlInvalidConditionException extends Throwable {
+    public ByteArkSignedUrlInvalidConditionException() {
+        super(null, null, false, false);
+    }
 }
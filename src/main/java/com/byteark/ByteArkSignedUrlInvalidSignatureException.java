@@ -1,4 +1,7 @@
 package com.byteark;
 
 public class ByteArkSignedUrlInvalidSignatureException extends Throwable {
+    public ByteArkSignedUrlInvalidSignatureException() {
+        super(null, null, false, false);
+    }
 }
@@ -2,6 +2,6 @@ package com.byteark;
 
 public class ByteArkSignedUrlMissingParamException extends Throwable {
     public ByteArkSignedUrlMissingParamException(String message) {
-        super(message);
+        super(message, null, false, false);
     }
 }
@@ -0,0 +1,45 @@
+package com.byteark;
+
+/**
+ * Outcome of {@link ByteArkV2UrlSigner#verifyResult(String, long)} and
+ * {@link ByteArkV2KeyRingVerifier#verifyResult(String, long)}.
+ */
+public enum ByteArkSignedUrlVerifyResult {
+    OK(null),
+    EXPIRED(null),
+    /**
+     * Only reported by {@link ByteArkV2KeyRingVerifier}, which needs the
+     * access id to choose the secret.
+     */
+    MISSING_ACCESS_ID("x_ark_access_id"),
+    MISSING_EXPIRES("x_ark_expires"),
+    MISSING_SIGNATURE("x_ark_signature"),
+    INVALID_CONDITION(null),
+    INVALID_SIGNATURE(null),
+    /**
+     * Revoked through a {@link ByteArkRevocationList}; {@code verify}
+     * reports it with {@link ByteArkSignedUrlInvalidConditionException}.
+     */
+    REVOKED(null);
+
+    private final String missingParam;
+
+    ByteArkSignedUrlVerifyResult(String missingParam) {
+        this.missingParam = missingParam;
+    }
+
+    public boolean isValid() {
+        return this == OK;
+    }
+
+    public boolean isMissingParam() {
+        return missingParam != null;
+    }
+
+    /**
+     * The query parameter that was missing, or null for other results.
+     */
+    public String getMissingParam() {
+        return missingParam;
+    }
+}
@@ -0,0 +1,547 @@
+package com.byteark;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.Arrays;
+import java.util.Objects;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongSupplier;
+
+/**
+ * Signers for many access keys, read from a key file with one
+ * {@code <access id> <access secret>} pair per line. Blank lines and lines
+ * starting with {@code #} are ignored; a repeated access id takes the last
+ * secret.
+ *
+ * <p>The file is memory-mapped and indexed by an open-addressing table of
+ * offsets into the mapping, so keys that are never used cost a few ints
+ * each. Signers are built on first use and kept in a bounded, lock-free
+ * two-way set-associative cache; a new signer replaces the less recently
+ * used one of its set.
+ *
+ * <p>Every {@code checkInterval} seconds a lookup schedules a check of the
+ * file's size, modification time and identity on the reload executor. A
+ * changed file is loaded into a new index that is swapped in atomically,
+ * carrying over cached signers whose secret did not change. Lookups never
+ * wait for a reload, and a file that fails to load leaves the current keys
+ * in place (see {@link #getLastReloadError()}). Replace the file by moving
+ * a new one over it: a file that is rewritten in place changes under the
+ * mapping while it is read.
+ */
+public final class ByteArkSignerRegistry {
+    private final Path file;
+    private final int maxSigners;
+    private final long checkInterval;
+    private final Executor reloadExecutor;
+    private final LongSupplier clock;
+    private final int defaultAge;
+    private final boolean skipUrlEncoding;
+    private final ByteArkV2UrlSignerListener listener;
+    private final ByteArkIpTrie geoIp;
+    private final ByteArkRevocationList revocations;
+
+    private final AtomicReference<Snapshot> snapshot = new AtomicReference<>();
+    private final AtomicBoolean checking = new AtomicBoolean();
+    private volatile long nextCheck;
+    private volatile Exception lastReloadError;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+    private final LongAdder reloads = new LongAdder();
+
+    private ByteArkSignerRegistry(Builder builder) throws IOException {
+        this.file = builder.file;
+        this.maxSigners = Integer.highestOneBit(builder.maxSigners - 1) << 1;
+        this.checkInterval = builder.checkInterval;
+        this.reloadExecutor = builder.reloadExecutor;
+        this.clock = builder.clock;
+        this.defaultAge = builder.defaultAge;
+        this.skipUrlEncoding = builder.skipUrlEncoding;
+        this.listener = builder.listener;
+        this.geoIp = builder.geoIp;
+        this.revocations = builder.revocations;
+        snapshot.set(Snapshot.load(file, maxSigners));
+        nextCheck = clock.getAsLong() + checkInterval;
+    }
+
+    /**
+     * The signer for an access id in the key file, or null.
+     */
+    public ByteArkV2UrlSigner getSigner(String accessId) {
+        long now = clock.getAsLong();
+        if (checkInterval > 0 && now >= nextCheck) {
+            scheduleCheck(now);
+        }
+
+        Snapshot s = snapshot.get();
+        int hash = hash(accessId);
+        int i = hash & s.cacheMask;
+        Entry e = s.cached(i, hash, accessId);
+        if (e == null) {
+            e = s.cached(i ^ 1, hash, accessId);
+        }
+        if (e != null) {
+            e.lastUsed = now;
+            hits.increment();
+            return e.signer;
+        }
+
+        int key = s.find(hash, accessId);
+        if (key < 0) {
+            return null;
+        }
+        misses.increment();
+        String secret = s.secret(key);
+        e = new Entry(hash, accessId, secret, newSigner(accessId, secret), now);
+        if (s.cache(i, e)) {
+            evictions.increment();
+        }
+        return e.signer;
+    }
+
+    public boolean contains(String accessId) {
+        Snapshot s = snapshot.get();
+        return s.find(hash(accessId), accessId) >= 0;
+    }
+
+    /**
+     * Number of access keys in the loaded file.
+     */
+    public int size() {
+        return snapshot.get().size;
+    }
+
+    /**
+     * Loads the file now, whether or not it changed.
+     */
+    public void reload() throws IOException {
+        Snapshot current = snapshot.get();
+        Snapshot next = Snapshot.load(file, maxSigners);
+        next.carryOver(current);
+        snapshot.set(next);
+        reloads.increment();
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public long getReloadCount() {
+        return reloads.sum();
+    }
+
+    /**
+     * The error of the last failed background reload, or null if the last
+     * reload succeeded.
+     */
+    public Exception getLastReloadError() {
+        return lastReloadError;
+    }
+
+    private void scheduleCheck(long now) {
+        if (!checking.compareAndSet(false, true)) {
+            return;
+        }
+        nextCheck = now + checkInterval;
+        try {
+            reloadExecutor.execute(() -> {
+                try {
+                    BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                    if (snapshot.get().changedFrom(attributes)) {
+                        reload();
+                    }
+                    lastReloadError = null;
+                } catch (IOException | RuntimeException e) {
+                    lastReloadError = e;
+                } finally {
+                    checking.set(false);
+                }
+            });
+        } catch (RuntimeException e) {
+            checking.set(false);
+        }
+    }
+
+    private ByteArkV2UrlSigner newSigner(String accessId, String accessSecret) {
+        return new ByteArkV2UrlSigner.Builder()
+                .withAccessId(accessId)
+                .withAccessSecret(accessSecret)
+                .withDefaultAge(defaultAge)
+                .withSkipUrlEncoding(skipUrlEncoding)
+                .withListener(listener)
+                .withGeoIp(geoIp)
+                .withRevocationList(revocations)
+                .build();
+    }
+
+    private static int hash(CharSequence key) {
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * One loaded key file: the mapping, its index and the signers built
+     * from it.
+     */
+    private static final class Snapshot {
+        // Per key: access id offset and length, secret offset and length
+        private static final int FIELDS = 4;
+
+        final ByteBuffer data;
+        final int[] keys;
+        final int size;
+        final int[] index;
+        final int indexMask;
+        final AtomicReferenceArray<Entry> signers;
+        final int cacheMask;
+
+        final long fileSize;
+        final long lastModified;
+        final Object fileKey;
+
+        private Snapshot(ByteBuffer data, int[] keys, int size, int cacheSize, BasicFileAttributes attributes) {
+            this.data = data;
+            this.keys = keys;
+            this.size = size;
+            int capacity = Integer.highestOneBit(Math.max(size, 1) * 2 - 1) << 1;
+            this.index = new int[capacity];
+            this.indexMask = capacity - 1;
+            this.signers = new AtomicReferenceArray<>(cacheSize);
+            this.cacheMask = cacheSize - 1;
+            this.fileSize = attributes.size();
+            this.lastModified = attributes.lastModifiedTime().toMillis();
+            this.fileKey = attributes.fileKey();
+            for (int k = 0; k < size; k++) {
+                insert(k);
+            }
+        }
+
+        static Snapshot load(Path file, int cacheSize) throws IOException {
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                long length = channel.size();
+                if (length > Integer.MAX_VALUE) {
+                    throw new IOException("Key file is larger than 2 GB: " + file);
+                }
+                ByteBuffer data = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+                int[] keys = new int[64 * FIELDS];
+                int size = 0;
+                int line = 0;
+                int end = (int) length;
+                int pos = 0;
+                while (pos < end) {
+                    line++;
+                    pos = skipBlanks(data, pos, end);
+                    if (pos == end || isLineEnd(data.get(pos))) {
+                        pos = nextLine(data, pos, end);
+                        continue;
+                    }
+                    if (data.get(pos) == '#') {
+                        pos = nextLine(data, pos, end);
+                        continue;
+                    }
+                    int idStart = pos;
+                    int idEnd = tokenEnd(data, idStart, end);
+                    int secretStart = skipBlanks(data, idEnd, end);
+                    int secretEnd = tokenEnd(data, secretStart, end);
+                    pos = skipBlanks(data, secretEnd, end);
+                    if (secretStart == secretEnd || (pos < end && !isLineEnd(data.get(pos)))) {
+                        throw new IOException("Malformed key file " + file + " at line " + line);
+                    }
+                    if (size * FIELDS == keys.length) {
+                        keys = Arrays.copyOf(keys, keys.length * 2);
+                    }
+                    int k = size * FIELDS;
+                    keys[k] = idStart;
+                    keys[k + 1] = idEnd - idStart;
+                    keys[k + 2] = secretStart;
+                    keys[k + 3] = secretEnd - secretStart;
+                    size++;
+                    pos = nextLine(data, pos, end);
+                }
+                return new Snapshot(data, keys, size, cacheSize, attributes);
+            }
+        }
+
+        boolean changedFrom(BasicFileAttributes attributes) {
+            return attributes.size() != fileSize
+                    || attributes.lastModifiedTime().toMillis() != lastModified
+                    || !Objects.equals(attributes.fileKey(), fileKey);
+        }
+
+        /**
+         * Index of the key with this access id, or -1.
+         */
+        int find(int hash, CharSequence accessId) {
+            for (int i = hash & indexMask; ; i = (i + 1) & indexMask) {
+                int slot = index[i];
+                if (slot == 0) {
+                    return -1;
+                }
+                int k = slot - 1;
+                if (idEquals(k, accessId)) {
+                    return k;
+                }
+            }
+        }
+
+        String secret(int k) {
+            return decode(keys[k * FIELDS + 2], keys[k * FIELDS + 3]);
+        }
+
+        Entry cached(int i, int hash, String accessId) {
+            Entry e = signers.get(i);
+            return e != null && e.hash == hash && e.accessId.equals(accessId) ? e : null;
+        }
+
+        /**
+         * Caches a signer in set {@code i}, returning true if that evicted
+         * another one.
+         */
+        boolean cache(int i, Entry entry) {
+            Entry a = signers.get(i);
+            Entry b = signers.get(i ^ 1);
+            int slot;
+            Entry replaced;
+            if (a == null || (b != null && a.lastUsed <= b.lastUsed)) {
+                slot = i;
+                replaced = a;
+            } else {
+                slot = i ^ 1;
+                replaced = b;
+            }
+            return signers.compareAndSet(slot, replaced, entry) && replaced != null;
+        }
+
+        /**
+         * Keeps the signers of {@code previous} whose secret is unchanged.
+         */
+        void carryOver(Snapshot previous) {
+            for (int i = 0; i < previous.signers.length(); i++) {
+                Entry e = previous.signers.get(i);
+                if (e == null) {
+                    continue;
+                }
+                int k = find(e.hash, e.accessId);
+                if (k >= 0 && secret(k).equals(e.secret)) {
+                    cache(e.hash & cacheMask, e);
+                }
+            }
+        }
+
+        private void insert(int k) {
+            int offset = keys[k * FIELDS];
+            int length = keys[k * FIELDS + 1];
+            int h = 0;
+            for (int j = 0; j < length; j++) {
+                h = 31 * h + (data.get(offset + j) & 0xff);
+            }
+            h ^= h >>> 16;
+            for (int i = h & indexMask; ; i = (i + 1) & indexMask) {
+                int slot = index[i];
+                if (slot == 0 || idEquals(slot - 1, offset, length)) {
+                    index[i] = k + 1;
+                    return;
+                }
+            }
+        }
+
+        private boolean idEquals(int k, CharSequence accessId) {
+            int offset = keys[k * FIELDS];
+            int length = keys[k * FIELDS + 1];
+            if (length != accessId.length()) {
+                return false;
+            }
+            for (int j = 0; j < length; j++) {
+                if ((data.get(offset + j) & 0xff) != accessId.charAt(j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private boolean idEquals(int k, int offset, int length) {
+            int other = keys[k * FIELDS];
+            if (keys[k * FIELDS + 1] != length) {
+                return false;
+            }
+            for (int j = 0; j < length; j++) {
+                if (data.get(other + j) != data.get(offset + j)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        private String decode(int offset, int length) {
+            byte[] bytes = new byte[length];
+            for (int j = 0; j < length; j++) {
+                bytes[j] = data.get(offset + j);
+            }
+            return new String(bytes, StandardCharsets.UTF_8);
+        }
+
+        private static int skipBlanks(ByteBuffer data, int pos, int end) {
+            while (pos < end && (data.get(pos) == ' ' || data.get(pos) == '\t')) {
+                pos++;
+            }
+            return pos;
+        }
+
+        private static int tokenEnd(ByteBuffer data, int pos, int end) {
+            while (pos < end) {
+                byte b = data.get(pos);
+                if (b == ' ' || b == '\t' || isLineEnd(b)) {
+                    break;
+                }
+                pos++;
+            }
+            return pos;
+        }
+
+        private static int nextLine(ByteBuffer data, int pos, int end) {
+            while (pos < end && data.get(pos) != '\n') {
+                pos++;
+            }
+            return pos + 1;
+        }
+
+        private static boolean isLineEnd(byte b) {
+            return b == '\n' || b == '\r';
+        }
+    }
+
+    private static final class Entry {
+        final int hash;
+        final String accessId;
+        final String secret;
+        final ByteArkV2UrlSigner signer;
+        // Racy: a stale value only makes eviction less precise
+        long lastUsed;
+
+        Entry(int hash, String accessId, String secret, ByteArkV2UrlSigner signer, long lastUsed) {
+            this.hash = hash;
+            this.accessId = accessId;
+            this.secret = secret;
+            this.signer = signer;
+            this.lastUsed = lastUsed;
+        }
+    }
+
+    public static final class Builder {
+        private final Path file;
+        private int maxSigners = 1024;
+        private long checkInterval = 5;
+        private Executor reloadExecutor = ForkJoinPool.commonPool();
+        private LongSupplier clock = () -> System.currentTimeMillis() / 1000;
+        private int defaultAge = 900;
+        private boolean skipUrlEncoding = false;
+        private ByteArkV2UrlSignerListener listener;
+        private ByteArkIpTrie geoIp;
+        private ByteArkRevocationList revocations;
+
+        public Builder(Path file) {
+            this.file = Objects.requireNonNull(file);
+        }
+
+        /**
+         * Upper bound of signers kept built, rounded up to a power of two.
+         */
+        public Builder withMaxSigners(int maxSigners) {
+            if (maxSigners < 2) {
+                throw new IllegalArgumentException("maxSigners must be at least 2");
+            }
+            this.maxSigners = maxSigners;
+            return this;
+        }
+
+        /**
+         * Seconds between checks of the key file; 0 only reloads on
+         * {@link ByteArkSignerRegistry#reload()}.
+         */
+        public Builder withCheckInterval(long checkInterval) {
+            if (checkInterval < 0) {
+                throw new IllegalArgumentException("checkInterval must not be negative");
+            }
+            this.checkInterval = checkInterval;
+            return this;
+        }
+
+        public Builder withReloadExecutor(Executor reloadExecutor) {
+            this.reloadExecutor = Objects.requireNonNull(reloadExecutor);
+            return this;
+        }
+
+        /**
+         * Source of the current Unix time in seconds.
+         */
+        public Builder withClock(LongSupplier clock) {
+            this.clock = Objects.requireNonNull(clock);
+            return this;
+        }
+
+        public Builder withDefaultAge(int defaultAge) {
+            this.defaultAge = defaultAge;
+            return this;
+        }
+
+        public Builder withSkipUrlEncoding(boolean skipUrlEncoding) {
+            this.skipUrlEncoding = skipUrlEncoding;
+            return this;
+        }
+
+        /**
+         * Listener passed to every signer.
+         */
+        public Builder withListener(ByteArkV2UrlSignerListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * IP-to-country table passed to every signer.
+         */
+        public Builder withGeoIp(ByteArkIpTrie geoIp) {
+            this.geoIp = geoIp;
+            return this;
+        }
+
+        /**
+         * Revocation list shared by every signer.
+         */
+        public Builder withRevocationList(ByteArkRevocationList revocations) {
+            this.revocations = revocations;
+            return this;
+        }
+
+        /**
+         * Loads the key file.
+         */
+        public ByteArkSignerRegistry build() throws IOException {
+            return new ByteArkSignerRegistry(this);
+        }
+    }
+}
@@ -0,0 +1,292 @@
+package com.byteark;
+
+import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Verifies signed URLs against a ring of access keys, choosing the secret
+ * by the URL's {@code x_ark_access_id} with one hash lookup. This keeps
+ * verification cost flat while old and new secrets are both active during
+ * a rotation.
+ *
+ * <p>The ring is an immutable map that is swapped atomically, so readers
+ * never lock and always see either the old or the new ring.
+ *
+ * <pre>{@code
+ * ByteArkV2KeyRingVerifier keyRing = new ByteArkV2KeyRingVerifier.Builder()
+ *         .withKeys(keys)
+ *         .withRevocationList(revocations)
+ *         .withVerifyCacheSize(65536)
+ *         .build();
+ * }</pre>
+ */
+public final class ByteArkV2KeyRingVerifier {
+    private final AtomicReference<Map<String, ByteArkV2UrlSigner>> ring =
+            new AtomicReference<>(Collections.emptyMap());
+    private final ByteArkIpTrie geoIp;
+    private final ByteArkRevocationList revocations;
+    private final ByteArkV2UrlSignerListener listener;
+    private final int verifyCacheSize;
+
+    public ByteArkV2KeyRingVerifier() {
+        this(new Builder());
+    }
+
+    /**
+     * @param keys access id to access secret
+     */
+    public ByteArkV2KeyRingVerifier(Map<String, String> keys) {
+        this(new Builder().withKeys(keys));
+    }
+
+    /**
+     * @param keys  access id to access secret
+     * @param geoIp IP-to-country table for {@code geo_allow}, or null
+     */
+    public ByteArkV2KeyRingVerifier(Map<String, String> keys, ByteArkIpTrie geoIp) {
+        this(new Builder().withKeys(keys).withGeoIp(geoIp));
+    }
+
+    private ByteArkV2KeyRingVerifier(Builder builder) {
+        this.geoIp = builder.geoIp;
+        this.revocations = builder.revocations;
+        this.listener = builder.listener;
+        this.verifyCacheSize = builder.verifyCacheSize;
+        setKeys(builder.keys);
+    }
+
+    /**
+     * Replaces the whole ring.
+     *
+     * @param keys access id to access secret
+     */
+    public void setKeys(Map<String, String> keys) {
+        Map<String, ByteArkV2UrlSigner> signers = new HashMap<>();
+        for (Map.Entry<String, String> entry : keys.entrySet()) {
+            signers.put(entry.getKey(), newSigner(entry.getKey(), entry.getValue()));
+        }
+        ring.set(Collections.unmodifiableMap(signers));
+    }
+
+    public void putKey(String accessId, String accessSecret) {
+        ByteArkV2UrlSigner signer = newSigner(accessId, accessSecret);
+        ring.updateAndGet(current -> {
+            Map<String, ByteArkV2UrlSigner> signers = new HashMap<>(current);
+            signers.put(accessId, signer);
+            return Collections.unmodifiableMap(signers);
+        });
+    }
+
+    public void removeKey(String accessId) {
+        ring.updateAndGet(current -> {
+            if (!current.containsKey(accessId)) {
+                return current;
+            }
+            Map<String, ByteArkV2UrlSigner> signers = new HashMap<>(current);
+            signers.remove(accessId);
+            return Collections.unmodifiableMap(signers);
+        });
+    }
+
+    public Set<String> getAccessIds() {
+        return ring.get().keySet();
+    }
+
+    /**
+     * The signer for an access id in the current ring, or null.
+     */
+    public ByteArkV2UrlSigner getSigner(String accessId) {
+        return ring.get().get(accessId);
+    }
+
+    public void verify(String url, long now)
+            throws MalformedURLException,
+            ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        ByteArkV2UrlSigner.throwIfInvalid(verifyResult(url, now));
+    }
+
+    public void verify(String host, String path, CharSequence rawQuery, long now)
+            throws ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        ByteArkV2UrlSigner.throwIfInvalid(verifyResult(host, path, rawQuery, now));
+    }
+
+    public ByteArkSignedUrlVerifyResult verifyResult(String url, long now) throws MalformedURLException {
+        return verifyResult(url, null, now);
+    }
+
+    public ByteArkSignedUrlVerifyResult verifyResult(String url, CharSequence clientIp, long now)
+            throws MalformedURLException {
+        SigningContext ctx = SigningContext.current();
+        UrlSplitter parts = ctx.url;
+        if (!parts.split(url)) {
+            throw new MalformedURLException("no protocol: " + url);
+        }
+        ctx.query.scan(parts.hasQuery() ? parts.query : null);
+        try {
+            return verifyScanned(ctx, parts.host, parts.path, clientIp, now);
+        } finally {
+            ctx.query.clear();
+            parts.clear();
+        }
+    }
+
+    /**
+     * Verifies with the secret of the URL's access id. An access id that is
+     * not in the ring is reported as
+     * {@link ByteArkSignedUrlVerifyResult#INVALID_SIGNATURE}.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String host, String path, CharSequence rawQuery, long now) {
+        return verifyResult(host, path, rawQuery, null, now);
+    }
+
+    /**
+     * Verifies a request from {@code clientIp}, enforcing its client_ip,
+     * client_ip_range and geo_allow policies; see
+     * {@link ByteArkV2UrlSigner#verifyResult(String, String, CharSequence, CharSequence, long)}.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String host,
+                                                     String path,
+                                                     CharSequence rawQuery,
+                                                     CharSequence clientIp,
+                                                     long now) {
+        SigningContext ctx = SigningContext.current();
+        ctx.query.scan(rawQuery);
+        try {
+            return verifyScanned(ctx, host, path, clientIp, now);
+        } finally {
+            ctx.query.clear();
+        }
+    }
+
+    /**
+     * Verifies a request read as bytes; see
+     * {@link ByteArkV2UrlSigner#verifyResult(ByteBuffer, ByteBuffer, long)}.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(ByteBuffer host, ByteBuffer requestTarget, long now) {
+        SigningContext ctx = SigningContext.current();
+        ByteSequence target = ctx.targetBytes.set(requestTarget, requestTarget.position(), requestTarget.limit());
+        int fragment = target.indexOf('#', 0);
+        int pathEnd = Math.min(target.indexOf('?', 0), fragment);
+        ctx.query.scan(pathEnd == fragment ? null : ctx.queryBytes.set(target, pathEnd + 1, fragment));
+        try {
+            return verifyScanned(ctx,
+                    ctx.hostBytes.set(host, host.position(), host.limit()),
+                    ctx.pathBytes.set(target, 0, pathEnd),
+                    null,
+                    now);
+        } finally {
+            ctx.query.clear();
+            ctx.clearBytes();
+        }
+    }
+
+    /**
+     * Verifies the query scanned into {@code ctx} with the signer of its
+     * access id. URLs that no signer can take are reported to the listener
+     * here, as the signers report the rest.
+     */
+    private ByteArkSignedUrlVerifyResult verifyScanned(SigningContext ctx,
+                                                      CharSequence host,
+                                                      CharSequence path,
+                                                      CharSequence clientIp,
+                                                      long now) {
+        long started = listener == null ? 0 : System.nanoTime();
+        String accessId = ctx.query.value(SignedUrlQuery.ACCESS_ID);
+        ByteArkV2UrlSigner signer = accessId == null ? null : ring.get().get(accessId);
+        if (signer != null) {
+            return signer.verifyScanned(ctx, host, path, clientIp, now);
+        }
+        ByteArkSignedUrlVerifyResult result = accessId == null
+                ? ByteArkSignedUrlVerifyResult.MISSING_ACCESS_ID
+                : ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE;
+        if (listener != null) {
+            if (now < 0) {
+                now = System.currentTimeMillis() / 1000;
+            }
+            listener.onVerify(host, path, result, ctx.query.longValue(SignedUrlQuery.EXPIRES, Long.MIN_VALUE),
+                    now, System.nanoTime() - started);
+        }
+        return result;
+    }
+
+    private ByteArkV2UrlSigner newSigner(String accessId, String accessSecret) {
+        return new ByteArkV2UrlSigner.Builder()
+                .withAccessId(accessId)
+                .withAccessSecret(accessSecret)
+                .withGeoIp(geoIp)
+                .withRevocationList(revocations)
+                .withListener(listener)
+                .withVerifyCache(verifyCacheSize > 0 ? new ByteArkVerifyCache(verifyCacheSize) : null)
+                .build();
+    }
+
+    public static final class Builder {
+        private Map<String, String> keys = Collections.emptyMap();
+        private ByteArkIpTrie geoIp;
+        private ByteArkRevocationList revocations;
+        private ByteArkV2UrlSignerListener listener;
+        private int verifyCacheSize;
+
+        /**
+         * @param keys access id to access secret
+         */
+        public Builder withKeys(Map<String, String> keys) {
+            this.keys = Objects.requireNonNull(keys);
+            return this;
+        }
+
+        /**
+         * IP-to-country table passed to every signer.
+         */
+        public Builder withGeoIp(ByteArkIpTrie geoIp) {
+            this.geoIp = geoIp;
+            return this;
+        }
+
+        /**
+         * Revocation list shared by every signer.
+         */
+        public Builder withRevocationList(ByteArkRevocationList revocations) {
+            this.revocations = revocations;
+            return this;
+        }
+
+        /**
+         * Listener passed to every signer, which also hears of URLs with a
+         * missing or unknown access id.
+         */
+        public Builder withListener(ByteArkV2UrlSignerListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * Gives every signer a {@link ByteArkVerifyCache} of this many
+         * entries. A cache belongs to one secret, so each key has its own,
+         * and replacing a key starts it empty.
+         */
+        public Builder withVerifyCacheSize(int maxEntries) {
+            if (maxEntries < 2) {
+                throw new IllegalArgumentException("maxEntries must be at least 2");
+            }
+            this.verifyCacheSize = maxEntries;
+            return this;
+        }
+
+        public ByteArkV2KeyRingVerifier build() {
+            return new ByteArkV2KeyRingVerifier(this);
+        }
+    }
+}
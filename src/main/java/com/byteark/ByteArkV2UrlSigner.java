@@ -1,32 +1,86 @@
 package com.byteark;
 
-import java.io.UnsupportedEncodingException;
+import java.io.IOException;
 import java.net.MalformedURLException;
-import java.net.URL;
-import java.net.URLEncoder;
-import java.security.MessageDigest;
-import java.security.NoSuchAlgorithmException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.IntStream;
+import java.util.stream.Stream;
 
 public class ByteArkV2UrlSigner {
-    private String accessId;
-    private String accessSecret;
-    private int defaultAge = 900;
-    private boolean skipUrlEncoding = false;
+    static final int MAX_SHARED_QUERIES = 1024;
 
-    private ByteArkV2UrlSigner() {
-    }
+    private final String accessId;
+    private final String accessSecret;
+    private final int defaultAge;
+    private final boolean skipUrlEncoding;
+    private final String queryAccessId;
+    private final byte[] accessSecretBytes;
+    private final ByteArkVerifyCache verifyCache;
+    private final ByteArkV2UrlSignerListener listener;
+    private final ByteArkIpTrie geoIp;
+    private final ByteArkRevocationList revocations;
 
     public ByteArkV2UrlSigner(String accessId,
                               String accessSecret,
                               int defaultAge,
                               boolean skipUrlEncoding) {
+        this(accessId, accessSecret, defaultAge, skipUrlEncoding, null, null, null, null);
+    }
+
+    private ByteArkV2UrlSigner(String accessId,
+                               String accessSecret,
+                               int defaultAge,
+                               boolean skipUrlEncoding,
+                               ByteArkVerifyCache verifyCache,
+                               ByteArkV2UrlSignerListener listener,
+                               ByteArkIpTrie geoIp,
+                               ByteArkRevocationList revocations) {
         Objects.requireNonNull(accessSecret);
         Objects.requireNonNull(accessId);
         this.accessId = accessId;
         this.accessSecret = accessSecret;
         this.defaultAge = defaultAge;
         this.skipUrlEncoding = skipUrlEncoding;
+        this.queryAccessId = encodeQueryValue(accessId);
+        this.accessSecretBytes = accessSecret.getBytes();
+        this.verifyCache = verifyCache;
+        this.listener = listener;
+        this.geoIp = geoIp;
+        this.revocations = revocations;
+        if (verifyCache != null) {
+            verifyCache.bind(this);
+        }
+    }
+
+    /**
+     * A signer with the same key and policies that neither uses the verify
+     * cache nor reports to the listener, for verifying URLs that are not
+     * live requests.
+     */
+    ByteArkV2UrlSigner withoutCacheAndListener() {
+        if (verifyCache == null && listener == null) {
+            return this;
+        }
+        return new ByteArkV2UrlSigner(accessId, accessSecret, defaultAge, skipUrlEncoding,
+                null, null, geoIp, revocations);
+    }
+
+    /**
+     * Drops the signing scratch state of the calling thread. Signers keep
+     * one small context per thread, shared by all signers and bounded in
+     * size; call this from pooled threads that outlive the application,
+     * for example when undeploying from an application server.
+     */
+    public static void releaseThreadResources() {
+        SigningContext.release();
+    }
+
+    public int getDefaultAge() {
+        return defaultAge;
     }
 
     public String sign(String url, long expires) {
@@ -34,154 +88,843 @@ public class ByteArkV2UrlSigner {
     }
 
     public String sign(String url, long expires, Map<String, String> options) {
-        URL parsedUrl;
+        StringBuilder sb = new StringBuilder(url.length() + 160);
+        return sign(url, expires, options, sb).toString();
+    }
+
+    /**
+     * Appends the signed URL to {@code out} and returns it, without
+     * allocating per call. Query parameters already in the URL are kept,
+     * except {@code x_ark_*} ones, and joined with the signed ones by
+     * {@code &}; a fragment is moved after the signed parameters.
+     */
+    public StringBuilder sign(String url, long expires, Map<String, String> options, StringBuilder out) {
+        UrlSplitter parts = split(url);
         try {
-            parsedUrl = new URL(url);
-        } catch (MalformedURLException e) {
-            throw  new RuntimeException(e);
+            parts.appendUnsigned(out);
+            appendSignedQueryParams(parts.host, parts.path, expires, options, out);
+            parts.appendFragment(out);
+            return out;
+        } finally {
+            parts.clear();
         }
-        String queryString = makeSignedQueryParams(
-                parsedUrl.getHost(),
-                parsedUrl.getPath(),
-                expires,
-                options);
-        return url + "?" + queryString;
     }
 
+    public void sign(String url, long expires, Map<String, String> options, Appendable out) throws IOException {
+        SigningContext ctx = SigningContext.current();
+        StringBuilder text = ctx.text;
+        text.setLength(0);
+        try {
+            sign(url, expires, options, text);
+            out.append(text);
+        } finally {
+            ctx.trimText();
+        }
+    }
+
+    public List<String> signAll(List<String> urls, long expires, Map<String, String> options) {
+        return signAll(urls, expires, options, null);
+    }
+
+    /**
+     * Signs every URL with the same expiry and options. With the
+     * path_prefix option, URLs sharing a host are hashed only once. When {@code pool} is given the URLs are signed in parallel
+     * on it; the result keeps the order of {@code urls}.
+     */
+    public List<String> signAll(List<String> urls,
+                                long expires,
+                                Map<String, String> options,
+                                ForkJoinPool pool) {
+        PreparedPolicy policy = prepare(options);
+        long resolvedExpires = resolveExpires(expires);
+        if (pool == null) {
+            Map<String, String> queries = new HashMap<>();
+            List<String> result = new ArrayList<>(urls.size());
+            for (String url : urls) {
+                result.add(signShared(url, resolvedExpires, policy, queries));
+            }
+            return result;
+        }
+
+        Map<String, String> queries = new ConcurrentHashMap<>();
+        String[] result = new String[urls.size()];
+        pool.submit(() -> IntStream.range(0, result.length)
+                .parallel()
+                .forEach(i -> result[i] = signShared(urls.get(i), resolvedExpires, policy, queries)))
+                .join();
+        return Arrays.asList(result);
+    }
+
+    /**
+     * Lazily signs a stream of URLs like {@link #signAll(List, long, Map)}.
+     * Parallel streams are supported.
+     */
+    public Stream<String> signAll(Stream<String> urls, long expires, Map<String, String> options) {
+        PreparedPolicy policy = prepare(options);
+        long resolvedExpires = resolveExpires(expires);
+        Map<String, String> queries = new ConcurrentHashMap<>();
+        return urls.map(url -> signShared(url, resolvedExpires, policy, queries));
+    }
+
+    private String signShared(String url, long expires, PreparedPolicy policy, Map<String, String> queries) {
+        UrlSplitter parts = split(url);
+        try {
+            String query = sharedQueryParams(parts.host.toString(), parts.path.toString(), expires, policy, queries);
+            StringBuilder sb = new StringBuilder(url.length() + query.length() + 1);
+            parts.appendUnsigned(sb);
+            sb.append(query);
+            parts.appendFragment(sb);
+            return sb.toString();
+        } finally {
+            parts.clear();
+        }
+    }
+
+    /**
+     * Splits {@code url} with the current thread's splitter, which the
+     * caller clears when done.
+     */
+    static UrlSplitter split(CharSequence url) {
+        UrlSplitter parts = SigningContext.current().url;
+        if (!parts.split(url)) {
+            throw new RuntimeException(new MalformedURLException("no protocol: " + url));
+        }
+        return parts;
+    }
+
+    /**
+     * Returns the signed query string for a host and path. With a
+     * path_prefix the query is the same for every path on a host, and the
+     * one already in {@code queries} is reused; {@code queries} is cleared
+     * when it reaches {@link #MAX_SHARED_QUERIES} hosts. Without one every
+     * path has its own query, which is not kept.
+     */
+    String sharedQueryParams(String host,
+                             String path,
+                             long expires,
+                             PreparedPolicy policy,
+                             Map<String, String> queries) {
+        if (policy.pathPrefix == null) {
+            return makeSignedQueryParamsPrepared(host, path, expires, policy, new StringBuilder(160)).toString();
+        }
+        if (queries.size() >= MAX_SHARED_QUERIES) {
+            queries.clear();
+        }
+        return queries.computeIfAbsent(
+                host,
+                k -> makeSignedQueryParamsPrepared(host, path, expires, policy, new StringBuilder(160)).toString());
+    }
+
+    long resolveExpires(long expires) {
+        if (expires <= 0) {
+            return System.currentTimeMillis() / 1000 + defaultAge;
+        }
+        return expires;
+    }
+
+    /**
+     * Verifies a signed URL, throwing a stackless exception for each kind of
+     * rejection. Use {@link #verifyResult(String, long)} to avoid exceptions.
+     */
     public void verify(String url, long now)
             throws MalformedURLException,
             ByteArkSignedUrlExpiredException,
             ByteArkSignedUrlInvalidConditionException,
             ByteArkSignedUrlInvalidSignatureException,
             ByteArkSignedUrlMissingParamException {
+        throwIfInvalid(verifyResult(url, now));
+    }
+
+    /**
+     * Verifies a request that was already split into host, path and raw
+     * (still URL-encoded) query string.
+     */
+    public void verify(String host, String path, CharSequence rawQuery, long now)
+            throws ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        throwIfInvalid(verifyResult(host, path, rawQuery, now));
+    }
+
+    static void throwIfInvalid(ByteArkSignedUrlVerifyResult result)
+            throws ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        switch (result) {
+            case OK:
+                return;
+            case EXPIRED:
+                throw new ByteArkSignedUrlExpiredException();
+            case MISSING_ACCESS_ID:
+            case MISSING_EXPIRES:
+            case MISSING_SIGNATURE:
+                throw new ByteArkSignedUrlMissingParamException(
+                        "Missing query parameter '" + result.getMissingParam() + "'");
+            case INVALID_CONDITION:
+            case REVOKED:
+                throw new ByteArkSignedUrlInvalidConditionException();
+            default:
+                throw new ByteArkSignedUrlInvalidSignatureException();
+        }
+    }
+
+    /**
+     * Verifies a signed URL and reports the outcome instead of throwing.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String url, long now) throws MalformedURLException {
+        return verifyResult(url, null, now);
+    }
+
+    /**
+     * Verifies a signed URL requested from {@code clientIp}; see
+     * {@link #verifyResult(String, String, CharSequence, CharSequence, long)}.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String url, CharSequence clientIp, long now)
+            throws MalformedURLException {
+        SigningContext ctx = SigningContext.current();
+        UrlSplitter parts = ctx.url;
+        if (!parts.split(url)) {
+            throw new MalformedURLException("no protocol: " + url);
+        }
+        ctx.query.scan(parts.hasQuery() ? parts.query : null);
+        try {
+            return verifyScanned(ctx, parts.host, parts.path, clientIp, now);
+        } finally {
+            ctx.query.clear();
+            parts.clear();
+        }
+    }
+
+    /**
+     * Verifies a request that was already split into host, path and raw
+     * query string. Only the x_ark_* parameters are looked at, in a single
+     * pass and without building maps. A non-numeric x_ark_expires cannot
+     * match any signature and is reported as
+     * {@link ByteArkSignedUrlVerifyResult#INVALID_SIGNATURE}.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String host, String path, CharSequence rawQuery, long now) {
+        return verifyResult(host, path, rawQuery, null, now);
+    }
+
+    /**
+     * Verifies a request from {@code clientIp}, also enforcing the policies
+     * that depend on it:
+     * <ul>
+     * <li>{@code client_ip}: the address is signed in place of the value,
+     * so a URL signed for another address has an invalid signature. The
+     * address is compared as text, as it was given when signing.</li>
+     * <li>{@code client_ip_range}: the address must be in one of the
+     * comma-separated networks, such as {@code 203.0.113.0/24}.</li>
+     * <li>{@code geo_allow}: with a
+     * {@link Builder#withGeoIp(ByteArkIpTrie) geo IP table}, the country
+     * of the address must be in the list.</li>
+     * </ul>
+     * Failing a range or country check, or an address that does not parse
+     * when one is needed, is
+     * {@link ByteArkSignedUrlVerifyResult#INVALID_CONDITION}. With a null
+     * {@code clientIp} these checks are skipped.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(String host,
+                                                     String path,
+                                                     CharSequence rawQuery,
+                                                     CharSequence clientIp,
+                                                     long now) {
+        SigningContext ctx = SigningContext.current();
+        ctx.query.scan(rawQuery);
+        try {
+            return verifyScanned(ctx, host, path, clientIp, now);
+        } finally {
+            ctx.query.clear();
+        }
+    }
+
+    public void verify(String host, String path, CharSequence rawQuery, CharSequence clientIp, long now)
+            throws ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        throwIfInvalid(verifyResult(host, path, rawQuery, clientIp, now));
+    }
+
+    /**
+     * Verifies a request read as bytes: the Host header value and the
+     * request target of the request line ({@code /path?query}), each
+     * between position and limit. Both are read in place and their
+     * positions are left unchanged.
+     */
+    public ByteArkSignedUrlVerifyResult verifyResult(ByteBuffer host, ByteBuffer requestTarget, long now) {
+        SigningContext ctx = SigningContext.current();
+        ByteSequence target = ctx.targetBytes.set(requestTarget, requestTarget.position(), requestTarget.limit());
+        int fragment = target.indexOf('#', 0);
+        int pathEnd = Math.min(target.indexOf('?', 0), fragment);
+        ctx.query.scan(pathEnd == fragment ? null : ctx.queryBytes.set(target, pathEnd + 1, fragment));
+        try {
+            return verifyScanned(ctx,
+                    ctx.hostBytes.set(host, host.position(), host.limit()),
+                    ctx.pathBytes.set(target, 0, pathEnd),
+                    null,
+                    now);
+        } finally {
+            ctx.query.clear();
+            ctx.clearBytes();
+        }
+    }
+
+    public void verify(ByteBuffer host, ByteBuffer requestTarget, long now)
+            throws ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        throwIfInvalid(verifyResult(host, requestTarget, now));
+    }
+
+    /**
+     * Verifies the query already scanned into {@code ctx.query}.
+     */
+    ByteArkSignedUrlVerifyResult verifyScanned(SigningContext ctx,
+                                               CharSequence host,
+                                               CharSequence path,
+                                               CharSequence clientIp,
+                                               long now) {
         if (now < 0) {
             now = System.currentTimeMillis() / 1000;
         }
+        ByteArkV2UrlSignerListener listener = this.listener;
+        if (listener == null) {
+            return checkScanned(ctx, host, path, clientIp, now);
+        }
+        long started = System.nanoTime();
+        ByteArkSignedUrlVerifyResult result = checkScanned(ctx, host, path, clientIp, now);
+        long nanos = System.nanoTime() - started;
+        listener.onVerify(host, path, result, ctx.query.longValue(SignedUrlQuery.EXPIRES, Long.MIN_VALUE), now, nanos);
+        return result;
+    }
+
+    private ByteArkSignedUrlVerifyResult checkScanned(SigningContext ctx,
+                                                      CharSequence host,
+                                                      CharSequence path,
+                                                      CharSequence clientIp,
+                                                      long now) {
+        SignedUrlQuery query = ctx.query;
+        try {
+            if (!query.has(SignedUrlQuery.EXPIRES)) {
+                return ByteArkSignedUrlVerifyResult.MISSING_EXPIRES;
+            }
+            if (!query.has(SignedUrlQuery.SIGNATURE)) {
+                return ByteArkSignedUrlVerifyResult.MISSING_SIGNATURE;
+            }
+
+            long parsedExpires = query.longValue(SignedUrlQuery.EXPIRES, Long.MIN_VALUE);
+            if (parsedExpires == Long.MIN_VALUE) {
+                return ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE;
+            }
+            if (parsedExpires < now) {
+                return ByteArkSignedUrlVerifyResult.EXPIRED;
+            }
+
+            if (query.has(SignedUrlQuery.PATH_PREFIX)
+                    && !query.isPrefixOf(SignedUrlQuery.PATH_PREFIX, path)) {
+                return ByteArkSignedUrlVerifyResult.INVALID_CONDITION;
+            }
+            if (clientIp != null && !clientConditionsHold(ctx, clientIp)) {
+                return ByteArkSignedUrlVerifyResult.INVALID_CONDITION;
+            }
+            // Before the cache, which may hold the URL from before it was revoked
+            if (revocations != null && revocations.isQueryRevoked(path, query, now)) {
+                return ByteArkSignedUrlVerifyResult.REVOKED;
+            }
+            boolean signedClientIp = clientIp != null && query.has(SignedUrlQuery.CLIENT_IP);
+
+            StringBuilder cacheKey = null;
+            if (verifyCache != null) {
+                cacheKey = ctx.cacheKey;
+                cacheKey.setLength(0);
+                cacheKey.append(host).append('\n').append(path).append('\n');
+                query.appendParams(cacheKey);
+                if (signedClientIp) {
+                    cacheKey.append('\n').append(clientIp);
+                }
+                if (verifyCache.contains(cacheKey, now)) {
+                    return ByteArkSignedUrlVerifyResult.OK;
+                }
+            }
+
+            ctx.clearOptions();
+            for (int i = 0; i < query.policyCount(); i++) {
+                ctx.addOption(query.policyKey(i), query.policyValue(i));
+            }
+            if (signedClientIp) {
+                ctx.addOption("client_ip", clientIp.toString());
+            }
+            hashStringToSign(ctx, host, path, parsedExpires);
+            StringBuilder expectedSignature = ctx.text;
+            expectedSignature.setLength(0);
+            UrlHelper.appendBase64Url(expectedSignature, ctx.digest, 0, SigningContext.DIGEST_LENGTH);
+            if (!query.valueEquals(SignedUrlQuery.SIGNATURE, expectedSignature)) {
+                return ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE;
+            }
+            if (cacheKey != null) {
+                verifyCache.put(cacheKey, parsedExpires);
+            }
+            return ByteArkSignedUrlVerifyResult.OK;
+        } finally {
+            ctx.clearOptions();
+            ctx.trimText();
+        }
+    }
+
+    /**
+     * Checks the client_ip_range and geo_allow policies of the scanned
+     * query against the client address.
+     */
+    private boolean clientConditionsHold(SigningContext ctx, CharSequence clientIp) {
+        SignedUrlQuery query = ctx.query;
+        boolean checkRange = query.has(SignedUrlQuery.CLIENT_IP_RANGE);
+        boolean checkCountry = geoIp != null && query.has(SignedUrlQuery.GEO_ALLOW);
+        if (!checkRange && !checkCountry) {
+            return true;
+        }
+        long[] address = ctx.address;
+        if (!IpAddress.parse(clientIp, address)) {
+            return false;
+        }
+        if (checkRange) {
+            String networks = query.value(SignedUrlQuery.CLIENT_IP_RANGE);
+            if (networks == null || !IpAddress.inAny(networks, address[0], address[1], ctx.network)) {
+                return false;
+            }
+        }
+        if (checkCountry) {
+            String country = geoIp.lookup(address[0], address[1]);
+            String allowed = query.value(SignedUrlQuery.GEO_ALLOW);
+            return country != null && allowed != null && containsItem(allowed, country);
+        }
+        return true;
+    }
+
+    /**
+     * Whether a comma-separated list has {@code item}, ignoring case.
+     */
+    private static boolean containsItem(String list, String item) {
+        int n = list.length();
+        for (int start = 0; start < n; ) {
+            int end = list.indexOf(',', start);
+            if (end < 0) {
+                end = n;
+            }
+            int itemStart = start;
+            while (itemStart < end && list.charAt(itemStart) == ' ') {
+                itemStart++;
+            }
+            if (end - itemStart == item.length() && list.regionMatches(true, itemStart, item, 0, item.length())) {
+                return true;
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    public String makeSignedQueryParams(String host, String path, long expires, Map<String, String> options) {
+        return makeSignedQueryParams(host, path, expires, options, new StringBuilder(160)).toString();
+    }
 
-        URL parsedUrl = new URL(url);
-        String path = parsedUrl.getPath();
-        Map<String, String> parsedQuery = UrlHelper.splitQuery(parsedUrl);
+    /**
+     * Appends the signed query parameters to {@code out}, in the same order
+     * and encoding as {@link #makeSignedQueryParams(String, String, long, Map)}.
+     */
+    public StringBuilder makeSignedQueryParams(String host,
+                                               String path,
+                                               long expires,
+                                               Map<String, String> options,
+                                               StringBuilder out) {
+        return appendSignedQueryParams(host, path, expires, options, out);
+    }
+
+    private StringBuilder appendSignedQueryParams(CharSequence host,
+                                                  CharSequence path,
+                                                  long expires,
+                                                  Map<String, String> options,
+                                                  StringBuilder out) {
+        long started = listener == null ? 0 : System.nanoTime();
+        expires = resolveExpires(expires);
 
+        SigningContext ctx = SigningContext.current();
+        try {
+            collectOptions(ctx, options, true);
+            hashStringToSign(ctx, host, path, expires);
 
-        if (!parsedQuery.containsKey("x_ark_expires")) {
-            throw new ByteArkSignedUrlMissingParamException("Missing query parameter 'x_ark_expires'");
+            appendQueryParams(out, ctx.keys, ctx.values, ctx.size, expires, ctx.digest, null);
+            if (listener != null) {
+                listener.onSign(System.nanoTime() - started);
+            }
+            return out;
+        } finally {
+            ctx.clearOptions();
         }
-        if (!parsedQuery.containsKey("x_ark_signature")) {
-            throw new ByteArkSignedUrlMissingParamException("Missing query parameter 'x_ark_signature'");
+    }
+
+    public String signPrepared(String url, long expires, PreparedPolicy policy) {
+        StringBuilder sb = new StringBuilder(url.length() + 160);
+        return signPrepared(url, expires, policy, sb).toString();
+    }
+
+    /**
+     * Appends the URL signed with a policy from {@link #prepare(Map)}. Only
+     * the string to sign is hashed; the query string is concatenated from
+     * fragments encoded when the policy was prepared.
+     */
+    public StringBuilder signPrepared(String url, long expires, PreparedPolicy policy, StringBuilder out) {
+        UrlSplitter parts = split(url);
+        try {
+            return sign(parts, expires, policy, out);
+        } finally {
+            parts.clear();
         }
+    }
+
+    /**
+     * Appends the URL already split into {@code parts}, signed with a
+     * policy from {@link #prepare(Map)}.
+     */
+    StringBuilder sign(UrlSplitter parts, long expires, PreparedPolicy policy, StringBuilder out) {
+        parts.appendUnsigned(out);
+        appendSignedQueryParams(parts.host, parts.path, expires, policy, out);
+        parts.appendFragment(out);
+        return out;
+    }
+
+    public StringBuilder makeSignedQueryParamsPrepared(String host,
+                                                       String path,
+                                                       long expires,
+                                                       PreparedPolicy policy,
+                                                       StringBuilder out) {
+        return appendSignedQueryParams(host, path, expires, policy, out);
+    }
 
-        long parsedExpires = Long.parseLong(parsedQuery.get("x_ark_expires"));
-        if (parsedExpires < now) {
-            throw new ByteArkSignedUrlExpiredException();
+    private StringBuilder appendSignedQueryParams(CharSequence host,
+                                                  CharSequence path,
+                                                  long expires,
+                                                  PreparedPolicy policy,
+                                                  StringBuilder out) {
+        if (policy.signer != this) {
+            throw new IllegalArgumentException("Policy was prepared by another signer");
         }
+        long started = listener == null ? 0 : System.nanoTime();
+        expires = resolveExpires(expires);
 
-        if (parsedQuery.containsKey("x_ark_path_prefix")
-                && !path.startsWith(parsedQuery.get("x_ark_path_prefix"))) {
-            throw new ByteArkSignedUrlInvalidConditionException();
+        SigningContext ctx = SigningContext.current();
+        hashPrepared(ctx, host, path, expires, policy);
+
+        String[] fragments = policy.queryFragments;
+        int f = 0;
+        out.append(fragments[f++]);
+        if (policy.hasExpires) {
+            out.append(expires);
+            out.append(fragments[f++]);
+        }
+        if (policy.hasSignature) {
+            UrlHelper.appendBase64Url(out, ctx.digest, 0, SigningContext.DIGEST_LENGTH);
+            out.append(fragments[f]);
         }
+        if (listener != null) {
+            listener.onSign(System.nanoTime() - started);
+        }
+        return out;
+    }
 
-        Map<String, String> options = new HashMap<>();
-        parsedQuery.entrySet()
-                .stream()
-                .filter(this::shouldQueryExistsInOptions)
-                .forEach(e -> {
-                options.put(
-                        e.getKey().replaceAll("x_ark_", "") ,
-                        e.getValue());
-            });
-        String expectedSignature = this.makeSignature(
-                parsedUrl.getHost(),
-                parsedUrl.getPath(),
-                parsedExpires,
-                options
-        );
-        if ( !expectedSignature.equals(parsedQuery.get("x_ark_signature"))) {
-            throw new ByteArkSignedUrlInvalidSignatureException();
-        }
-    }
-
-    private boolean shouldQueryExistsInOptions(Map.Entry<String, String> entry) {
-        String key = entry.getKey();
-        return key.startsWith("x_ark_")
-                && !key.equals("x_ark_access_id")
-                && !key.equals("x_ark_auth_type")
-                && !key.equals("x_ark_expires")
-                && !key.equals("x_ark_signature");
+    /**
+     * Writes the URL in {@code url} (from its position to its limit)
+     * followed by its signed query to {@code out}, as
+     * {@link #signPrepared(String, long, PreparedPolicy)} would, without decoding
+     * either to a String. The position of {@code url} is left unchanged and
+     * the position of {@code out} is advanced.
+     *
+     * @throws IllegalArgumentException if the URL has no scheme
+     * @throws java.nio.BufferOverflowException if {@code out} is too small
+     */
+    public ByteBuffer sign(ByteBuffer url, long expires, PreparedPolicy policy, ByteBuffer out) {
+        SigningContext ctx = SigningContext.current();
+        UrlSplitter parts = ctx.url;
+        try {
+            ByteSequence u = ctx.targetBytes.set(url, url.position(), url.limit());
+            if (!parts.split(u)) {
+                throw new IllegalArgumentException("Not an absolute URL");
+            }
+            parts.putUnsigned(u, out);
+            writeSignedQueryParams(ctx, parts.host, parts.path, expires, policy, out);
+            parts.putFragment(u, out);
+            return out;
+        } finally {
+            parts.clear();
+            ctx.clearBytes();
+        }
     }
 
-    public String makeSignedQueryParams(String host, String path, long expires, Map<String, String> options) {
-        if (expires <= 0) {
-            expires = System.currentTimeMillis() / 1000 + defaultAge;
+    /**
+     * Writes the signed query parameters for the host and path bytes
+     * (between position and limit, US-ASCII) to {@code out}, in the same
+     * order and encoding as
+     * {@link #makeSignedQueryParams(String, String, long, Map)}. Heap and
+     * direct buffers both work; no String is created for ASCII input. The
+     * positions of {@code host} and {@code path} are left unchanged and the
+     * position of {@code out} is advanced.
+     *
+     * @throws java.nio.BufferOverflowException if {@code out} is too small
+     */
+    public ByteBuffer makeSignedQueryParams(ByteBuffer host,
+                                            ByteBuffer path,
+                                            long expires,
+                                            PreparedPolicy policy,
+                                            ByteBuffer out) {
+        SigningContext ctx = SigningContext.current();
+        try {
+            return writeSignedQueryParams(ctx,
+                    ctx.hostBytes.set(host, host.position(), host.limit()),
+                    ctx.pathBytes.set(path, path.position(), path.limit()),
+                    expires,
+                    policy,
+                    out);
+        } finally {
+            ctx.clearBytes();
         }
+    }
 
-        if (options==null) {
-            options = new HashMap<>();
+    private ByteBuffer writeSignedQueryParams(SigningContext ctx,
+                                              CharSequence host,
+                                              CharSequence path,
+                                              long expires,
+                                              PreparedPolicy policy,
+                                              ByteBuffer out) {
+        if (policy.signer != this) {
+            throw new IllegalArgumentException("Policy was prepared by another signer");
+        }
+        long started = listener == null ? 0 : System.nanoTime();
+        expires = resolveExpires(expires);
+        hashPrepared(ctx, host, path, expires, policy);
+
+        byte[][] fragments = policy.queryFragmentBytes;
+        int f = 0;
+        out.put(fragments[f++]);
+        if (policy.hasExpires) {
+            UrlHelper.putLong(out, expires);
+            out.put(fragments[f++]);
+        }
+        if (policy.hasSignature) {
+            UrlHelper.putBase64Url(out, ctx.digest, 0, SigningContext.DIGEST_LENGTH);
+            out.put(fragments[f]);
+        }
+        if (listener != null) {
+            listener.onSign(System.nanoTime() - started);
+        }
+        return out;
+    }
+
+    private void hashPrepared(SigningContext ctx,
+                              CharSequence host,
+                              CharSequence path,
+                              long expires,
+                              PreparedPolicy policy) {
+        ctx.reset();
+        ctx.putAscii(policy.method);
+        ctx.put('\n');
+        ctx.putAscii(host);
+        ctx.put('\n');
+        if (policy.pathPrefix != null) {
+            ctx.putAscii(policy.pathPrefix);
         } else {
-            options = makeCanonicalOptions(options);
+            ctx.putAscii(path);
         }
-        SortedMap<String, String> queryParams = new TreeMap<>();
-        queryParams.put("x_ark_access_id", accessId);
-        queryParams.put("x_ark_auth_type", "ark-v2");
-        queryParams.put("x_ark_expires", String.valueOf(expires));
-        queryParams.put("x_ark_signature", this.makeSignature(host, path, expires, options));
+        ctx.put('\n');
+        ctx.put(policy.policyLines);
+        ctx.markPrefix();
+        ctx.putLong(expires);
+        ctx.put('\n');
+        ctx.put(accessSecretBytes);
+        if (ctx.hasNonAscii() || policy.nonAscii) {
+            ctx.digestBytes(makeStringToSign(host.toString(), path.toString(), expires, policy.options).getBytes());
+        } else {
+            ctx.digestBuffer();
+        }
+    }
 
-        options.entrySet()
-                .stream()
-                .filter(this::shouldOptionExistsInQuery)
-                .forEach(e -> {
-                    queryParams.put("x_ark_" + e.getKey(),
-                            this.shouldOptionValueExistsInQuery(e) ? e.getValue():"1");
-                });
+    /**
+     * Canonicalizes sign options once so that they can be reused for many
+     * {@link #signPrepared(String, long, PreparedPolicy)} calls on this signer.
+     */
+    public PreparedPolicy prepare(Map<String, String> options) {
+        Map<String, String> canonical = options == null
+                ? new HashMap<>()
+                : makeCanonicalOptions(options);
+        String[] keys = new String[canonical.size()];
+        String[] values = new String[canonical.size()];
+        int size = 0;
+        for (String k : new TreeMap<>(canonical).keySet()) {
+            keys[size] = k;
+            values[size] = canonical.get(k);
+            size++;
+        }
 
+        String policyLines = makeCustomPolicyLines(canonical).toString();
+        List<String> fragments = new ArrayList<>(3);
         StringBuilder sb = new StringBuilder();
-        try {
-            for (Map.Entry<String, String> entry : queryParams.entrySet()) {
-                String k = entry.getKey();
-                String v = entry.getValue();
-                if (sb.length() > 0) {
-                    sb.append('&');
-                }
-                sb.append(k);
-                sb.append('=');
+        appendQueryParams(sb, keys, values, size, 0, null, fragments);
+        fragments.add(sb.toString());
+        return new PreparedPolicy(
+                this,
+                String.valueOf(canonical.getOrDefault("method", "GET")),
+                canonical.containsKey("path_prefix") ? String.valueOf(canonical.get("path_prefix")) : null,
+                policyLines,
+                Collections.unmodifiableMap(canonical),
+                fragments);
+    }
+
+    private static final String[] FIXED_QUERY_KEYS = {
+            "access_id", "auth_type", "expires", "signature"
+    };
+    private static final int FIXED_EXPIRES = 2;
+    private static final int FIXED_SIGNATURE = 3;
+
+    /**
+     * Appends the query parameters for sorted canonical options. Query keys
+     * are "x_ark_" + key, so ordering by key is enough to interleave the
+     * options with the fixed parameters like a TreeMap would; options sharing
+     * a fixed parameter's name override it. When {@code fragments} is given,
+     * the text around the expires and signature values is collected into it
+     * instead of writing those values.
+     */
+    private void appendQueryParams(StringBuilder out,
+                                   String[] keys,
+                                   String[] values,
+                                   int size,
+                                   long expires,
+                                   byte[] digest,
+                                   List<String> fragments) {
+        int i = 0;
+        int fixed = 0;
+        boolean first = true;
+        while (true) {
+            if (i < size && !shouldOptionExistsInQuery(keys[i])) {
+                i++;
+                continue;
+            }
+            String optionKey = i < size ? keys[i] : null;
+            String fixedKey = fixed < FIXED_QUERY_KEYS.length ? FIXED_QUERY_KEYS[fixed] : null;
+            if (optionKey == null && fixedKey == null) {
+                break;
+            }
+            if (!first) {
+                out.append('&');
+            }
+            first = false;
+            out.append("x_ark_");
+            int cmp = optionKey == null ? 1 : fixedKey == null ? -1 : optionKey.compareTo(fixedKey);
+            if (cmp <= 0) {
+                out.append(optionKey).append('=');
+                String value = shouldOptionValueExistsInQuery(optionKey) ? values[i] : "1";
                 if (skipUrlEncoding) {
-                    sb.append(v);
+                    out.append(value);
                 } else {
-                    sb.append(URLEncoder.encode(v, "UTF-8"));
+                    UrlHelper.appendUrlEncoded(out, value);
                 }
+                i++;
+                if (cmp == 0) {
+                    fixed++;
+                }
+            } else {
+                out.append(fixedKey).append('=');
+                if (fixed == 0) {
+                    out.append(queryAccessId);
+                } else if (fixed == 1) {
+                    out.append("ark-v2");
+                } else if (fragments != null) {
+                    fragments.add(out.toString());
+                    out.setLength(0);
+                } else if (fixed == FIXED_EXPIRES) {
+                    out.append(expires);
+                } else {
+                    UrlHelper.appendBase64Url(out, digest, 0, SigningContext.DIGEST_LENGTH);
+                }
+                fixed++;
             }
-        } catch (UnsupportedEncodingException e) {
-            throw new RuntimeException(e);
         }
-        return sb.toString();
     }
 
-    private boolean shouldOptionValueExistsInQuery(Map.Entry<String, String> entry) {
-        String key = entry.getKey();
-        return key.equals("path_prefix") || key.equals("geo_allow");
+    private String encodeQueryValue(String value) {
+        if (skipUrlEncoding) {
+            return value;
+        }
+        StringBuilder sb = new StringBuilder(value.length());
+        UrlHelper.appendUrlEncoded(sb, value);
+        return sb.toString();
     }
 
-    private boolean shouldOptionExistsInQuery(Map.Entry<String, String> entry) {
-        return !entry.getKey().equals("method");
+    private void collectOptions(SigningContext ctx, Map<String, String> options, boolean canonicalize) {
+        ctx.clearOptions();
+        if (options == null) {
+            return;
+        }
+        for (Map.Entry<String, String> entry : options.entrySet()) {
+            String k = entry.getKey();
+            ctx.addOption(canonicalize ? makeCanonical(k) : k, entry.getValue());
+        }
     }
 
-    private String makeSignature(String host,
-                         String path,
-                         long expires,
-                         Map<String, String> options) {
-        try {
-            String stringToSign = makeStringToSign(host, path, expires, options);
-            MessageDigest hasher = MessageDigest.getInstance("MD5");
-            hasher.update(stringToSign.getBytes());
-            byte[] digest = hasher.digest();
-            return new String(Base64.getEncoder().encode(digest))
-                    .replace('+', '-')
-                    .replace('/', '_')
-                    .replaceAll("=+$", "");
-        } catch (NoSuchAlgorithmException e) {
-            throw new RuntimeException(e);
+    /**
+     * Hashes the string to sign for the options collected in {@code ctx},
+     * leaving the digest in {@code ctx.digest}.
+     */
+    private void hashStringToSign(SigningContext ctx,
+                                  CharSequence host,
+                                  CharSequence path,
+                                  long expires) {
+        ctx.reset();
+        ctx.putAscii(String.valueOf(ctx.option("method", "GET")));
+        ctx.put('\n');
+        ctx.putAscii(host);
+        ctx.put('\n');
+        String pathPrefix = ctx.option("path_prefix", null);
+        if (pathPrefix != null) {
+            ctx.putAscii(pathPrefix);
+        } else {
+            ctx.putAscii(path);
+        }
+        ctx.put('\n');
+        for (int i = 0; i < ctx.size; i++) {
+            String k = ctx.keys[i];
+            if (shouldOptionExistsInCustomPolicyLine(k)) {
+                ctx.putAscii(k);
+                ctx.put(':');
+                ctx.putAscii(String.valueOf(ctx.values[i]));
+                ctx.put('\n');
+            }
+        }
+        ctx.markPrefix();
+        ctx.putLong(expires);
+        ctx.put('\n');
+        ctx.put(accessSecretBytes);
+
+        if (ctx.hasNonAscii()) {
+            // Keep the platform-charset encoding used by the original string path.
+            Map<String, String> options = new HashMap<>();
+            for (int i = 0; i < ctx.size; i++) {
+                options.put(ctx.keys[i], ctx.values[i]);
+            }
+            ctx.digestBytes(makeStringToSign(host.toString(), path.toString(), expires, options).getBytes());
+        } else {
+            ctx.digestBuffer();
         }
     }
 
+    private boolean shouldOptionValueExistsInQuery(String key) {
+        return key.equals("path_prefix") || key.equals("geo_allow") || key.equals("client_ip_range");
+    }
+
+    private boolean shouldOptionExistsInQuery(String key) {
+        return !key.equals("method");
+    }
+
     private String makeStringToSign(String host, String path, long expires, Map<String, String> options) {
 
         StringBuilder linesToSign = new StringBuilder();
@@ -213,7 +956,7 @@ public class ByteArkV2UrlSigner {
         StringBuilder sb = new StringBuilder();
         options.entrySet()
                 .stream()
-                .filter(this::shouldOptionExistsInCustomPolicyLine)
+                .filter(e -> shouldOptionExistsInCustomPolicyLine(e.getKey()))
                 .sorted(Map.Entry.comparingByKey())
                 .forEach(e -> {
                     sb.append(e.getKey())
@@ -224,8 +967,7 @@ public class ByteArkV2UrlSigner {
         return sb;
     }
 
-    private boolean shouldOptionExistsInCustomPolicyLine(Map.Entry<String, String> entry) {
-        String k = entry.getKey();
+    private boolean shouldOptionExistsInCustomPolicyLine(String k) {
         return !k.equals("method")
                 && !k.equals("path_prefix");
     }
@@ -235,11 +977,70 @@ public class ByteArkV2UrlSigner {
     }
 
 
+    /**
+     * Sign options canonicalized by {@link #prepare(Map)}, with the policy
+     * lines and the static parts of the query string already encoded.
+     * Instances are immutable and can be shared between threads.
+     */
+    public static final class PreparedPolicy {
+        private final ByteArkV2UrlSigner signer;
+        private final String method;
+        private final String pathPrefix;
+        private final byte[] policyLines;
+        private final boolean nonAscii;
+        private final Map<String, String> options;
+        private final String[] queryFragments;
+        private final byte[][] queryFragmentBytes;
+        private final boolean hasExpires;
+        private final boolean hasSignature;
+
+        private PreparedPolicy(ByteArkV2UrlSigner signer,
+                               String method,
+                               String pathPrefix,
+                               String policyLines,
+                               Map<String, String> options,
+                               List<String> queryFragments) {
+            this.signer = signer;
+            this.method = method;
+            this.pathPrefix = pathPrefix;
+            this.policyLines = policyLines.getBytes();
+            this.nonAscii = !isAscii(method)
+                    || (pathPrefix != null && !isAscii(pathPrefix))
+                    || !isAscii(policyLines);
+            this.options = options;
+            this.queryFragments = queryFragments.toArray(new String[0]);
+            this.queryFragmentBytes = new byte[this.queryFragments.length][];
+            for (int i = 0; i < this.queryFragments.length; i++) {
+                queryFragmentBytes[i] = this.queryFragments[i].getBytes(StandardCharsets.UTF_8);
+            }
+            // Options named after a fixed parameter replace its value
+            this.hasExpires = !options.containsKey("expires");
+            this.hasSignature = !options.containsKey("signature");
+        }
+
+        public Map<String, String> getOptions() {
+            return options;
+        }
+
+        private static boolean isAscii(String s) {
+            for (int i = 0; i < s.length(); i++) {
+                if (s.charAt(i) >= 0x80) {
+                    return false;
+                }
+            }
+            return true;
+        }
+    }
+
     public static final class Builder {
         private String accessId;
         private String access_secret;
         private int defaultAge = 900;
         private boolean skipUrlEncoding = false;
+        private ByteArkVerifyCache verifyCache;
+        private ByteArkV2UrlSignerListener listener;
+        private ByteArkIpTrie geoIp;
+        private ByteArkRevocationList revocations;
 
         public Builder() {
         }
@@ -264,8 +1065,45 @@ public class ByteArkV2UrlSigner {
             return this;
         }
 
+        /**
+         * Remembers successfully verified URLs until they expire, so that
+         * repeated requests for the same signed URL skip hashing.
+         */
+        public Builder withVerifyCache(ByteArkVerifyCache verifyCache) {
+            this.verifyCache = verifyCache;
+            return this;
+        }
+
+        /**
+         * Reports every sign and verify, for example to a
+         * {@link ByteArkV2UrlSignerMetrics}.
+         */
+        public Builder withListener(ByteArkV2UrlSignerListener listener) {
+            this.listener = listener;
+            return this;
+        }
+
+        /**
+         * IP-to-country table for enforcing {@code geo_allow} when verifying
+         * with a client address.
+         */
+        public Builder withGeoIp(ByteArkIpTrie geoIp) {
+            this.geoIp = geoIp;
+            return this;
+        }
+
+        /**
+         * URLs to reject as {@link ByteArkSignedUrlVerifyResult#REVOKED}
+         * before they expire. A list can be shared by many signers.
+         */
+        public Builder withRevocationList(ByteArkRevocationList revocations) {
+            this.revocations = revocations;
+            return this;
+        }
+
         public ByteArkV2UrlSigner build() {
-            return new ByteArkV2UrlSigner(accessId, access_secret, defaultAge, skipUrlEncoding);
+            return new ByteArkV2UrlSigner(accessId, access_secret, defaultAge, skipUrlEncoding,
+                    verifyCache, listener, geoIp, revocations);
         }
     }
 }
@@ -0,0 +1,37 @@
+package com.byteark;
+
+/**
+ * Receives the outcome and duration of every sign and verify of a signer
+ * built with {@link ByteArkV2UrlSigner.Builder#withListener}. Callbacks run
+ * on the calling thread, so implementations must be thread-safe and fast.
+ * Signers without a listener skip the timing entirely.
+ *
+ * @see ByteArkV2UrlSignerMetrics
+ */
+public interface ByteArkV2UrlSignerListener {
+    /**
+     * Called after the signed query of a URL was built.
+     *
+     * @param nanos time spent hashing and writing the query
+     */
+    default void onSign(long nanos) {
+    }
+
+    /**
+     * Called after a URL was verified.
+     *
+     * @param host    the host, valid only during the call
+     * @param path    the path, valid only during the call
+     * @param expires the URL's x_ark_expires, or {@link Long#MIN_VALUE} if
+     *                it is missing or not a number
+     * @param now     the time verified against, in Unix seconds
+     * @param nanos   time spent verifying the scanned query
+     */
+    default void onVerify(CharSequence host,
+                          CharSequence path,
+                          ByteArkSignedUrlVerifyResult result,
+                          long expires,
+                          long now,
+                          long nanos) {
+    }
+}
@@ -0,0 +1,187 @@
+package com.byteark;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Listener that counts sign and verify outcomes and records their latency,
+ * plus the time left until expiry of URLs that verified successfully.
+ *
+ * <p>Verifications that fail or take at least the slow threshold are also
+ * emitted as {@code com.byteark.Verify} JFR events when the JVM supports
+ * JFR and a recording has the event enabled.
+ *
+ * <pre>{@code
+ * ByteArkV2UrlSignerMetrics metrics = new ByteArkV2UrlSignerMetrics();
+ * ByteArkV2UrlSigner signer = new ByteArkV2UrlSigner.Builder()
+ *         ...
+ *         .withListener(metrics)
+ *         .build();
+ * }</pre>
+ */
+public final class ByteArkV2UrlSignerMetrics implements ByteArkV2UrlSignerListener {
+    // ByteArkVerifyEvent.emit, or null without JFR
+    private static final MethodHandle JFR_EMIT = findJfrEmit();
+
+    private final long slowVerifyNanos;
+    private final LongAdder signs = new LongAdder();
+    private final LongAdder[] verifies = new LongAdder[ByteArkSignedUrlVerifyResult.values().length];
+    private final ByteArkHistogram signLatency = new ByteArkHistogram();
+    private final ByteArkHistogram verifyLatency = new ByteArkHistogram();
+    private final ByteArkHistogram timeToExpiry = new ByteArkHistogram();
+
+    /**
+     * Emits JFR events for verifications slower than 1 ms.
+     */
+    public ByteArkV2UrlSignerMetrics() {
+        this(1, TimeUnit.MILLISECONDS);
+    }
+
+    public ByteArkV2UrlSignerMetrics(long slowVerifyThreshold, TimeUnit unit) {
+        this.slowVerifyNanos = unit.toNanos(slowVerifyThreshold);
+        for (int i = 0; i < verifies.length; i++) {
+            verifies[i] = new LongAdder();
+        }
+    }
+
+    @Override
+    public void onSign(long nanos) {
+        signs.increment();
+        signLatency.record(nanos);
+    }
+
+    @Override
+    public void onVerify(CharSequence host,
+                         CharSequence path,
+                         ByteArkSignedUrlVerifyResult result,
+                         long expires,
+                         long now,
+                         long nanos) {
+        verifies[result.ordinal()].increment();
+        verifyLatency.record(nanos);
+        if (result.isValid()) {
+            timeToExpiry.record(expires - now);
+        }
+        if (JFR_EMIT != null && (!result.isValid() || nanos >= slowVerifyNanos)) {
+            emitJfrEvent(host, path, result, expires, now, nanos);
+        }
+    }
+
+    public long getSignCount() {
+        return signs.sum();
+    }
+
+    public long getVerifyCount() {
+        long sum = 0;
+        for (LongAdder adder : verifies) {
+            sum += adder.sum();
+        }
+        return sum;
+    }
+
+    public long getVerifyCount(ByteArkSignedUrlVerifyResult result) {
+        return verifies[result.ordinal()].sum();
+    }
+
+    public long getSuccessCount() {
+        return getVerifyCount(ByteArkSignedUrlVerifyResult.OK);
+    }
+
+    /**
+     * Verifications that {@code verify} reports with
+     * {@link ByteArkSignedUrlExpiredException}.
+     */
+    public long getExpiredCount() {
+        return getVerifyCount(ByteArkSignedUrlVerifyResult.EXPIRED);
+    }
+
+    /**
+     * Verifications that {@code verify} reports with
+     * {@link ByteArkSignedUrlInvalidConditionException}.
+     */
+    public long getInvalidConditionCount() {
+        return getVerifyCount(ByteArkSignedUrlVerifyResult.INVALID_CONDITION);
+    }
+
+    /**
+     * Verifications of revoked URLs, which {@code verify} also reports with
+     * {@link ByteArkSignedUrlInvalidConditionException}.
+     */
+    public long getRevokedCount() {
+        return getVerifyCount(ByteArkSignedUrlVerifyResult.REVOKED);
+    }
+
+    /**
+     * Verifications that {@code verify} reports with
+     * {@link ByteArkSignedUrlInvalidSignatureException}.
+     */
+    public long getInvalidSignatureCount() {
+        return getVerifyCount(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE);
+    }
+
+    /**
+     * Verifications that {@code verify} reports with
+     * {@link ByteArkSignedUrlMissingParamException}.
+     */
+    public long getMissingParamCount() {
+        long sum = 0;
+        for (ByteArkSignedUrlVerifyResult result : ByteArkSignedUrlVerifyResult.values()) {
+            if (result.isMissingParam()) {
+                sum += getVerifyCount(result);
+            }
+        }
+        return sum;
+    }
+
+    /**
+     * Sign latency in nanoseconds.
+     */
+    public ByteArkHistogram getSignLatency() {
+        return signLatency;
+    }
+
+    /**
+     * Verify latency in nanoseconds.
+     */
+    public ByteArkHistogram getVerifyLatency() {
+        return verifyLatency;
+    }
+
+    /**
+     * Seconds left until expiry of successfully verified URLs.
+     */
+    public ByteArkHistogram getTimeToExpiry() {
+        return timeToExpiry;
+    }
+
+    private static void emitJfrEvent(CharSequence host,
+                                     CharSequence path,
+                                     ByteArkSignedUrlVerifyResult result,
+                                     long expires,
+                                     long now,
+                                     long nanos) {
+        try {
+            JFR_EMIT.invokeExact(host, path, result, expires, now, nanos);
+        } catch (RuntimeException | Error e) {
+            throw e;
+        } catch (Throwable e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private static MethodHandle findJfrEmit() {
+        ClassLoader loader = ByteArkV2UrlSignerMetrics.class.getClassLoader();
+        try {
+            Class.forName("jdk.jfr.Event", false, loader);
+            Class<?> event = Class.forName("com.byteark.ByteArkVerifyEvent", false, loader);
+            return MethodHandles.lookup().findStatic(event, "emit", MethodType.methodType(void.class,
+                    CharSequence.class, CharSequence.class, ByteArkSignedUrlVerifyResult.class,
+                    long.class, long.class, long.class));
+        } catch (ReflectiveOperationException | LinkageError e) {
+            return null;
+        }
+    }
+}
@@ -0,0 +1,167 @@
+package com.byteark;
+
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+import java.util.concurrent.atomic.LongAdder;
+
+/**
+ * Bounded cache of URLs that passed verification, for a signer built with
+ * {@link ByteArkV2UrlSigner.Builder#withVerifyCache(ByteArkVerifyCache)}.
+ * Entries do not record which secret verified them, so a cache belongs to
+ * exactly one signer.
+ *
+ * <p>Entries are keyed by host, path and the raw x_ark_* parameters
+ * (including expires and signature) and only ever record successful
+ * verifications. An entry is never served after its own x_ark_expires.
+ * The table is a lock-free two-way set-associative array: a new entry
+ * replaces an expired or the sooner-expiring entry of its set. A URL is
+ * only admitted the second time it is verified, so one-off URLs do not
+ * churn the table.
+ */
+public final class ByteArkVerifyCache {
+    private final AtomicReferenceArray<Entry> table;
+    private final int mask;
+    // Hashes of recently verified keys; racy updates only cost an admission
+    private final int[] doorkeeper;
+
+    private final LongAdder hits = new LongAdder();
+    private final LongAdder misses = new LongAdder();
+    private final LongAdder evictions = new LongAdder();
+
+    private final AtomicReference<Object> owner = new AtomicReference<>();
+
+    /**
+     * @param maxEntries upper bound of cached URLs, rounded up to a power of two
+     */
+    public ByteArkVerifyCache(int maxEntries) {
+        if (maxEntries < 2) {
+            throw new IllegalArgumentException("maxEntries must be at least 2");
+        }
+        int capacity = Integer.highestOneBit(maxEntries - 1) << 1;
+        this.table = new AtomicReferenceArray<>(capacity);
+        this.mask = capacity - 1;
+        this.doorkeeper = new int[capacity];
+    }
+
+    public long getHitCount() {
+        return hits.sum();
+    }
+
+    public long getMissCount() {
+        return misses.sum();
+    }
+
+    public long getEvictionCount() {
+        return evictions.sum();
+    }
+
+    public int capacity() {
+        return table.length();
+    }
+
+    /**
+     * Counts live entries. This walks the whole table.
+     */
+    public int size() {
+        int size = 0;
+        for (int i = 0; i < table.length(); i++) {
+            if (table.get(i) != null) {
+                size++;
+            }
+        }
+        return size;
+    }
+
+    /**
+     * Drops every entry that expired before {@code now} (Unix seconds).
+     */
+    public void purgeExpired(long now) {
+        for (int i = 0; i < table.length(); i++) {
+            Entry e = table.get(i);
+            if (e != null && e.expires < now && table.compareAndSet(i, e, null)) {
+                evictions.increment();
+            }
+        }
+    }
+
+    public void clear() {
+        for (int i = 0; i < table.length(); i++) {
+            table.set(i, null);
+        }
+    }
+
+    void bind(Object signer) {
+        if (!owner.compareAndSet(null, signer) && owner.get() != signer) {
+            throw new IllegalStateException("Verify cache is already used by another signer");
+        }
+    }
+
+    boolean contains(CharSequence key, long now) {
+        int hash = hash(key);
+        int i = hash & mask;
+        if (matches(i, hash, key, now) || matches(i ^ 1, hash, key, now)) {
+            hits.increment();
+            return true;
+        }
+        misses.increment();
+        return false;
+    }
+
+    void put(CharSequence key, long expires) {
+        int hash = hash(key);
+        int i = hash & mask;
+        if (doorkeeper[i] != hash) {
+            doorkeeper[i] = hash;
+            return;
+        }
+        Entry a = table.get(i);
+        Entry b = table.get(i ^ 1);
+        int slot;
+        Entry replaced;
+        if (a == null || (b != null && a.expires <= b.expires)) {
+            slot = i;
+            replaced = a;
+        } else {
+            slot = i ^ 1;
+            replaced = b;
+        }
+        if (table.compareAndSet(slot, replaced, new Entry(hash, key.toString(), expires))
+                && replaced != null) {
+            evictions.increment();
+        }
+    }
+
+    private boolean matches(int i, int hash, CharSequence key, long now) {
+        Entry e = table.get(i);
+        if (e == null || e.hash != hash) {
+            return false;
+        }
+        if (e.expires < now) {
+            if (table.compareAndSet(i, e, null)) {
+                evictions.increment();
+            }
+            return false;
+        }
+        return e.key.contentEquals(key);
+    }
+
+    private static int hash(CharSequence key) {
+        int h = 0;
+        for (int i = 0; i < key.length(); i++) {
+            h = 31 * h + key.charAt(i);
+        }
+        return h ^ (h >>> 16);
+    }
+
+    private static final class Entry {
+        final int hash;
+        final String key;
+        final long expires;
+
+        Entry(int hash, String key, long expires) {
+            this.hash = hash;
+            this.key = key;
+            this.expires = expires;
+        }
+    }
+}
@@ -0,0 +1,47 @@
+package com.byteark;
+
+/**
+ * Byte array reads and scans used by the hashing and parsing code.
+ *
+ * <p>This is the Java 8 version. The jar is a multi-release jar, and on
+ * Java 11 and later the class from {@code src/main/java11} is loaded
+ * instead, which reads words through {@code VarHandle} views and compares
+ * ranges with the vectorized {@code Arrays.equals}.
+ */
+final class ByteArrays {
+    private ByteArrays() {
+    }
+
+    static int getIntLE(byte[] b, int off) {
+        return (b[off] & 0xff)
+                | (b[off + 1] & 0xff) << 8
+                | (b[off + 2] & 0xff) << 16
+                | (b[off + 3] & 0xff) << 24;
+    }
+
+    /**
+     * Whether the first {@code length} bytes of both arrays are equal.
+     */
+    static boolean equals(byte[] a, byte[] b, int length) {
+        // Compare from the end, where paths and policies usually differ
+        for (int i = length - 1; i >= 0; i--) {
+            if (a[i] != b[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * The index of the first {@code value} from {@code from} to {@code to},
+     * or {@code to} if there is none.
+     */
+    static int indexOf(byte[] b, byte value, int from, int to) {
+        for (int i = from; i < to; i++) {
+            if (b[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
@@ -0,0 +1,107 @@
+package com.byteark;
+
+import java.nio.Buffer;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+
+/**
+ * A reusable {@link CharSequence} view of a byte range, one character per
+ * byte, so that the string-based scanning and hashing code can read request
+ * bytes without decoding them. Heap buffers are read through their backing
+ * array; direct buffers are copied once into a scratch array that is kept
+ * for the next request. {@link #toString()} decodes UTF-8.
+ */
+final class ByteSequence implements CharSequence {
+    private byte[] bytes;
+    private int offset;
+    private int length;
+    private byte[] scratch = new byte[SigningContext.INITIAL_SIZE];
+
+    ByteSequence set(ByteBuffer buffer, int start, int end) {
+        length = end - start;
+        if (buffer.hasArray()) {
+            bytes = buffer.array();
+            offset = buffer.arrayOffset() + start;
+        } else {
+            if (scratch.length < length) {
+                scratch = new byte[Math.max(length, scratch.length * 2)];
+            }
+            copy(buffer, start, scratch, length);
+            bytes = scratch;
+            offset = 0;
+        }
+        return this;
+    }
+
+    ByteSequence set(byte[] source, int start, int end) {
+        bytes = source;
+        offset = start;
+        length = end - start;
+        return this;
+    }
+
+    /**
+     * Makes this a view of part of another view, without copying.
+     */
+    ByteSequence set(ByteSequence source, int from, int to) {
+        bytes = source.bytes;
+        offset = source.offset + from;
+        length = to - from;
+        return this;
+    }
+
+    /**
+     * The index of the first {@code c} at or after {@code from}, or the
+     * length if there is none.
+     */
+    int indexOf(char c, int from) {
+        return ByteArrays.indexOf(bytes, (byte) c, offset + from, offset + length) - offset;
+    }
+
+    /**
+     * Bulk copy, which is much faster than get(int) per byte on direct
+     * buffers. Kept small so that the duplicate is not allocated.
+     */
+    private static void copy(ByteBuffer src, int start, byte[] dst, int length) {
+        ByteBuffer view = src.duplicate();
+        ((Buffer) view).position(start);
+        view.get(dst, 0, length);
+    }
+
+    void clear() {
+        bytes = null;
+        offset = 0;
+        length = 0;
+        if (scratch.length > SigningContext.MAX_RETAINED_SIZE) {
+            scratch = new byte[SigningContext.INITIAL_SIZE];
+        }
+    }
+
+    byte[] bytes() {
+        return bytes;
+    }
+
+    int offset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        return (char) (bytes[offset + index] & 0xff);
+    }
+
+    @Override
+    public CharSequence subSequence(int from, int to) {
+        return new String(bytes, offset + from, to - from, StandardCharsets.UTF_8);
+    }
+
+    @Override
+    public String toString() {
+        return new String(bytes, offset, length, StandardCharsets.UTF_8);
+    }
+}
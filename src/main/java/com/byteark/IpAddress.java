@@ -0,0 +1,249 @@
+package com.byteark;
+
+/**
+ * Parses textual IPv4 and IPv6 addresses into two longs without
+ * allocating. IPv4 addresses are stored IPv4-mapped ({@code ::ffff:a.b.c.d})
+ * so that both families share one 128-bit space.
+ */
+final class IpAddress {
+    static final int IPV4_MAPPED_PREFIX = 96;
+    private static final long IPV4_MAPPED = 0xffffL << 32;
+
+    private IpAddress() {
+    }
+
+    /**
+     * Parses {@code s[start, end)} into {@code out[0]} (high 64 bits) and
+     * {@code out[1]} (low 64 bits). Surrounding brackets and an IPv6 zone
+     * ({@code %eth0}) are ignored. Returns false if it is not an address.
+     */
+    static boolean parse(CharSequence s, int start, int end, long[] out) {
+        if (end - start >= 2 && s.charAt(start) == '[' && s.charAt(end - 1) == ']') {
+            start++;
+            end--;
+        }
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c == ':') {
+                return parseIpv6(s, start, end, out);
+            }
+            if (c == '%') {
+                return false;
+            }
+        }
+        long v4 = parseIpv4(s, start, end);
+        if (v4 < 0) {
+            return false;
+        }
+        out[0] = 0;
+        out[1] = IPV4_MAPPED | v4;
+        return true;
+    }
+
+    static boolean parse(CharSequence s, long[] out) {
+        return parse(s, 0, s.length(), out);
+    }
+
+    /**
+     * Whether {@code out} holds an IPv4-mapped address.
+     */
+    static boolean isIpv4(long hi, long lo) {
+        return hi == 0 && (lo & 0xffffffff00000000L) == IPV4_MAPPED;
+    }
+
+    /**
+     * Whether the address is in any network of a comma-separated list such
+     * as {@code 203.0.113.0/24,2001:db8::/32}; an entry without a length is
+     * a single address. Lengths count from the start of the address as
+     * written, so {@code ::ffff:0:0/96} is all IPv4 addresses. Entries that
+     * do not parse match nothing.
+     */
+    static boolean inAny(CharSequence networks, long hi, long lo, long[] scratch) {
+        int n = networks.length();
+        for (int start = 0; start < n; ) {
+            int end = start;
+            int slash = -1;
+            boolean ipv6 = false;
+            while (end < n && networks.charAt(end) != ',') {
+                char c = networks.charAt(end);
+                if (c == '/') {
+                    slash = end;
+                } else if (c == ':') {
+                    ipv6 = true;
+                }
+                end++;
+            }
+            int addressStart = start;
+            while (addressStart < end && networks.charAt(addressStart) == ' ') {
+                addressStart++;
+            }
+            int addressEnd = slash < 0 ? end : slash;
+            if (parse(networks, addressStart, addressEnd, scratch)) {
+                boolean ipv4 = !ipv6;
+                int length = ipv4 ? 32 : 128;
+                if (slash >= 0) {
+                    length = (int) UrlHelper.parseLong(networks, slash + 1, end, -1);
+                }
+                if (length >= 0 && length <= (ipv4 ? 32 : 128)
+                        && matches(hi, lo, scratch[0], scratch[1], ipv4 ? length + IPV4_MAPPED_PREFIX : length)) {
+                    return true;
+                }
+            }
+            start = end + 1;
+        }
+        return false;
+    }
+
+    /**
+     * Whether the top {@code length} bits of two addresses are equal.
+     */
+    static boolean matches(long hi, long lo, long prefixHi, long prefixLo, int length) {
+        if (length <= 64) {
+            return ((hi ^ prefixHi) & mask(length)) == 0;
+        }
+        return hi == prefixHi && ((lo ^ prefixLo) & mask(length - 64)) == 0;
+    }
+
+    /**
+     * A long with the top {@code bits} bits set.
+     */
+    static long mask(int bits) {
+        return bits == 0 ? 0 : -1L << (64 - bits);
+    }
+
+    /**
+     * Parses "a.b.c.d" into an unsigned 32-bit value, or -1.
+     */
+    private static long parseIpv4(CharSequence s, int start, int end) {
+        long value = 0;
+        int octets = 0;
+        int i = start;
+        while (octets < 4) {
+            int digits = 0;
+            int octet = 0;
+            while (i < end && s.charAt(i) >= '0' && s.charAt(i) <= '9' && digits < 3) {
+                octet = octet * 10 + (s.charAt(i) - '0');
+                digits++;
+                i++;
+            }
+            if (digits == 0 || octet > 255) {
+                return -1;
+            }
+            value = (value << 8) | octet;
+            octets++;
+            if (octets < 4) {
+                if (i == end || s.charAt(i) != '.') {
+                    return -1;
+                }
+                i++;
+            }
+        }
+        return i == end ? value : -1;
+    }
+
+    private static boolean parseIpv6(CharSequence s, int start, int end, long[] out) {
+        for (int i = start; i < end; i++) {
+            if (s.charAt(i) == '%') {
+                end = i;
+                break;
+            }
+        }
+        // Groups are shifted into (hi, lo); at "::" the groups so far move
+        // to (headHi, headLo) and are shifted into place at the end.
+        long hi = 0;
+        long lo = 0;
+        long headHi = 0;
+        long headLo = 0;
+        int count = 0;
+        int gap = -1;
+        int i = start;
+        if (i + 1 < end && s.charAt(i) == ':' && s.charAt(i + 1) == ':') {
+            gap = 0;
+            i += 2;
+        } else if (i < end && s.charAt(i) == ':') {
+            return false;
+        }
+        while (i < end) {
+            int groupStart = i;
+            int group = 0;
+            while (i < end && i - groupStart < 4 && hexValue(s.charAt(i)) >= 0) {
+                group = (group << 4) | hexValue(s.charAt(i));
+                i++;
+            }
+            if (i < end && s.charAt(i) == '.') {
+                // A trailing dotted IPv4 address is the last two groups
+                long v4 = parseIpv4(s, groupStart, end);
+                if (v4 < 0 || count > 6) {
+                    return false;
+                }
+                hi = (hi << 32) | (lo >>> 32);
+                lo = (lo << 32) | v4;
+                count += 2;
+                break;
+            }
+            if (i == groupStart || count == 8) {
+                return false;
+            }
+            hi = (hi << 16) | (lo >>> 48);
+            lo = (lo << 16) | group;
+            count++;
+            if (i == end) {
+                break;
+            }
+            if (s.charAt(i) != ':') {
+                return false;
+            }
+            i++;
+            if (i < end && s.charAt(i) == ':') {
+                if (gap >= 0) {
+                    return false;
+                }
+                gap = count;
+                headHi = hi;
+                headLo = lo;
+                hi = 0;
+                lo = 0;
+                i++;
+            } else if (i == end) {
+                return false;
+            }
+        }
+        if (gap < 0) {
+            if (count != 8) {
+                return false;
+            }
+        } else {
+            if (count == 8) {
+                return false;
+            }
+            // Move the head groups to the top: shift left by the groups
+            // that follow them, including the zeros of "::"
+            int shift = 16 * (8 - gap);
+            if (shift >= 64) {
+                headHi = shift == 128 ? 0 : headLo << (shift - 64);
+                headLo = 0;
+            } else if (shift > 0) {
+                headHi = (headHi << shift) | (headLo >>> (64 - shift));
+                headLo = headLo << shift;
+            }
+            hi |= headHi;
+            lo |= headLo;
+        }
+        out[0] = hi;
+        out[1] = lo;
+        return true;
+    }
+
+    private static int hexValue(char c) {
+        if (c >= '0' && c <= '9') {
+            return c - '0';
+        }
+        if (c >= 'a' && c <= 'f') {
+            return c - 'a' + 10;
+        }
+        if (c >= 'A' && c <= 'F') {
+            return c - 'A' + 10;
+        }
+        return -1;
+    }
+}
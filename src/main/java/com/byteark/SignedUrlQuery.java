@@ -0,0 +1,290 @@
+package com.byteark;
+
+import java.util.Arrays;
+
+/**
+ * Single-pass scanner for the {@code x_ark_*} parameters of a raw query
+ * string. The signing parameters are kept in fixed slots as index ranges
+ * into the query and are decoded only when asked for; other parameters are
+ * skipped. Instances are reused per thread through {@link SigningContext}.
+ */
+final class SignedUrlQuery {
+    static final int ACCESS_ID = 0;
+    static final int AUTH_TYPE = 1;
+    static final int EXPIRES = 2;
+    static final int SIGNATURE = 3;
+    // Policies that verify checks itself; they stay in the policy list
+    static final int PATH_PREFIX = 4;
+    static final int CLIENT_IP = 5;
+    static final int CLIENT_IP_RANGE = 6;
+    static final int GEO_ALLOW = 7;
+
+    private static final String PREFIX = "x_ark_";
+    private static final String[] SLOT_NAMES = {
+            "access_id", "auth_type", "expires", "signature",
+            "path_prefix", "client_ip", "client_ip_range", "geo_allow"
+    };
+
+    private CharSequence query;
+    private final int[] slotStart = new int[SLOT_NAMES.length];
+    private final int[] slotEnd = new int[SLOT_NAMES.length];
+
+    // x_ark_* parameters that are part of the signed policy
+    private int policyCount;
+    private int[] policyKeyStart = new int[4];
+    private int[] policyKeyEnd = new int[4];
+    private int[] policyValueStart = new int[4];
+    private int[] policyValueEnd = new int[4];
+    private String[] policyDecodedKey = new String[4];
+
+    // Raw "key=value" ranges of every x_ark_* parameter, in query order
+    private int paramCount;
+    private int[] paramStart = new int[8];
+    private int[] paramEnd = new int[8];
+
+    SignedUrlQuery() {
+        clear();
+    }
+
+    void scan(CharSequence rawQuery) {
+        clear();
+        query = rawQuery;
+        if (rawQuery == null) {
+            return;
+        }
+        int n = rawQuery.length();
+        int start = 0;
+        while (start < n) {
+            int end = start;
+            int eq = -1;
+            boolean escapedKey = false;
+            while (end < n) {
+                char c = rawQuery.charAt(end);
+                if (c == '&') {
+                    break;
+                }
+                if (eq < 0) {
+                    if (c == '=') {
+                        eq = end;
+                    } else if (c == '%' || c == '+') {
+                        escapedKey = true;
+                    }
+                }
+                end++;
+            }
+            int keyEnd = eq < 0 ? end : eq;
+            int valueStart = eq < 0 ? end : eq + 1;
+            if (escapedKey) {
+                String key = UrlHelper.decode(rawQuery, start, keyEnd);
+                if (key != null && key.startsWith(PREFIX)) {
+                    addParam(start, end);
+                    add(key.substring(PREFIX.length()), start, keyEnd, valueStart, end);
+                }
+            } else if (regionStartsWith(rawQuery, start, keyEnd, PREFIX)) {
+                addParam(start, end);
+                add(null, start + PREFIX.length(), keyEnd, valueStart, end);
+            }
+            start = end + 1;
+        }
+    }
+
+    void clear() {
+        query = null;
+        Arrays.fill(slotStart, -1);
+        Arrays.fill(slotEnd, -1);
+        Arrays.fill(policyDecodedKey, 0, policyCount, null);
+        policyCount = 0;
+        paramCount = 0;
+    }
+
+    /**
+     * Appends the raw x_ark_* parameters, joined with '&amp;', in query order.
+     */
+    void appendParams(StringBuilder sb) {
+        for (int i = 0; i < paramCount; i++) {
+            if (i > 0) {
+                sb.append('&');
+            }
+            sb.append(query, paramStart[i], paramEnd[i]);
+        }
+    }
+
+    /**
+     * Whether the query has any x_ark_* parameter.
+     */
+    boolean isSigned() {
+        return paramCount > 0;
+    }
+
+    boolean has(int slot) {
+        return slotStart[slot] >= 0;
+    }
+
+    /**
+     * The raw query that {@link #start(int)} and {@link #end(int)} index.
+     */
+    CharSequence raw() {
+        return query;
+    }
+
+    /**
+     * Start of the raw, still encoded value of a slot, or -1 if absent.
+     */
+    int start(int slot) {
+        return slotStart[slot];
+    }
+
+    int end(int slot) {
+        return slotEnd[slot];
+    }
+
+    /**
+     * The decoded value of a slot, or null when it is absent or malformed.
+     */
+    String value(int slot) {
+        if (!has(slot)) {
+            return null;
+        }
+        return UrlHelper.decode(query, slotStart[slot], slotEnd[slot]);
+    }
+
+    long longValue(int slot, long invalid) {
+        if (!has(slot)) {
+            return invalid;
+        }
+        int start = slotStart[slot];
+        int end = slotEnd[slot];
+        if (isPlain(start, end)) {
+            return UrlHelper.parseLong(query, start, end, invalid);
+        }
+        String decoded = value(slot);
+        return decoded == null ? invalid : UrlHelper.parseLong(decoded, 0, decoded.length(), invalid);
+    }
+
+    boolean valueEquals(int slot, CharSequence expected) {
+        if (!has(slot)) {
+            return false;
+        }
+        int start = slotStart[slot];
+        int end = slotEnd[slot];
+        if (!isPlain(start, end)) {
+            String decoded = value(slot);
+            return decoded != null && decoded.contentEquals(expected);
+        }
+        if (end - start != expected.length()) {
+            return false;
+        }
+        for (int i = start; i < end; i++) {
+            if (query.charAt(i) != expected.charAt(i - start)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Whether {@code path} starts with the decoded value of a slot.
+     */
+    boolean isPrefixOf(int slot, CharSequence path) {
+        int start = slotStart[slot];
+        int end = slotEnd[slot];
+        if (!isPlain(start, end)) {
+            String decoded = value(slot);
+            return decoded != null && regionStartsWith(path, 0, path.length(), decoded);
+        }
+        return regionStartsWith(path, 0, path.length(), query, start, end);
+    }
+
+    int policyCount() {
+        return policyCount;
+    }
+
+    /**
+     * The key of a policy parameter without its {@code x_ark_} prefix.
+     */
+    String policyKey(int i) {
+        String decoded = policyDecodedKey[i];
+        return decoded != null
+                ? decoded
+                : query.subSequence(policyKeyStart[i], policyKeyEnd[i]).toString();
+    }
+
+    String policyValue(int i) {
+        return UrlHelper.decode(query, policyValueStart[i], policyValueEnd[i]);
+    }
+
+    private void addParam(int start, int end) {
+        if (paramCount == paramStart.length) {
+            paramStart = Arrays.copyOf(paramStart, paramCount * 2);
+            paramEnd = Arrays.copyOf(paramEnd, paramCount * 2);
+        }
+        paramStart[paramCount] = start;
+        paramEnd[paramCount] = end;
+        paramCount++;
+    }
+
+    private void add(String decodedKey, int keyStart, int keyEnd, int valueStart, int valueEnd) {
+        int slot = slotOf(decodedKey, keyStart, keyEnd);
+        if (slot >= 0) {
+            slotStart[slot] = valueStart;
+            slotEnd[slot] = valueEnd;
+            if (slot < PATH_PREFIX) {
+                return;
+            }
+        }
+        if (policyCount == policyKeyStart.length) {
+            int size = policyCount * 2;
+            policyKeyStart = Arrays.copyOf(policyKeyStart, size);
+            policyKeyEnd = Arrays.copyOf(policyKeyEnd, size);
+            policyValueStart = Arrays.copyOf(policyValueStart, size);
+            policyValueEnd = Arrays.copyOf(policyValueEnd, size);
+            policyDecodedKey = Arrays.copyOf(policyDecodedKey, size);
+        }
+        policyKeyStart[policyCount] = keyStart;
+        policyKeyEnd[policyCount] = keyEnd;
+        policyValueStart[policyCount] = valueStart;
+        policyValueEnd[policyCount] = valueEnd;
+        policyDecodedKey[policyCount] = decodedKey;
+        policyCount++;
+    }
+
+    private int slotOf(String decodedKey, int keyStart, int keyEnd) {
+        for (int slot = 0; slot < SLOT_NAMES.length; slot++) {
+            String name = SLOT_NAMES[slot];
+            if (decodedKey != null
+                    ? decodedKey.equals(name)
+                    : keyEnd - keyStart == name.length() && regionStartsWith(query, keyStart, keyEnd, name)) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    private boolean isPlain(int start, int end) {
+        for (int i = start; i < end; i++) {
+            char c = query.charAt(i);
+            if (c == '%' || c == '+') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean regionStartsWith(CharSequence s, int start, int end, String prefix) {
+        return regionStartsWith(s, start, end, prefix, 0, prefix.length());
+    }
+
+    private static boolean regionStartsWith(CharSequence s, int start, int end,
+                                            CharSequence prefix, int prefixStart, int prefixEnd) {
+        int length = prefixEnd - prefixStart;
+        if (end - start < length) {
+            return false;
+        }
+        for (int i = 0; i < length; i++) {
+            if (s.charAt(start + i) != prefix.charAt(prefixStart + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+}
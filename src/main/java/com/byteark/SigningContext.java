@@ -0,0 +1,312 @@
+package com.byteark;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Arrays;
+
+/**
+ * Per-thread scratch state for signing: a reusable MD5 digest, the byte
+ * buffer that holds the string to sign, and small arrays used to sort
+ * options without building maps.
+ *
+ * <p>The string to sign is "METHOD\nHOST\nPATH\n&lt;policy lines&gt;" followed
+ * by expires and the secret. When the same prefix before expires (of at
+ * least one MD5 block) is hashed twice in a row on a thread, the state of
+ * the built-in {@link Md5} after that prefix is saved, and later strings
+ * with the same prefix only hash the blocks holding expires and the secret.
+ * Other strings go through {@link MessageDigest}, which is faster per block
+ * on JVMs with an MD5 intrinsic.
+ *
+ * <p>There is one context per thread, shared by all signers, and it holds
+ * no reference to a signer. Buffers that grew past
+ * {@link #MAX_RETAINED_SIZE} for an unusually long URL are dropped after
+ * use, so long-lived pool threads keep only a few kilobytes each.
+ */
+final class SigningContext {
+    private static final ThreadLocal<SigningContext> CURRENT =
+            ThreadLocal.withInitial(SigningContext::new);
+
+    static final int DIGEST_LENGTH = 16;
+    static final int MAX_RETAINED_SIZE = 8192;
+    static final int INITIAL_SIZE = 256;
+
+    private final MessageDigest md5;
+    private byte[] buffer = new byte[INITIAL_SIZE];
+    private int length;
+    private boolean nonAscii;
+    private int prefixEnd;
+
+    private final Md5 engine = new Md5();
+    private final Md5 prefixState = new Md5();
+    private byte[] prefix = new byte[INITIAL_SIZE];
+    private int prefixLength = -1;
+    private boolean prefixStateReady;
+
+    final byte[] digest = new byte[DIGEST_LENGTH];
+    final StringBuilder text = new StringBuilder(INITIAL_SIZE);
+    final SignedUrlQuery query = new SignedUrlQuery();
+    final StringBuilder cacheKey = new StringBuilder(INITIAL_SIZE);
+    final ByteSequence hostBytes = new ByteSequence();
+    final ByteSequence pathBytes = new ByteSequence();
+    final ByteSequence queryBytes = new ByteSequence();
+    final ByteSequence targetBytes = new ByteSequence();
+    final UrlSplitter url = new UrlSplitter();
+    final long[] address = new long[2];
+    final long[] network = new long[2];
+
+    String[] keys = new String[8];
+    String[] values = new String[8];
+    int size;
+
+    private SigningContext() {
+        try {
+            md5 = MessageDigest.getInstance("MD5");
+        } catch (NoSuchAlgorithmException e) {
+            throw new RuntimeException(e);
+        }
+    }
+
+    static SigningContext current() {
+        return CURRENT.get();
+    }
+
+    static void release() {
+        CURRENT.remove();
+    }
+
+    void reset() {
+        length = 0;
+        nonAscii = false;
+        prefixEnd = 0;
+    }
+
+    /**
+     * Marks the end of the part of the string to sign that does not depend
+     * on expires or the secret.
+     */
+    void markPrefix() {
+        prefixEnd = length;
+    }
+
+    /**
+     * Whether any character written with {@link #putAscii(String)} fell
+     * outside US-ASCII, in which case the buffer content is not usable.
+     */
+    boolean hasNonAscii() {
+        return nonAscii;
+    }
+
+    void put(char c) {
+        ensureCapacity(1);
+        buffer[length++] = (byte) c;
+    }
+
+    void put(byte[] bytes) {
+        ensureCapacity(bytes.length);
+        System.arraycopy(bytes, 0, buffer, length, bytes.length);
+        length += bytes.length;
+    }
+
+    void putAscii(String s) {
+        putAscii(s, 0, s.length());
+    }
+
+    void putAscii(CharSequence s) {
+        putAscii(s, 0, s.length());
+    }
+
+    private void putAscii(CharSequence s, int start, int end) {
+        if (s instanceof ByteSequence) {
+            ByteSequence bytes = (ByteSequence) s;
+            put(bytes.bytes(), bytes.offset() + start, end - start);
+            return;
+        }
+        if (s instanceof UrlSplitter.Slice) {
+            UrlSplitter.Slice slice = (UrlSplitter.Slice) s;
+            putAscii(slice.source(), slice.start() + start, slice.start() + end);
+            return;
+        }
+        ensureCapacity(end - start);
+        byte[] buf = buffer;
+        int pos = length;
+        for (int i = start; i < end; i++) {
+            char c = s.charAt(i);
+            if (c >= 0x80) {
+                nonAscii = true;
+            }
+            buf[pos++] = (byte) c;
+        }
+        length = pos;
+    }
+
+    /**
+     * Copies raw bytes. Bytes outside US-ASCII make the buffer content
+     * unusable, as in {@link #putAscii(String)}.
+     */
+    void put(byte[] src, int off, int len) {
+        ensureCapacity(len);
+        System.arraycopy(src, off, buffer, length, len);
+        for (int i = off; i < off + len; i++) {
+            if (src[i] < 0) {
+                nonAscii = true;
+                break;
+            }
+        }
+        length += len;
+    }
+
+    /**
+     * Drops the references to caller buffers held by the byte views.
+     */
+    void clearBytes() {
+        hostBytes.clear();
+        pathBytes.clear();
+        queryBytes.clear();
+        targetBytes.clear();
+    }
+
+    void putLong(long v) {
+        if (v == Long.MIN_VALUE) {
+            putAscii(Long.toString(v));
+            return;
+        }
+        ensureCapacity(20);
+        if (v < 0) {
+            buffer[length++] = '-';
+            v = -v;
+        }
+        int start = length;
+        do {
+            buffer[length++] = (byte) ('0' + (v % 10));
+            v /= 10;
+        } while (v != 0);
+        for (int i = start, j = length - 1; i < j; i++, j--) {
+            byte t = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = t;
+        }
+    }
+
+    /**
+     * Hashes the buffered bytes into {@link #digest}.
+     */
+    byte[] digestBuffer() {
+        int end = prefixEnd;
+        if (end >= Md5.BLOCK_LENGTH && end <= MAX_RETAINED_SIZE) {
+            if (end == prefixLength && startsWithPrefix(end)) {
+                if (!prefixStateReady) {
+                    prefixState.reset();
+                    prefixState.update(buffer, 0, end);
+                    prefixStateReady = true;
+                }
+                engine.copyFrom(prefixState);
+                engine.update(buffer, end, length - end);
+                engine.digest(digest, 0);
+                return trimBuffer();
+            }
+            if (prefix.length < end) {
+                prefix = new byte[Math.max(end, prefix.length * 2)];
+            }
+            System.arraycopy(buffer, 0, prefix, 0, end);
+            prefixLength = end;
+            prefixStateReady = false;
+        }
+        md5.update(buffer, 0, length);
+        return finish();
+    }
+
+    private boolean startsWithPrefix(int end) {
+        return ByteArrays.equals(buffer, prefix, end);
+    }
+
+    /**
+     * Hashes an arbitrary byte array into {@link #digest}.
+     */
+    byte[] digestBytes(byte[] bytes) {
+        md5.update(bytes);
+        return finish();
+    }
+
+    private byte[] finish() {
+        try {
+            md5.digest(digest, 0, DIGEST_LENGTH);
+        } catch (DigestException e) {
+            throw new RuntimeException(e);
+        }
+        return trimBuffer();
+    }
+
+    private byte[] trimBuffer() {
+        if (buffer.length > MAX_RETAINED_SIZE) {
+            buffer = new byte[INITIAL_SIZE];
+        }
+        return digest;
+    }
+
+    /**
+     * Adds a canonical option, replacing the value of an existing key, and
+     * keeps the keys sorted.
+     */
+    void addOption(String key, String value) {
+        int i = 0;
+        while (i < size) {
+            int cmp = keys[i].compareTo(key);
+            if (cmp == 0) {
+                values[i] = value;
+                return;
+            }
+            if (cmp > 0) {
+                break;
+            }
+            i++;
+        }
+        if (size == keys.length) {
+            keys = Arrays.copyOf(keys, size * 2);
+            values = Arrays.copyOf(values, size * 2);
+        }
+        System.arraycopy(keys, i, keys, i + 1, size - i);
+        System.arraycopy(values, i, values, i + 1, size - i);
+        keys[i] = key;
+        values[i] = value;
+        size++;
+    }
+
+    String option(String key, String defaultValue) {
+        for (int i = 0; i < size; i++) {
+            if (keys[i].equals(key)) {
+                return values[i];
+            }
+        }
+        return defaultValue;
+    }
+
+    void clearOptions() {
+        Arrays.fill(keys, 0, size, null);
+        Arrays.fill(values, 0, size, null);
+        size = 0;
+    }
+
+    /**
+     * Empties the text builders, shrinking any that outgrew
+     * {@link #MAX_RETAINED_SIZE}.
+     */
+    void trimText() {
+        trim(text);
+        trim(cacheKey);
+    }
+
+    private static void trim(StringBuilder sb) {
+        sb.setLength(0);
+        if (sb.capacity() > MAX_RETAINED_SIZE) {
+            sb.trimToSize();
+            sb.ensureCapacity(INITIAL_SIZE);
+        }
+    }
+
+    private void ensureCapacity(int extra) {
+        if (length + extra > buffer.length) {
+            buffer = Arrays.copyOf(buffer, Math.max(buffer.length * 2, length + extra));
+        }
+    }
+}
@@ -3,6 +3,9 @@ package com.byteark;
 import java.io.UnsupportedEncodingException;
 import java.net.URL;
 import java.net.URLDecoder;
+import java.net.URLEncoder;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
 import java.util.AbstractMap.SimpleImmutableEntry;
 import java.util.*;
 import java.util.stream.Collectors;
@@ -48,4 +51,192 @@ class UrlHelper {
         }
         return new SimpleImmutableEntry<>(key, value);
     }
+
+    private static final char[] BASE64_URL =
+            "ABCDEFGHIJKLMNOPQRSTUVWXYZabcdefghijklmnopqrstuvwxyz0123456789-_".toCharArray();
+    private static final char[] HEX = "0123456789ABCDEF".toCharArray();
+
+    /**
+     * Appends bytes as unpadded base64url.
+     */
+    public static void appendBase64Url(StringBuilder sb, byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            sb.append(BASE64_URL[bits >>> 18])
+                    .append(BASE64_URL[(bits >>> 12) & 0x3f])
+                    .append(BASE64_URL[(bits >>> 6) & 0x3f])
+                    .append(BASE64_URL[bits & 0x3f]);
+        }
+        int remaining = end - i;
+        if (remaining == 1) {
+            int bits = (bytes[i] & 0xff) << 16;
+            sb.append(BASE64_URL[bits >>> 18])
+                    .append(BASE64_URL[(bits >>> 12) & 0x3f]);
+        } else if (remaining == 2) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+            sb.append(BASE64_URL[bits >>> 18])
+                    .append(BASE64_URL[(bits >>> 12) & 0x3f])
+                    .append(BASE64_URL[(bits >>> 6) & 0x3f]);
+        }
+    }
+
+    /**
+     * Writes bytes as unpadded base64url at the buffer position.
+     */
+    public static void putBase64Url(ByteBuffer out, byte[] bytes, int offset, int length) {
+        int end = offset + length;
+        int i = offset;
+        for (; i + 3 <= end; i += 3) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8 | (bytes[i + 2] & 0xff);
+            out.put((byte) BASE64_URL[bits >>> 18])
+                    .put((byte) BASE64_URL[(bits >>> 12) & 0x3f])
+                    .put((byte) BASE64_URL[(bits >>> 6) & 0x3f])
+                    .put((byte) BASE64_URL[bits & 0x3f]);
+        }
+        int remaining = end - i;
+        if (remaining == 1) {
+            int bits = (bytes[i] & 0xff) << 16;
+            out.put((byte) BASE64_URL[bits >>> 18])
+                    .put((byte) BASE64_URL[(bits >>> 12) & 0x3f]);
+        } else if (remaining == 2) {
+            int bits = (bytes[i] & 0xff) << 16 | (bytes[i + 1] & 0xff) << 8;
+            out.put((byte) BASE64_URL[bits >>> 18])
+                    .put((byte) BASE64_URL[(bits >>> 12) & 0x3f])
+                    .put((byte) BASE64_URL[(bits >>> 6) & 0x3f]);
+        }
+    }
+
+    /**
+     * Writes the decimal digits of {@code v} at the buffer position.
+     */
+    public static void putLong(ByteBuffer out, long v) {
+        if (v == Long.MIN_VALUE) {
+            out.put(Long.toString(v).getBytes(StandardCharsets.US_ASCII));
+            return;
+        }
+        if (v < 0) {
+            out.put((byte) '-');
+            v = -v;
+        }
+        long divisor = 1;
+        while (divisor <= v / 10) {
+            divisor *= 10;
+        }
+        for (; divisor > 0; divisor /= 10) {
+            out.put((byte) ('0' + (v / divisor) % 10));
+        }
+    }
+
+    /**
+     * Appends a value encoded exactly as {@code URLEncoder.encode(value, "UTF-8")}
+     * would, without allocating for ASCII input.
+     */
+    public static void appendUrlEncoded(StringBuilder sb, String value) {
+        int n = value.length();
+        for (int i = 0; i < n; i++) {
+            if (value.charAt(i) >= 0x80) {
+                try {
+                    sb.append(URLEncoder.encode(value, "UTF-8"));
+                } catch (UnsupportedEncodingException e) {
+                    throw new RuntimeException(e);
+                }
+                return;
+            }
+        }
+        for (int i = 0; i < n; i++) {
+            char c = value.charAt(i);
+            if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9')
+                    || c == '.' || c == '-' || c == '*' || c == '_') {
+                sb.append(c);
+            } else if (c == ' ') {
+                sb.append('+');
+            } else {
+                sb.append('%').append(HEX[c >>> 4]).append(HEX[c & 0xf]);
+            }
+        }
+    }
+
+    /**
+     * Parses the decimal long in {@code s} between {@code start} and
+     * {@code end} like {@link Long#parseLong(String)}, but returns
+     * {@code invalid} instead of throwing.
+     */
+    public static long parseLong(CharSequence s, int start, int end, long invalid) {
+        if (start >= end) {
+            return invalid;
+        }
+        boolean negative = false;
+        int i = start;
+        char first = s.charAt(i);
+        if (first == '-' || first == '+') {
+            negative = first == '-';
+            if (++i == end) {
+                return invalid;
+            }
+        }
+        long limit = negative ? Long.MIN_VALUE : -Long.MAX_VALUE;
+        long multmin = limit / 10;
+        long result = 0;
+        for (; i < end; i++) {
+            int digit = s.charAt(i) - '0';
+            if (digit < 0 || digit > 9 || result < multmin) {
+                return invalid;
+            }
+            result *= 10;
+            if (result < limit + digit) {
+                return invalid;
+            }
+            result -= digit;
+        }
+        return negative ? result : -result;
+    }
+
+    /**
+     * Decodes part of a query string like {@code URLDecoder.decode(s, "UTF-8")},
+     * returning null instead of throwing for malformed escapes.
+     */
+    public static String decode(CharSequence s, int start, int end) {
+        int i = start;
+        while (i < end && s.charAt(i) != '%' && s.charAt(i) != '+') {
+            i++;
+        }
+        if (i == end) {
+            return s.subSequence(start, end).toString();
+        }
+        StringBuilder sb = new StringBuilder(end - start);
+        sb.append(s, start, i);
+        while (i < end) {
+            char c = s.charAt(i);
+            if (c == '+') {
+                sb.append(' ');
+                i++;
+            } else if (c == '%') {
+                int hi = i + 2 < end ? Character.digit(s.charAt(i + 1), 16) : -1;
+                int lo = hi >= 0 ? Character.digit(s.charAt(i + 2), 16) : -1;
+                if (lo < 0) {
+                    return null;
+                }
+                int b = hi << 4 | lo;
+                if (b >= 0x80) {
+                    return decodeUtf8(s, start, end);
+                }
+                sb.append((char) b);
+                i += 3;
+            } else {
+                sb.append(c);
+                i++;
+            }
+        }
+        return sb.toString();
+    }
+
+    private static String decodeUtf8(CharSequence s, int start, int end) {
+        try {
+            return URLDecoder.decode(s.subSequence(start, end).toString(), "UTF-8");
+        } catch (UnsupportedEncodingException | IllegalArgumentException e) {
+            return null;
+        }
+    }
 }
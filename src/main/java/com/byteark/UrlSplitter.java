@@ -0,0 +1,255 @@
+package com.byteark;
+
+import java.nio.ByteBuffer;
+
+/**
+ * Splits an absolute URL into host, path, query and fragment in one pass,
+ * without the protocol handler lookup and copies of {@link java.net.URL}.
+ * As with URL, user info and port are not part of the host, IPv6 hosts
+ * keep their brackets and the path keeps its percent-encoding.
+ *
+ * <p>Reused per thread through {@link SigningContext}; {@link #host} and
+ * {@link #path} are views into the split URL until {@link #clear()}.
+ */
+final class UrlSplitter {
+    private static final String SIGNED_PARAM_PREFIX = "x_ark_";
+
+    final Slice host = new Slice();
+    final Slice path = new Slice();
+    final Slice query = new Slice();
+
+    private CharSequence url;
+    private int pathEnd;
+    private int queryStart;
+    private int fragmentStart;
+
+    /**
+     * Returns false if the URL does not start with a scheme.
+     */
+    boolean split(CharSequence url) {
+        int start = schemeEnd(url);
+        if (start < 0) {
+            return false;
+        }
+        split(url, start);
+        return true;
+    }
+
+    /**
+     * Splits a URI reference that may be relative, such as
+     * {@code ../720p/segment-1.ts?a=1#t=10}. The host is empty unless the
+     * reference has a {@code //} authority.
+     */
+    void splitReference(CharSequence uri) {
+        split(uri, Math.max(0, schemeEnd(uri)));
+    }
+
+    /**
+     * The index after the colon of the scheme, or -1 if there is none.
+     */
+    static int schemeEnd(CharSequence url) {
+        int length = url.length();
+        int i = 0;
+        while (i < length && isSchemeChar(url.charAt(i), i)) {
+            i++;
+        }
+        if (i == 0 || i == length || url.charAt(i) != ':') {
+            return -1;
+        }
+        return i + 1;
+    }
+
+    private void split(CharSequence url, int i) {
+        this.url = url;
+        int length = url.length();
+        int hostStart = i;
+        int hostEnd = i;
+        if (i + 1 < length && url.charAt(i) == '/' && url.charAt(i + 1) == '/') {
+            i += 2;
+            hostStart = i;
+            hostEnd = -1;
+            boolean bracket = false;
+            for (; i < length; i++) {
+                char c = url.charAt(i);
+                if (c == '/' || c == '?' || c == '#') {
+                    break;
+                }
+                if (c == '@') {
+                    hostStart = i + 1;
+                    hostEnd = -1;
+                    bracket = false;
+                } else if (c == '[' && i == hostStart) {
+                    bracket = true;
+                } else if (c == ']' && bracket) {
+                    hostEnd = i + 1;
+                    bracket = false;
+                } else if (c == ':' && hostEnd < 0 && !bracket) {
+                    hostEnd = i;
+                }
+            }
+            if (hostEnd < 0) {
+                hostEnd = i;
+            }
+        }
+        int pathStart = i;
+        while (i < length && url.charAt(i) != '?' && url.charAt(i) != '#') {
+            i++;
+        }
+        pathEnd = i;
+        if (i < length && url.charAt(i) == '?') {
+            queryStart = ++i;
+            while (i < length && url.charAt(i) != '#') {
+                i++;
+            }
+        } else {
+            queryStart = -1;
+        }
+        fragmentStart = i;
+
+        host.set(url, hostStart, hostEnd);
+        path.set(url, pathStart, pathEnd);
+        if (queryStart >= 0) {
+            query.set(url, queryStart, fragmentStart);
+        } else {
+            query.clear();
+        }
+    }
+
+    boolean hasQuery() {
+        return queryStart >= 0;
+    }
+
+    /**
+     * Appends the URL up to its path, then {@code ?} and the existing query
+     * parameters other than {@code x_ark_*} ones each followed by
+     * {@code &}, ready for the signed parameters.
+     */
+    void appendUnsigned(StringBuilder out) {
+        out.append(url, 0, pathEnd).append('?');
+        if (queryStart < 0) {
+            return;
+        }
+        for (int start = queryStart; start < fragmentStart; ) {
+            int end = paramEnd(start);
+            if (end > start && !isSignedParam(start)) {
+                out.append(url, start, end).append('&');
+            }
+            start = end + 1;
+        }
+    }
+
+    /**
+     * Appends the fragment, including {@code #}, if the URL has one.
+     */
+    void appendFragment(StringBuilder out) {
+        out.append(url, fragmentStart, url.length());
+    }
+
+    /**
+     * {@link #appendUnsigned(StringBuilder)} for a URL split from
+     * {@code bytes}.
+     */
+    void putUnsigned(ByteSequence bytes, ByteBuffer out) {
+        out.put(bytes.bytes(), bytes.offset(), pathEnd);
+        out.put((byte) '?');
+        if (queryStart < 0) {
+            return;
+        }
+        for (int start = queryStart; start < fragmentStart; ) {
+            int end = paramEnd(start);
+            if (end > start && !isSignedParam(start)) {
+                out.put(bytes.bytes(), bytes.offset() + start, end - start);
+                out.put((byte) '&');
+            }
+            start = end + 1;
+        }
+    }
+
+    void putFragment(ByteSequence bytes, ByteBuffer out) {
+        out.put(bytes.bytes(), bytes.offset() + fragmentStart, bytes.length() - fragmentStart);
+    }
+
+    void clear() {
+        url = null;
+        host.clear();
+        path.clear();
+        query.clear();
+    }
+
+    private int paramEnd(int start) {
+        int end = start;
+        while (end < fragmentStart && url.charAt(end) != '&') {
+            end++;
+        }
+        return end;
+    }
+
+    private boolean isSignedParam(int start) {
+        int n = SIGNED_PARAM_PREFIX.length();
+        if (fragmentStart - start < n) {
+            return false;
+        }
+        for (int i = 0; i < n; i++) {
+            if (url.charAt(start + i) != SIGNED_PARAM_PREFIX.charAt(i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean isSchemeChar(char c, int i) {
+        if ((c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z')) {
+            return true;
+        }
+        return i > 0 && ((c >= '0' && c <= '9') || c == '+' || c == '-' || c == '.');
+    }
+
+    /**
+     * A reusable view of part of a CharSequence.
+     */
+    static final class Slice implements CharSequence {
+        private CharSequence source;
+        private int start;
+        private int end;
+
+        void set(CharSequence source, int start, int end) {
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        void clear() {
+            source = null;
+            start = 0;
+            end = 0;
+        }
+
+        CharSequence source() {
+            return source;
+        }
+
+        int start() {
+            return start;
+        }
+
+        @Override
+        public int length() {
+            return end - start;
+        }
+
+        @Override
+        public char charAt(int index) {
+            return source.charAt(start + index);
+        }
+
+        @Override
+        public CharSequence subSequence(int from, int to) {
+            return source.subSequence(start + from, start + to);
+        }
+
+        @Override
+        public String toString() {
+            return source == null ? "" : source.subSequence(start, end).toString();
+        }
+    }
+}
@@ -0,0 +1,58 @@
+package com.byteark;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+import java.nio.ByteOrder;
+import java.util.Arrays;
+
+/**
+ * Byte array reads and scans used by the hashing and parsing code, for
+ * Java 11 and later. Words are read with single loads through
+ * {@code VarHandle} views, and {@link #indexOf(byte[], byte, int, int)}
+ * tests eight bytes at a time.
+ */
+final class ByteArrays {
+    private static final VarHandle INT_LE =
+            MethodHandles.byteArrayViewVarHandle(int[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final VarHandle LONG_LE =
+            MethodHandles.byteArrayViewVarHandle(long[].class, ByteOrder.LITTLE_ENDIAN);
+    private static final long ONES = 0x0101010101010101L;
+    private static final long HIGH_BITS = 0x8080808080808080L;
+
+    private ByteArrays() {
+    }
+
+    static int getIntLE(byte[] b, int off) {
+        return (int) INT_LE.get(b, off);
+    }
+
+    /**
+     * Whether the first {@code length} bytes of both arrays are equal.
+     */
+    static boolean equals(byte[] a, byte[] b, int length) {
+        return Arrays.equals(a, 0, length, b, 0, length);
+    }
+
+    /**
+     * The index of the first {@code value} from {@code from} to {@code to},
+     * or {@code to} if there is none.
+     */
+    static int indexOf(byte[] b, byte value, int from, int to) {
+        long pattern = (value & 0xffL) * ONES;
+        int i = from;
+        for (; i + 8 <= to; i += 8) {
+            long word = (long) LONG_LE.get(b, i) ^ pattern;
+            // The lowest byte that became zero sets the lowest high bit
+            long found = (word - ONES) & ~word & HIGH_BITS;
+            if (found != 0) {
+                return i + (Long.numberOfTrailingZeros(found) >>> 3);
+            }
+        }
+        for (; i < to; i++) {
+            if (b[i] == value) {
+                return i;
+            }
+        }
+        return to;
+    }
+}
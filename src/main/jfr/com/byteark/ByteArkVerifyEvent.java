@@ -0,0 +1,63 @@
+package com.byteark;
+
+import jdk.jfr.Category;
+import jdk.jfr.Description;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.FlightRecorder;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+import jdk.jfr.StackTrace;
+import jdk.jfr.Timespan;
+
+/**
+ * JFR event for a failed or slow verification. It is compiled apart from
+ * the rest of the SDK, which links against the Java 8 API only, and
+ * {@link ByteArkV2UrlSignerMetrics} calls {@link #emit} reflectively when
+ * the running JVM has JFR.
+ */
+@Name("com.byteark.Verify")
+@Label("ByteArk URL Verification")
+@Description("A signed URL verification that failed or took longer than the threshold")
+@Category("ByteArk")
+@StackTrace(false)
+final class ByteArkVerifyEvent extends Event {
+    private static final EventType TYPE =
+            FlightRecorder.isAvailable() ? EventType.getEventType(ByteArkVerifyEvent.class) : null;
+
+    @Label("Host")
+    String host;
+
+    @Label("Path")
+    String path;
+
+    @Label("Result")
+    String result;
+
+    @Label("Expires In")
+    @Timespan(Timespan.SECONDS)
+    long expiresIn;
+
+    @Label("Verify Time")
+    @Timespan(Timespan.NANOSECONDS)
+    long verifyTime;
+
+    static void emit(CharSequence host,
+                     CharSequence path,
+                     ByteArkSignedUrlVerifyResult result,
+                     long expires,
+                     long now,
+                     long nanos) {
+        // Checked before allocating, so failures cost nothing without a recording
+        if (TYPE == null || !TYPE.isEnabled()) {
+            return;
+        }
+        ByteArkVerifyEvent event = new ByteArkVerifyEvent();
+        event.host = host.toString();
+        event.path = path.toString();
+        event.result = result.name();
+        event.expiresIn = expires == Long.MIN_VALUE ? Long.MIN_VALUE : expires - now;
+        event.verifyTime = nanos;
+        event.commit();
+    }
+}
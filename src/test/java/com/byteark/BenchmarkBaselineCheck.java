@@ -0,0 +1,170 @@
+package com.byteark;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Compares JMH CSV results with a stored baseline and exits with status 1
+ * when throughput dropped, time per operation or allocation per operation
+ * grew beyond the tolerances, or a result has no baseline to compare with.
+ * Baseline rows without a result, as when only some benchmarks were run,
+ * are listed but do not fail the check.
+ *
+ * <p>Usage: {@code BenchmarkBaselineCheck <baseline.csv> <result.csv>}.
+ * System properties {@code benchmark.throughputTolerance} (default 0.25,
+ * also used for time per operation) and
+ * {@code benchmark.allocationTolerance} (default 0.10) set the allowed
+ * relative change; {@code benchmark.updateBaseline=true} replaces the
+ * baseline with the results instead. Scores depend on the machine, so
+ * refresh the baseline when benchmarking on different hardware.
+ */
+public class BenchmarkBaselineCheck {
+    private static final String ALLOCATION_SUFFIX = "gc.alloc.rate.norm";
+    // Allocation differences below this are noise from the profiler
+    private static final double ALLOCATION_SLACK_BYTES = 16;
+
+    public static void main(String[] args) throws IOException {
+        Path baselinePath = Paths.get(args[0]);
+        Path resultPath = Paths.get(args[1]);
+        if (Boolean.getBoolean("benchmark.updateBaseline")) {
+            Files.createDirectories(baselinePath.toAbsolutePath().getParent());
+            Files.copy(resultPath, baselinePath, StandardCopyOption.REPLACE_EXISTING);
+            System.out.println("Updated benchmark baseline " + baselinePath);
+            return;
+        }
+        if (!Files.exists(baselinePath)) {
+            System.out.println("No benchmark baseline at " + baselinePath
+                    + "; run with -Dbenchmark.updateBaseline=true to create it");
+            return;
+        }
+
+        double throughputTolerance = Double.parseDouble(
+                System.getProperty("benchmark.throughputTolerance", "0.25"));
+        double allocationTolerance = Double.parseDouble(
+                System.getProperty("benchmark.allocationTolerance", "0.10"));
+        Map<String, Row> baseline = read(baselinePath);
+        Map<String, Row> result = read(resultPath);
+
+        List<String> regressions = new ArrayList<>();
+        List<String> missing = new ArrayList<>();
+        for (Map.Entry<String, Row> entry : result.entrySet()) {
+            String key = entry.getKey();
+            Row expected = baseline.get(key);
+            double actual = entry.getValue().score;
+            if (expected == null) {
+                String line = String.format("%-100s %14s -> %14.1f", key, "-", actual);
+                System.out.println("NO BASELINE " + line);
+                missing.add(line);
+                continue;
+            }
+            boolean regressed;
+            if (key.contains(ALLOCATION_SUFFIX)) {
+                regressed = actual > expected.score * (1 + allocationTolerance) + ALLOCATION_SLACK_BYTES;
+            } else if (expected.timePerOp) {
+                regressed = actual > expected.score * (1 + throughputTolerance);
+            } else {
+                regressed = actual < expected.score * (1 - throughputTolerance);
+            }
+            String line = String.format("%-100s %14.1f -> %14.1f", key, expected.score, actual);
+            System.out.println((regressed ? "REGRESSION  " : "            ") + line);
+            if (regressed) {
+                regressions.add(line);
+            }
+        }
+        for (Map.Entry<String, Row> entry : baseline.entrySet()) {
+            if (!result.containsKey(entry.getKey())) {
+                System.out.println(String.format("NOT RUN     %-100s %14.1f", entry.getKey(), entry.getValue().score));
+            }
+        }
+
+        if (!missing.isEmpty()) {
+            System.out.println(missing.size() + " benchmark result(s) missing from " + baselinePath
+                    + "; run with -Dbenchmark.updateBaseline=true to add them");
+        }
+        if (!regressions.isEmpty()) {
+            System.out.println(regressions.size() + " benchmark regression(s) against " + baselinePath);
+        }
+        if (!missing.isEmpty() || !regressions.isEmpty()) {
+            System.exit(1);
+        }
+    }
+
+    static final class Row {
+        final double score;
+        // Average time rather than throughput, so higher is worse
+        final boolean timePerOp;
+
+        Row(double score, boolean timePerOp) {
+            this.score = score;
+            this.timePerOp = timePerOp;
+        }
+    }
+
+    /**
+     * Reads throughput, average time and normalized allocation rows, keyed
+     * by benchmark name and parameters.
+     */
+    static Map<String, Row> read(Path csv) throws IOException {
+        List<String> lines = Files.readAllLines(csv, StandardCharsets.UTF_8);
+        List<String> header = parseCsvLine(lines.get(0));
+        int scoreColumn = header.indexOf("Score");
+        int modeColumn = header.indexOf("Mode");
+        Map<String, Row> rows = new LinkedHashMap<>();
+        for (String line : lines.subList(1, lines.size())) {
+            List<String> cells = parseCsvLine(line);
+            String benchmark = cells.get(0);
+            boolean allocation = benchmark.endsWith(ALLOCATION_SUFFIX);
+            if (benchmark.contains(":") && !allocation) {
+                continue;
+            }
+            String mode = cells.get(modeColumn);
+            if (!allocation && !mode.equals("thrpt") && !mode.equals("avgt")) {
+                continue;
+            }
+            StringBuilder key = new StringBuilder(benchmark);
+            for (int i = 0; i < header.size(); i++) {
+                if (header.get(i).startsWith("Param: ") && i < cells.size() && !cells.get(i).isEmpty()) {
+                    key.append(' ').append(header.get(i).substring(7)).append('=').append(cells.get(i));
+                }
+            }
+            rows.put(key.toString(), new Row(Double.parseDouble(cells.get(scoreColumn)), mode.equals("avgt")));
+        }
+        return rows;
+    }
+
+    private static List<String> parseCsvLine(String line) {
+        List<String> cells = new ArrayList<>();
+        StringBuilder cell = new StringBuilder();
+        boolean quoted = false;
+        for (int i = 0; i < line.length(); i++) {
+            char c = line.charAt(i);
+            if (quoted) {
+                if (c == '"' && i + 1 < line.length() && line.charAt(i + 1) == '"') {
+                    cell.append('"');
+                    i++;
+                } else if (c == '"') {
+                    quoted = false;
+                } else {
+                    cell.append(c);
+                }
+            } else if (c == '"') {
+                quoted = true;
+            } else if (c == ',') {
+                cells.add(cell.toString());
+                cell.setLength(0);
+            } else {
+                cell.append(c);
+            }
+        }
+        cells.add(cell.toString());
+        return cells;
+    }
+}
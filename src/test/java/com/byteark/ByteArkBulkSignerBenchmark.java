@@ -0,0 +1,91 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signs a generated file of several million URLs, comparing the bulk signer
+ * with a plain read-sign-write loop.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.SingleShotTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+public class ByteArkBulkSignerBenchmark {
+
+    @Param({"2000000"})
+    public int lines;
+
+    private ByteArkV2UrlSigner signer;
+    private Path dir;
+    private Path input;
+    private Path output;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkBulkSignerBenchmark.class.getName() + ".*")
+                .forks(1)
+                .warmupIterations(1)
+                .measurementIterations(3)
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        dir = Files.createTempDirectory("byteark-bulk");
+        input = dir.resolve("urls.txt");
+        output = dir.resolve("signed.txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(input, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                writer.write("https://example.cdn.byteark.com/catalogue/");
+                writer.write(Integer.toString(i / 1000));
+                writer.write("/item-");
+                writer.write(Integer.toString(i));
+                writer.write("/poster.jpg\n");
+            }
+        }
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(input);
+        Files.deleteIfExists(output);
+        Files.deleteIfExists(dir);
+    }
+
+    @Benchmark
+    public ByteArkBulkSigner.Result bulkSigner() throws IOException {
+        return new ByteArkBulkSigner.Builder(signer)
+                .build()
+                .sign(input, output, 1514764800, null);
+    }
+
+    @Benchmark
+    public long lineLoop() throws IOException {
+        long count = 0;
+        try (java.io.BufferedReader reader = Files.newBufferedReader(input, StandardCharsets.UTF_8);
+             BufferedWriter writer = Files.newBufferedWriter(output, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = reader.readLine()) != null) {
+                writer.write(signer.sign(line, 1514764800));
+                writer.write('\n');
+                count++;
+            }
+        }
+        return count;
+    }
+}
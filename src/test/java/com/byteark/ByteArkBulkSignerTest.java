@@ -0,0 +1,104 @@
+package com.byteark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkBulkSignerTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void signFileInOrder() throws IOException {
+        ByteArkV2UrlSigner signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        Map<String, String> options = new HashMap<>();
+        options.put("method", "GET");
+
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            String url = "https://example.cdn.byteark.com/catalogue/" + i + "/poster.jpg";
+            input.append(url).append(i % 7 == 0 ? "\r\n" : "\n");
+            expected.add(signer.sign(url, 1514764800, options));
+            if (i % 500 == 0) {
+                input.append('\n');
+                expected.add("");
+            }
+        }
+        Path in = dir.resolve("urls.txt");
+        Path out = dir.resolve("signed.txt");
+        Files.write(in, input.toString().getBytes(StandardCharsets.UTF_8));
+
+        List<Long> progress = new ArrayList<>();
+        ByteArkBulkSigner.Result result = new ByteArkBulkSigner.Builder(signer)
+                .withThreads(4)
+                .withChunkSize(1000)
+                .withProgressListener((lines, bytesRead, totalBytes, elapsedNanos) -> progress.add(bytesRead))
+                .build()
+                .sign(in, out, 1514764800, options);
+
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+        assertEquals(expected.size(), result.getLines());
+        assertEquals(0, result.getFailedLines());
+        assertEquals(0, result.getFirstFailedLine());
+        assertEquals(Files.size(in), result.getBytesRead());
+        assertEquals(Files.size(in), (long) progress.get(progress.size() - 1));
+        assertTrue(progress.size() > 50);
+    }
+
+    @Test
+    void copyLinesThatAreNotUrls() throws IOException {
+        ByteArkV2UrlSigner signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        StringBuilder input = new StringBuilder();
+        List<String> expected = new ArrayList<>();
+        for (int i = 0; i < 300; i++) {
+            String url = i % 100 == 42 ? "/catalogue/" + i + "/poster.jpg"
+                    : "https://example.cdn.byteark.com/catalogue/" + i + "/poster.jpg";
+            input.append(url).append('\n');
+            expected.add(i % 100 == 42 ? url : signer.sign(url, 1514764800));
+        }
+        Path in = dir.resolve("urls.txt");
+        Path out = dir.resolve("signed.txt");
+        Files.write(in, input.toString().getBytes(StandardCharsets.UTF_8));
+
+        ByteArkBulkSigner.Result result = new ByteArkBulkSigner.Builder(signer)
+                .withThreads(4)
+                .withChunkSize(1000)
+                .build()
+                .sign(in, out, 1514764800, null);
+
+        assertEquals(expected, Files.readAllLines(out, StandardCharsets.UTF_8));
+        assertEquals(300, result.getLines());
+        assertEquals(3, result.getFailedLines());
+        assertEquals(43, result.getFirstFailedLine());
+    }
+
+    @Test
+    void limitChunkSize() {
+        ByteArkBulkSigner.Builder builder = new ByteArkBulkSigner.Builder(new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build());
+        builder.withChunkSize(ByteArkBulkSigner.MAX_CHUNK_SIZE);
+        assertThrows(IllegalArgumentException.class, () -> builder.withChunkSize(1 << 30));
+        assertThrows(IllegalArgumentException.class, () -> builder.withChunkSize(0));
+    }
+}
@@ -0,0 +1,77 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+
+class ByteArkCachingUrlSignerTest {
+    ByteArkV2UrlSigner signer;
+    AtomicLong now;
+
+    @BeforeEach
+    void setup() {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        now = new AtomicLong(1514763600);
+    }
+
+    @Test
+    void reusesUrlWithinBucket() {
+        ByteArkCachingUrlSigner cachingSigner = new ByteArkCachingUrlSigner.Builder(signer)
+                .withMinAge(900)
+                .withAlignment(300)
+                .withClock(now::get)
+                .build();
+        assertEquals(1514764500, cachingSigner.bucketOf(1514763600));
+        assertEquals(1514764800, cachingSigner.bucketOf(1514763601));
+
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        String first = cachingSigner.sign("https://example.cdn.byteark.com/live/playlist.m3u8", options);
+        assertEquals(signer.sign("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764500, options), first);
+
+        assertEquals(first, cachingSigner.sign("https://example.cdn.byteark.com/live/playlist.m3u8", new HashMap<>(options)));
+        assertEquals(1, cachingSigner.getHitCount());
+
+        now.set(1514763700);
+        String rolled = cachingSigner.sign("https://example.cdn.byteark.com/live/playlist.m3u8", options);
+        assertEquals(signer.sign("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764800, options), rolled);
+        assertNotEquals(first, cachingSigner.sign("https://example.cdn.byteark.com/live/other.m3u8", options));
+        assertEquals(3, cachingSigner.getMissCount());
+    }
+
+    @Test
+    void refreshesAhead() {
+        List<Runnable> tasks = new ArrayList<>();
+        ByteArkCachingUrlSigner cachingSigner = new ByteArkCachingUrlSigner.Builder(signer)
+                .withMinAge(900)
+                .withAlignment(300)
+                .withRefreshAhead(60, tasks::add)
+                .withClock(now::get)
+                .build();
+        String url = "https://example.cdn.byteark.com/path/to/file.png";
+
+        now.set(1514763601);
+        assertEquals(signer.sign(url, 1514764800), cachingSigner.sign(url));
+        now.addAndGet(250);
+        cachingSigner.sign(url);
+        cachingSigner.sign(url);
+        assertEquals(1, tasks.size());
+        tasks.get(0).run();
+
+        now.addAndGet(60);
+        assertEquals(signer.sign(url, 1514765100), cachingSigner.sign(url));
+        assertEquals(1, cachingSigner.getMissCount());
+        assertEquals(1, cachingSigner.getRefreshCount());
+    }
+}
@@ -0,0 +1,144 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteArkHlsPlaylistSignerTest {
+    ByteArkV2UrlSigner signer;
+    ByteArkHlsPlaylistSigner playlistSigner;
+
+    @BeforeEach
+    void setup() {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        playlistSigner = new ByteArkHlsPlaylistSigner(signer);
+    }
+
+    @Test
+    void signMediaPlaylist() throws IOException {
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:6\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"../keys/key.bin\",IV=0x1\n"
+                + "#EXT-X-MAP:URI=\"init.mp4\"\n"
+                + "\n"
+                + "#EXTINF:6.0,\n"
+                + "segment-0.ts\n"
+                + "#EXTINF:6.0,\n"
+                + "https://other.cdn.byteark.com/live/720p/segment-1.ts?start=1\n";
+        String signed = sign(playlist, null);
+
+        String key = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/keys/key.bin", 1514764800, null);
+        String init = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/init.mp4", 1514764800, null);
+        String segment0 = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/segment-0.ts", 1514764800, null);
+        String segment1 = signer.makeSignedQueryParams("other.cdn.byteark.com", "/live/720p/segment-1.ts", 1514764800, null);
+        assertEquals("#EXTM3U\n"
+                + "#EXT-X-TARGETDURATION:6\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"../keys/key.bin?" + key + "\",IV=0x1\n"
+                + "#EXT-X-MAP:URI=\"init.mp4?" + init + "\"\n"
+                + "\n"
+                + "#EXTINF:6.0,\n"
+                + "segment-0.ts?" + segment0 + "\n"
+                + "#EXTINF:6.0,\n"
+                + "https://other.cdn.byteark.com/live/720p/segment-1.ts?start=1&" + segment1 + "\n",
+                signed);
+    }
+
+    @Test
+    void signWithPathPrefix() throws IOException {
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        String signed = sign("#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1280000\n"
+                + "720p/playlist.m3u8\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=2560000\n"
+                + "1080p/playlist.m3u8\n", options);
+        String query = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/playlist.m3u8", 1514764800, options);
+        assertEquals("#EXTM3U\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=1280000\n"
+                + "720p/playlist.m3u8?" + query + "\n"
+                + "#EXT-X-STREAM-INF:BANDWIDTH=2560000\n"
+                + "1080p/playlist.m3u8?" + query + "\n", signed);
+    }
+
+    @Test
+    void keepNonHttpUris() throws IOException {
+        String playlist = "#EXTM3U\n"
+                + "#EXT-X-KEY:METHOD=SAMPLE-AES,URI=\"skd://key-42?iv=1\",KEYFORMAT=\"com.apple.streamingkeydelivery\"\n"
+                + "#EXT-X-KEY:METHOD=AES-128,URI=\"data:text/plain;base64,AAECAwQFBgcICQoLDA0ODw==\"\n"
+                + "#EXT-X-SESSION-DATA:DATA-ID=\"com.example.title\",URI=\"data:application/json,{\"\n"
+                + "#EXTINF:6.0,\n"
+                + "segment-0.ts\n";
+        String segment0 = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/segment-0.ts", 1514764800, null);
+        assertEquals(playlist.replace("segment-0.ts\n", "segment-0.ts?" + segment0 + "\n"), sign(playlist, null));
+    }
+
+    @Test
+    void signBeforeFragmentAndReplaceSignedParams() throws IOException {
+        String signed = sign("#EXTM3U\n"
+                + "#EXT-X-MAP:URI=\"init.mp4#t=0\"\n"
+                + "#EXTINF:6.0,\n"
+                + "segment-0.ts?start=1&x_ark_expires=1&x_ark_signature=old#t=10\n", null);
+        String init = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/init.mp4", 1514764800, null);
+        String segment0 = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/segment-0.ts", 1514764800, null);
+        assertEquals("#EXTM3U\n"
+                + "#EXT-X-MAP:URI=\"init.mp4?" + init + "#t=0\"\n"
+                + "#EXTINF:6.0,\n"
+                + "segment-0.ts?start=1&" + segment0 + "#t=10\n", signed);
+        // The same form sign() gives for the absolute URL
+        assertEquals("https://example.cdn.byteark.com/live/720p/segment-0.ts?start=1&" + segment0 + "#t=10",
+                signer.sign("https://example.cdn.byteark.com/live/720p/segment-0.ts?start=1#t=10", 1514764800));
+    }
+
+    @Test
+    void keepLineTerminators() throws IOException {
+        String segment0 = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/segment-0.ts", 1514764800, null);
+        String segment1 = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/720p/segment-1.ts", 1514764800, null);
+        assertEquals("#EXTM3U\r\n#EXTINF:6.0,\r\nsegment-0.ts?" + segment0 + "\r\n\r\n#EXTINF:6.0,\rsegment-1.ts?" + segment1,
+                sign("#EXTM3U\r\n#EXTINF:6.0,\r\nsegment-0.ts\r\n\r\n#EXTINF:6.0,\rsegment-1.ts", null));
+        assertEquals("", sign("", null));
+    }
+
+    @Test
+    void rejectUnresolvableUris() {
+        IOException e = assertThrows(IOException.class, () -> sign("#EXTM3U\n"
+                + "#EXTINF:6.0,\n"
+                + "segment 0.ts\n", null));
+        assertEquals("Cannot sign the URI on line 3: segment 0.ts", e.getMessage());
+        e = assertThrows(IOException.class, () -> sign("#EXTM3U\n"
+                + "#EXT-X-MAP:URI=\"https:init.mp4\"\n", null));
+        assertEquals("Cannot sign the URI on line 2: https:init.mp4", e.getMessage());
+    }
+
+    @Test
+    void rejectNonHttpPlaylistUrl() {
+        assertThrows(IllegalArgumentException.class, () -> playlistSigner.sign(
+                "file:/live/playlist.m3u8",
+                new ByteArrayInputStream(new byte[0]),
+                new ByteArrayOutputStream(),
+                1514764800,
+                null));
+    }
+
+    private String sign(String playlist, Map<String, String> options) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        playlistSigner.sign(
+                "https://example.cdn.byteark.com/live/720p/playlist.m3u8",
+                new ByteArrayInputStream(playlist.getBytes(StandardCharsets.UTF_8)),
+                out,
+                1514764800,
+                options);
+        return new String(out.toByteArray(), StandardCharsets.UTF_8);
+    }
+}
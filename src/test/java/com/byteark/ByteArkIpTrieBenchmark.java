@@ -0,0 +1,117 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Country lookup in a table of {@code ranges} IPv4 and IPv6 ranges, three
+ * quarters IPv4, laid out back to back like an IP-to-country export, and
+ * verify with a geo_allow policy against the same table.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1G", "-Xmx1G"})
+@State(Scope.Thread)
+public class ByteArkIpTrieBenchmark {
+    static final String[] COUNTRIES = {"TH", "SG", "MY", "VN", "ID", "PH", "JP", "US"};
+    static final int ADDRESSES = 4096;
+
+    @Param({"10000", "1000000"})
+    public int ranges;
+
+    ByteArkIpTrie trie;
+    ByteArkV2UrlSigner signer;
+    String[] ipv4 = new String[ADDRESSES];
+    String[] ipv6 = new String[ADDRESSES];
+    String query;
+    int next;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkIpTrieBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        Random random = new Random(42);
+        ByteArkIpTrie.Builder builder = new ByteArkIpTrie.Builder();
+        int v4Ranges = ranges / 4 * 3;
+        // Aligned blocks of 256 to 4096 addresses from 1.0.0.0, with gaps
+        long v4 = 1L << 24;
+        for (int i = 0; i < v4Ranges; i++) {
+            int bits = 8 + random.nextInt(5);
+            long size = 1L << bits;
+            v4 = (v4 + size - 1) & -size;
+            builder.add(ipv4(v4) + "/" + (32 - bits), COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            v4 += size * (1 + random.nextInt(2));
+        }
+        // /32 to /48 blocks under 2000::/4
+        long v6 = 0x2000L << 48;
+        for (int i = v4Ranges; i < ranges; i++) {
+            int length = 32 + random.nextInt(17);
+            long size = 1L << (64 - length);
+            v6 = (v6 + size - 1) & -size;
+            builder.add(ipv6(v6) + "/" + length, COUNTRIES[random.nextInt(COUNTRIES.length)]);
+            v6 += size * (1 + random.nextInt(2));
+        }
+        trie = builder.build();
+
+        for (int i = 0; i < ADDRESSES; i++) {
+            ipv4[i] = ipv4((1L << 24) + (random.nextLong() & Long.MAX_VALUE) % (v4 - (1L << 24)));
+            ipv6[i] = ipv6((0x2000L << 48) + (random.nextLong() & Long.MAX_VALUE) % (v6 - (0x2000L << 48)))
+                    .replace("::", ":" + Integer.toHexString(random.nextInt(0x10000)) + "::");
+        }
+
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withGeoIp(trie)
+                .build();
+        Map<String, String> options = new HashMap<>();
+        options.put("geo_allow", "TH,SG,MY,VN");
+        query = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/playlist.m3u8", 1514764800, options);
+    }
+
+    @Benchmark
+    public String lookupIpv4() {
+        return trie.lookup(ipv4[next++ & (ADDRESSES - 1)]);
+    }
+
+    @Benchmark
+    public String lookupIpv6() {
+        return trie.lookup(ipv6[next++ & (ADDRESSES - 1)]);
+    }
+
+    @Benchmark
+    public ByteArkSignedUrlVerifyResult verifyGeoAllow() {
+        return signer.verifyResult("example.cdn.byteark.com", "/live/playlist.m3u8", query,
+                ipv4[next++ & (ADDRESSES - 1)], 1514764700);
+    }
+
+    static String ipv4(long address) {
+        return (address >>> 24 & 0xff) + "." + (address >>> 16 & 0xff) + "." + (address >>> 8 & 0xff) + "." + (address & 0xff);
+    }
+
+    /**
+     * The address with {@code hi} as its top 64 bits and zeros below.
+     */
+    static String ipv6(long hi) {
+        StringBuilder sb = new StringBuilder();
+        for (int shift = 48; shift >= 0; shift -= 16) {
+            sb.append(Long.toHexString(hi >>> shift & 0xffff)).append(':');
+        }
+        return sb.append(':').toString();
+    }
+}
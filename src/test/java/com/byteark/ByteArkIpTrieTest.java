@@ -0,0 +1,152 @@
+package com.byteark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkIpTrieTest {
+    @TempDir
+    Path dir;
+
+    @Test
+    void longestPrefixWins() {
+        ByteArkIpTrie trie = new ByteArkIpTrie.Builder()
+                .add("10.0.0.0/8", "A")
+                .add("10.1.0.0/16", "B")
+                .add("10.1.2.3", "C")
+                .add("0.0.0.0/0", "ANY4")
+                .build();
+        assertEquals("A", trie.lookup("10.200.0.1"));
+        assertEquals("B", trie.lookup("10.1.200.1"));
+        assertEquals("C", trie.lookup("10.1.2.3"));
+        assertEquals("B", trie.lookup("10.1.2.4"));
+        assertEquals("ANY4", trie.lookup("192.0.2.1"));
+        assertNull(trie.lookup("2001:db8::1"));
+        assertEquals("B", trie.lookup("::ffff:10.1.0.1"));
+        assertNull(trie.lookup("10.1.2"));
+        assertNull(trie.lookup("10.1.2.256"));
+        assertNull(trie.lookup("example.com"));
+        assertNull(new ByteArkIpTrie.Builder().build().lookup("10.1.2.3"));
+    }
+
+    @Test
+    void ipv6() {
+        ByteArkIpTrie trie = new ByteArkIpTrie.Builder()
+                .add("2001:db8::/32", "DOC")
+                .add("2001:db8:abcd:12::/64", "NET")
+                .add("::1", "LOOPBACK")
+                .build();
+        assertEquals("DOC", trie.lookup("2001:db8::1"));
+        assertEquals("NET", trie.lookup("2001:DB8:ABCD:12:1:2:3:4"));
+        assertEquals("NET", trie.lookup("[2001:db8:abcd:12::9]"));
+        assertEquals("NET", trie.lookup("2001:db8:abcd:12::9%eth0"));
+        assertEquals("DOC", trie.lookup("2001:db8:abcd:13::"));
+        assertEquals("LOOPBACK", trie.lookup("0:0:0:0:0:0:0:1"));
+        assertNull(trie.lookup("2001:db9::1"));
+        assertNull(trie.lookup("2001:db8:::1"));
+        assertNull(trie.lookup("2001:db8::1::2"));
+        assertNull(trie.lookup("1:2:3:4:5:6:7:8:9"));
+    }
+
+    @Test
+    void ranges() {
+        ByteArkIpTrie trie = new ByteArkIpTrie.Builder()
+                .addRange("1.0.0.0", "1.0.0.255", "AU")
+                .addRange("1.0.1.0", "1.0.3.255", "CN")
+                .addRange("1.0.4.7", "1.0.9.200", "XX")
+                .addRange("2001:db8::", "2001:db8::ffff", "V6")
+                .build();
+        assertEquals("AU", trie.lookup("1.0.0.0"));
+        assertEquals("AU", trie.lookup("1.0.0.255"));
+        assertEquals("CN", trie.lookup("1.0.1.0"));
+        assertEquals("CN", trie.lookup("1.0.3.255"));
+        assertNull(trie.lookup("1.0.4.6"));
+        assertEquals("XX", trie.lookup("1.0.4.7"));
+        assertEquals("XX", trie.lookup("1.0.8.0"));
+        assertEquals("XX", trie.lookup("1.0.9.200"));
+        assertNull(trie.lookup("1.0.9.201"));
+        assertEquals("V6", trie.lookup("2001:db8::abcd"));
+        assertNull(trie.lookup("2001:db8::1:0"));
+        // 1.0.1.0/24 and 1.0.2.0/23, 1.0.4.7-1.0.9.200 in aligned pieces
+        assertEquals(1 + 2 + cover(0x01000407L, 0x010009c8L) + 1, trie.getNetworkCount());
+
+        ByteArkIpTrie all = new ByteArkIpTrie.Builder()
+                .addRange("0.0.0.0", "255.255.255.255", "V4")
+                .addRange("::", "ffff:ffff:ffff:ffff:ffff:ffff:ffff:ffff", "ALL")
+                .build();
+        assertEquals("V4", all.lookup("255.255.255.255"));
+        assertEquals("ALL", all.lookup("ffff::1"));
+        assertEquals(2, all.getNetworkCount());
+    }
+
+    @Test
+    void invalidNetworks() {
+        ByteArkIpTrie.Builder builder = new ByteArkIpTrie.Builder();
+        assertThrows(IllegalArgumentException.class, () -> builder.add("10.0.0.0/33", "A"));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("10.0.0/8", "A"));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("::/129", "A"));
+        assertThrows(IllegalArgumentException.class, () -> builder.addRange("10.0.0.9", "10.0.0.1", "A"));
+        assertThrows(IllegalArgumentException.class, () -> builder.addRange("10.0.0.1", "::1", "A"));
+    }
+
+    @Test
+    void loadRangeFile() throws IOException {
+        Path file = dir.resolve("geo.csv");
+        Files.write(file, Arrays.asList(
+                "# first,last,country",
+                "\"103.253.132.0\",\"103.253.135.255\",\"TH\",\"Thailand\"",
+                "2001:db8::/32,SG",
+                "",
+                "198.51.100.0,198.51.100.255,US"
+        ), StandardCharsets.UTF_8);
+        ByteArkIpTrie trie = ByteArkIpTrie.load(file);
+        assertEquals("TH", trie.lookup("103.253.132.65"));
+        assertEquals("SG", trie.lookup("2001:db8::1"));
+        assertEquals("US", trie.lookup("198.51.100.7"));
+        assertNull(trie.lookup("192.0.2.1"));
+
+        Files.write(file, Arrays.asList("10.0.0.0,10.0.0.x,XX"), StandardCharsets.UTF_8);
+        IOException e = assertThrows(IOException.class, () -> ByteArkIpTrie.load(file));
+        assertTrue(e.getMessage().endsWith("line 1"));
+    }
+
+    @Test
+    void networkList() {
+        long[] address = new long[2];
+        long[] scratch = new long[2];
+        assertTrue(IpAddress.parse("203.0.113.9", address));
+        assertTrue(IpAddress.inAny("198.51.100.0/24, 203.0.113.0/25", address[0], address[1], scratch));
+        assertTrue(IpAddress.inAny("203.0.113.9", address[0], address[1], scratch));
+        assertTrue(IpAddress.inAny("::ffff:0:0/96", address[0], address[1], scratch));
+        assertFalse(IpAddress.inAny("203.0.113.128/25", address[0], address[1], scratch));
+        assertFalse(IpAddress.inAny("203.0.113.0/40,bogus,", address[0], address[1], scratch));
+        assertFalse(IpAddress.inAny("", address[0], address[1], scratch));
+    }
+
+    /**
+     * Number of aligned networks covering an IPv4 range.
+     */
+    private static int cover(long first, long last) {
+        int count = 0;
+        while (first <= last) {
+            int bits = Long.numberOfTrailingZeros(first | (1L << 32));
+            while (first + (1L << bits) - 1 > last) {
+                bits--;
+            }
+            first += 1L << bits;
+            count++;
+        }
+        return count;
+    }
+}
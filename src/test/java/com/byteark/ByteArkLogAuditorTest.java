@@ -0,0 +1,187 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.time.ZonedDateTime;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteArkLogAuditorTest {
+    static final String HOST = "example.cdn.byteark.com";
+    static final String TIME = "10/Oct/2019:13:55:36 +0700";
+    static final long LOGGED = 1570690536;
+
+    @TempDir
+    Path dir;
+
+    ByteArkV2UrlSigner signer;
+
+    @BeforeEach
+    void setup() {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+    }
+
+    @Test
+    void countsOutcomesAcrossFilesAndThreads() throws IOException {
+        Path first = write("first.log", 100);
+        Path second = write("second.log", 50);
+        ByteArkLogAuditor.Report report = new ByteArkLogAuditor.Builder(signer)
+                .withHost(HOST)
+                .withThreads(4)
+                .withChunkSize(1000)
+                .withTopPaths(3)
+                .build()
+                .audit(first, second);
+
+        assertEquals(150 * 12, report.getLines());
+        assertEquals(150 * 2, report.getMalformedLines());
+        assertEquals(150 * 2, report.getCount(ByteArkSignedUrlVerifyResult.OK));
+        assertEquals(150 * 3, report.getCount(ByteArkSignedUrlVerifyResult.EXPIRED));
+        assertEquals(150 * 2, report.getCount(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE));
+        assertEquals(150 * 2, report.getCount(ByteArkSignedUrlVerifyResult.INVALID_CONDITION));
+        assertEquals(0, report.getCount(ByteArkSignedUrlVerifyResult.MISSING_EXPIRES));
+        assertEquals(150, report.getUnsignedLines());
+        assertEquals(150 * 7, report.getInvalidCount());
+        assertEquals(Files.size(first) + Files.size(second), report.getBytesRead());
+
+        assertEquals(3, report.getTopPaths().size());
+        ByteArkLogAuditor.PathCount top = report.getTopPaths().get(0);
+        assertEquals("/vod/old.ts", top.getPath());
+        assertEquals(150 * 3, top.getCount());
+        assertEquals(150 * 3, top.getCount(ByteArkSignedUrlVerifyResult.EXPIRED));
+        assertEquals("/live/d.m3u8", report.getTopPaths().get(2).getPath());
+        assertEquals(0, report.getUntrackedCount());
+    }
+
+    @Test
+    void options() throws IOException {
+        Path log = write("access.log", 10);
+        ByteArkLogAuditor.Report report = new ByteArkLogAuditor.Builder(signer)
+                .withHost(HOST)
+                .withClientIpCheck(false)
+                .withMaxTrackedPaths(1)
+                .withVerifyTime(LOGGED)
+                .build()
+                .audit(log);
+        // The client_ip_range line passes without the address check, and
+        // the line with a bad timestamp is read as an unsigned request
+        assertEquals(10 * 3, report.getCount(ByteArkSignedUrlVerifyResult.OK));
+        assertEquals(10, report.getMalformedLines());
+        assertEquals(10 * 2, report.getUnsignedLines());
+        assertEquals(10 * 6, report.getInvalidCount());
+        assertEquals(10 * 6 - report.getTopPaths().get(0).getCount(), report.getUntrackedCount());
+
+        // Without a host only absolute URLs are read
+        report = new ByteArkLogAuditor.Builder(signer).build().audit(log);
+        assertEquals(10 * 11, report.getMalformedLines());
+        assertEquals(10, report.getCount(ByteArkSignedUrlVerifyResult.OK));
+
+        assertThrows(IOException.class,
+                () -> new ByteArkLogAuditor.Builder(signer).build().audit(dir.resolve("missing.log")));
+    }
+
+    @Test
+    void absoluteUrlsAndSignerState() throws IOException {
+        ByteArkVerifyCache cache = new ByteArkVerifyCache(16);
+        AtomicInteger verified = new AtomicInteger();
+        ByteArkV2UrlSigner cached = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withVerifyCache(cache)
+                .withListener(new ByteArkV2UrlSignerListener() {
+                    @Override
+                    public void onVerify(CharSequence host, CharSequence path,
+                                         ByteArkSignedUrlVerifyResult result,
+                                         long expires, long now, long nanos) {
+                        verified.incrementAndGet();
+                    }
+                })
+                .build();
+        String valid = signed("/vod/a.m3u8", LOGGED + 600, null);
+        Path log = dir.resolve("absolute.log");
+        Files.write(log, (line("https://" + HOST + ":443/vod/a.m3u8?" + valid) + "\n"
+                + line("https://user@" + HOST + "/vod/a.m3u8?" + valid + "#t=10") + "\n"
+                + line("https://" + HOST + ":8443/vod/a.m3u8?start=10") + "\n"
+                + line("https:///vod/a.m3u8?" + valid) + "\n").getBytes(StandardCharsets.UTF_8));
+
+        ByteArkLogAuditor.Report report = new ByteArkLogAuditor.Builder(cached).build().audit(log);
+        assertEquals(2, report.getCount(ByteArkSignedUrlVerifyResult.OK));
+        assertEquals(1, report.getUnsignedLines());
+        assertEquals(1, report.getMalformedLines());
+        assertEquals(0, report.getInvalidCount());
+        assertEquals(0, report.getTopPaths().size());
+        assertEquals(0, cache.size());
+        assertEquals(0, verified.get());
+    }
+
+    @Test
+    void parseTime() {
+        assertEquals(LOGGED, parse(TIME));
+        assertEquals(ZonedDateTime.parse("2020-02-29T23:59:59-05:30").toEpochSecond(), parse("29/Feb/2020:23:59:59 -0530"));
+        assertEquals(0, parse("01/Jan/1970:00:00:00 +0000"));
+        assertEquals(Long.MIN_VALUE, parse("10/Okt/2019:13:55:36 +0700"));
+        assertEquals(Long.MIN_VALUE, parse("10/Oct/2019:13:55:3x +0700"));
+        assertEquals(Long.MIN_VALUE, parse("10/Oct/2019:13:55:36"));
+    }
+
+    private static long parse(String time) {
+        byte[] bytes = time.getBytes(StandardCharsets.US_ASCII);
+        return ByteArkLogAuditor.parseTime(bytes, 0, bytes.length);
+    }
+
+    /**
+     * Writes {@code repeat} copies of twelve lines: two valid, three
+     * expired, two tampered, two failing a condition, one unsigned, and
+     * two malformed, with some blank lines and CRLF endings.
+     */
+    private Path write(String name, int repeat) throws IOException {
+        Map<String, String> prefix = new HashMap<>();
+        prefix.put("path_prefix", "/vod/x/");
+        Map<String, String> range = new HashMap<>();
+        range.put("client_ip_range", "10.0.0.0/8");
+        String valid = signed("/vod/a.m3u8", LOGGED + 600, null);
+        String tampered = signed("/vod/b.ts", LOGGED + 600, null).replace("x_ark_signature=", "x_ark_signature=A");
+
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < repeat; i++) {
+            sb.append(line("/vod/a.m3u8?" + valid)).append("\r\n");
+            sb.append(line("https://" + HOST + "/vod/a.m3u8?" + valid)).append('\n');
+            for (int j = 0; j < 3; j++) {
+                sb.append(line("/vod/old.ts?" + signed("/vod/old.ts", LOGGED - 10, null))).append('\n');
+            }
+            sb.append(line("/vod/b.ts?" + tampered)).append('\n');
+            sb.append(line("/vod/b.ts?" + tampered)).append("\n\n");
+            sb.append(line("/vod/y/c.ts?" + signed("/vod/y/c.ts", LOGGED + 600, prefix))).append('\n');
+            sb.append(line("/live/d.m3u8?" + signed("/live/d.m3u8", LOGGED + 600, range))).append('\n');
+            sb.append(line("/favicon.ico")).append('\n');
+            sb.append("garbage\n");
+            sb.append(line("/vod/a.m3u8").replace("Oct", "Okt")).append('\n');
+        }
+        Path file = dir.resolve(name);
+        Files.write(file, sb.toString().getBytes(StandardCharsets.UTF_8));
+        return file;
+    }
+
+    private String signed(String path, long expires, Map<String, String> options) {
+        return signer.makeSignedQueryParams(HOST, path, expires,
+                options == null ? Collections.<String, String>emptyMap() : options);
+    }
+
+    private static String line(String target) {
+        return "203.0.113.9 - - [" + TIME + "] \"GET " + target + " HTTP/1.1\" 200 1234 \"-\" \"Mozilla/5.0\"";
+    }
+}
@@ -0,0 +1,116 @@
+package com.byteark;
+
+import java.io.BufferedReader;
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Throughput of {@link ByteArkLogAuditor} on a synthetic combined-format
+ * access log, against verifying line by line with
+ * {@link ByteArkV2UrlSigner#verify(String, String, CharSequence, long)} and
+ * catching the exceptions.
+ *
+ * <pre>
+ * java -cp ... com.byteark.ByteArkLogAuditorThroughput [lines] [threads]
+ * </pre>
+ *
+ * <p>Nine in ten lines carry a valid signature; the rest are expired,
+ * tampered, outside their path_prefix or unsigned.
+ */
+public class ByteArkLogAuditorThroughput {
+    static final String HOST = "example.cdn.byteark.com";
+    static final long LOGGED = 1570690536;
+
+    public static void main(String[] args) throws Exception {
+        int lines = args.length > 0 ? Integer.parseInt(args[0]) : 2000000;
+        int threads = args.length > 1 ? Integer.parseInt(args[1]) : Runtime.getRuntime().availableProcessors();
+        ByteArkV2UrlSigner signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        Path log = Files.createTempFile("access", ".log");
+        try {
+            generate(signer, log, lines);
+            System.out.printf("%d lines, %.1f MB%n", lines, Files.size(log) / 1e6);
+
+            ByteArkLogAuditor auditor = new ByteArkLogAuditor.Builder(signer)
+                    .withHost(HOST)
+                    .withThreads(threads)
+                    .build();
+            // A first pass so that the report is not dominated by JIT compilation.
+            auditor.audit(log);
+            ByteArkLogAuditor.Report report = auditor.audit(log);
+            System.out.printf("auditor, %d threads%n%s", threads, report);
+
+            long start = System.nanoTime();
+            long invalid = verifyEachLine(signer, log);
+            double elapsed = (System.nanoTime() - start) / 1e9;
+            System.out.printf("verify per line, 1 thread%n%d lines in %.3f s (%.0f lines/s), %d invalid%n",
+                    lines, elapsed, lines / elapsed, invalid);
+        } finally {
+            Files.delete(log);
+        }
+    }
+
+    static void generate(ByteArkV2UrlSigner signer, Path log, int lines) throws IOException {
+        Random random = new Random(42);
+        Map<String, String> prefix = new HashMap<>();
+        prefix.put("path_prefix", "/vod/other/");
+        try (BufferedWriter out = Files.newBufferedWriter(log, StandardCharsets.UTF_8)) {
+            for (int i = 0; i < lines; i++) {
+                String path = "/vod/" + random.nextInt(1000) + "/720p/segment-" + random.nextInt(600) + ".ts";
+                int kind = random.nextInt(40);
+                String query;
+                if (kind == 0) {
+                    query = signer.makeSignedQueryParams(HOST, path, LOGGED - 60, Collections.emptyMap());
+                } else if (kind == 1) {
+                    query = signer.makeSignedQueryParams(HOST, path, LOGGED + 600, Collections.emptyMap())
+                            .replace("x_ark_signature=", "x_ark_signature=A");
+                } else if (kind == 2) {
+                    query = signer.makeSignedQueryParams(HOST, path, LOGGED + 600, prefix);
+                } else if (kind == 3) {
+                    query = null;
+                } else {
+                    query = signer.makeSignedQueryParams(HOST, path, LOGGED + 600, Collections.emptyMap());
+                }
+                out.write("203.0.113." + random.nextInt(256) + " - - [10/Oct/2019:13:55:36 +0700] \"GET "
+                        + path + (query == null ? "" : "?" + query) + " HTTP/1.1\" 200 "
+                        + random.nextInt(2000000) + " \"-\" \"Mozilla/5.0 (X11; Linux x86_64)\"\n");
+            }
+        }
+    }
+
+    /**
+     * The way logs were audited before: split each line into fields and
+     * call verify, counting the exceptions.
+     */
+    static long verifyEachLine(ByteArkV2UrlSigner signer, Path log) throws IOException {
+        long invalid = 0;
+        try (BufferedReader in = Files.newBufferedReader(log, StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                String target = line.split("\"")[1].split(" ")[1];
+                int query = target.indexOf('?');
+                try {
+                    signer.verify(HOST,
+                            query < 0 ? target : target.substring(0, query),
+                            query < 0 ? null : target.substring(query + 1),
+                            LOGGED);
+                } catch (ByteArkSignedUrlExpiredException
+                        | ByteArkSignedUrlInvalidConditionException
+                        | ByteArkSignedUrlInvalidSignatureException
+                        | ByteArkSignedUrlMissingParamException e) {
+                    invalid++;
+                }
+            }
+        }
+        return invalid;
+    }
+}
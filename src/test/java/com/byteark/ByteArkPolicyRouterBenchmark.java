@@ -0,0 +1,101 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collections;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Route lookup among {@code rules} catalogue rules, a third each of
+ * channel directories, per-title directories two levels deep and
+ * per-title rules under a {@code *} segment, and signing through the
+ * router against signing with a policy prepared up front.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms1G", "-Xmx1G"})
+@State(Scope.Thread)
+public class ByteArkPolicyRouterBenchmark {
+    static final String HOST = "example.cdn.byteark.com";
+    static final int PATHS = 1024;
+
+    @Param({"100", "10000", "100000"})
+    public int rules;
+
+    ByteArkV2UrlSigner signer;
+    ByteArkPolicyRouter router;
+    ByteArkV2UrlSigner.PreparedPolicy policy;
+    String[] paths = new String[PATHS];
+    String[] urls = new String[PATHS];
+    StringBuilder out = new StringBuilder(512);
+    int next;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkPolicyRouterBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        ByteArkPolicyRouter.Builder builder = new ByteArkPolicyRouter.Builder(signer)
+                .add("/", 900, null)
+                .addWithPathPrefix("/live/*/", 60, null);
+        for (int i = 0; i < rules / 3; i++) {
+            builder.addWithPathPrefix("/live/ch" + i + "/", 30, null);
+            builder.add("/vod/" + (i % 100) + "/title" + i + "/", 3600, null);
+            builder.add("/clips/*/title" + i + "/", 600, null);
+        }
+        router = builder.build();
+        policy = signer.prepare(Collections.emptyMap());
+
+        Random random = new Random(42);
+        int titles = Math.max(1, rules / 3);
+        for (int i = 0; i < PATHS; i++) {
+            int title = random.nextInt(titles);
+            switch (i % 4) {
+                case 0:
+                    paths[i] = "/live/ch" + title + "/720p/segment-" + random.nextInt(1000) + ".ts";
+                    break;
+                case 1:
+                    paths[i] = "/vod/" + (title % 100) + "/title" + title + "/hls/720p/segment-00042.ts";
+                    break;
+                case 2:
+                    paths[i] = "/clips/2019/title" + title + "/clip.mp4";
+                    break;
+                default:
+                    paths[i] = "/live/unknown" + title + "/playlist.m3u8";
+            }
+            urls[i] = "https://" + HOST + paths[i];
+        }
+    }
+
+    @Benchmark
+    public ByteArkPolicyRouter.Route route() {
+        return router.route(paths[next++ & (PATHS - 1)]);
+    }
+
+    @Benchmark
+    public int routeAndSign() {
+        out.setLength(0);
+        return router.sign(urls[next++ & (PATHS - 1)], 1514764800, out).length();
+    }
+
+    @Benchmark
+    public int signPrepared() {
+        out.setLength(0);
+        return signer.signPrepared(urls[next++ & (PATHS - 1)], 1514764800 + 900, policy, out).length();
+    }
+}
@@ -0,0 +1,130 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkPolicyRouterTest {
+    static final String HOST = "example.cdn.byteark.com";
+
+    ByteArkV2UrlSigner signer;
+
+    @BeforeEach
+    void setup() {
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withDefaultAge(900)
+                .build();
+    }
+
+    @Test
+    void longestMatchWins() {
+        ByteArkPolicyRouter router = new ByteArkPolicyRouter.Builder(signer)
+                .add("/vod/", 3600, null)
+                .add("/vod/trailers/", 600, null)
+                .add("/live/*/", 60, null)
+                .add("/live/news/sd/", 30, null)
+                .add("/live/*/dvr/", 300, null)
+                .build();
+        assertEquals(5, router.getRuleCount());
+        assertEquals("/vod/", router.route("/vod/movie/720p.m3u8").getPattern());
+        assertEquals("/vod/trailers/", router.route("/vod/trailers/a.mp4").getPattern());
+        assertEquals("/vod/", router.route("/vod/trailers").getPattern());
+        assertEquals("/live/*/", router.route("/live/ch7/playlist.m3u8").getPattern());
+        // A literal branch without a rule of its own falls back to the * one
+        assertEquals("/live/*/", router.route("/live/news/hd/playlist.m3u8").getPattern());
+        assertEquals("/live/news/sd/", router.route("/live/news/sd/playlist.m3u8").getPattern());
+        assertEquals("/live/*/dvr/", router.route("/live/news/dvr/1.ts").getPattern());
+        assertEquals("/live/*/dvr/", router.route("/live/ch7/dvr/1.ts").getPattern());
+        assertEquals(60, router.route("/live/ch7/dvr").getTtl());
+
+        assertNull(router.route("/live/playlist.m3u8").getPattern());
+        assertNull(router.route("/live//x.ts").getPattern());
+        assertNull(router.route("").getPattern());
+        assertNull(router.route("vod/a.mp4").getPattern());
+    }
+
+    @Test
+    void signsWithRoutePolicy() {
+        Map<String, String> options = new HashMap<>();
+        options.put("client_ip", "203.0.113.9");
+        ByteArkPolicyRouter router = new ByteArkPolicyRouter.Builder(signer)
+                .add("/", 0, null)
+                .add("/vod/", 3600, options)
+                .addWithPathPrefix("/live/*/", 60, null)
+                .addWithPathPrefix("/hls/", 120, null)
+                .build();
+
+        String url = "https://" + HOST + "/vod/movie/720p.m3u8?lang=th#t=10";
+        Map<String, String> expected = new HashMap<>(options);
+        assertEquals(signer.sign(url, 1514764800 + 3600, expected), router.sign(url, 1514764800));
+
+        expected.clear();
+        assertEquals(signer.sign("https://" + HOST + "/index.html", 1514764800 + 900, expected),
+                router.sign("https://" + HOST + "/index.html", 1514764800));
+
+        expected.put("path_prefix", "/live/ch7/");
+        assertEquals(signer.sign("https://" + HOST + "/live/ch7/720p/1.ts", 1514764860, expected),
+                router.sign("https://" + HOST + "/live/ch7/720p/1.ts", 1514764800));
+        ByteArkPolicyRouter.Route live = router.route("/live/ch7/720p/1.ts");
+        assertTrue(live.isPathPrefixSigned());
+        assertSame(live.getPolicy("/live/ch7/720p/1.ts"), live.getPolicy("/live/ch7/480p/2.ts"));
+        assertEquals("/live/ch8/", live.getPolicy("/live/ch8/1.ts").getOptions().get("path_prefix"));
+
+        // Directories seen after the cache filled up are still cached
+        for (int i = 0; i < ByteArkPolicyRouter.MAX_CACHED_PREFIXES; i++) {
+            live.getPolicy("/live/tmp" + i + "/1.ts");
+        }
+        assertSame(live.getPolicy("/live/ch9/1.ts"), live.getPolicy("/live/ch9/2.ts"));
+
+        // One signature serves the whole channel directory
+        String signed = router.sign("https://" + HOST + "/live/ch7/playlist.m3u8", 1514764800);
+        String query = signed.substring(signed.indexOf('?') + 1);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult(HOST, "/live/ch7/480p/9.ts", query, 1514764850));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                signer.verifyResult(HOST, "/live/ch8/480p/9.ts", query, 1514764850));
+
+        assertEquals("/hls/", router.route("/hls/a/b.ts").getPolicy("/hls/a/b.ts").getOptions().get("path_prefix"));
+    }
+
+    @Test
+    void updateSwapsRules() {
+        ByteArkPolicyRouter router = new ByteArkPolicyRouter.Builder(signer)
+                .add("/vod/", 3600, null)
+                .build();
+        router.update(new ByteArkPolicyRouter.Builder(signer)
+                .add("/vod/", 60, null)
+                .add("/live/", 10, null));
+        assertEquals(2, router.getRuleCount());
+        assertEquals(60, router.route("/vod/a.mp4").getTtl());
+        assertEquals(10, router.route("/live/a.m3u8").getTtl());
+
+        ByteArkV2UrlSigner other = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        assertThrows(IllegalArgumentException.class, () -> router.update(new ByteArkPolicyRouter.Builder(other)));
+    }
+
+    @Test
+    void invalidRules() {
+        ByteArkPolicyRouter.Builder builder = new ByteArkPolicyRouter.Builder(signer);
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/vod", 60, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("vod/", 60, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/vod//", 60, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/live/ch*/", 60, null));
+        assertThrows(IllegalArgumentException.class, () -> builder.add("/vod/", -1, null));
+        builder.add("/vod/", 60, null).add("/vod/", 120, null);
+        assertThrows(IllegalArgumentException.class, builder::build);
+    }
+}
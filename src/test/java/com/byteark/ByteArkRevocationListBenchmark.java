@@ -0,0 +1,77 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the revocation check for a URL that is not revoked, with
+ * {@code revoked} entries, half signatures and half directory prefixes of
+ * different depths, and the same as part of verify.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class ByteArkRevocationListBenchmark {
+    static final String HOST = "example.cdn.byteark.com";
+    static final String PATH = "/vod/2019/09/movie/720p/segment-00042.ts";
+
+    @Param({"0", "1000", "100000"})
+    public int revoked;
+
+    ByteArkRevocationList revocations;
+    ByteArkV2UrlSigner signer;
+    ByteArkV2UrlSigner plainSigner;
+    String query;
+    String signature;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkRevocationListBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        revocations = new ByteArkRevocationList.Builder().build();
+        for (int i = 0; i < revoked / 2; i++) {
+            revocations.revokeSignature("OsBgZpn9LTAJowa0U" + i, 1514764800, 1514764000);
+            revocations.revokePathPrefix(i % 3 == 0 ? "/vod/r" + i + "/" : "/vod/2019/r" + i + "/", 1514764000);
+        }
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withRevocationList(revocations)
+                .build();
+        plainSigner = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        query = signer.makeSignedQueryParams(HOST, PATH, 1514764800, null);
+        signature = query.substring(query.indexOf("x_ark_signature=") + "x_ark_signature=".length());
+    }
+
+    @Benchmark
+    public boolean isRevoked() {
+        return revocations.isRevoked(PATH, signature, 1514764700);
+    }
+
+    @Benchmark
+    public ByteArkSignedUrlVerifyResult verifyWithRevocations() {
+        return signer.verifyResult(HOST, PATH, query, 1514764700);
+    }
+
+    @Benchmark
+    public ByteArkSignedUrlVerifyResult verifyWithoutRevocations() {
+        return plainSigner.verifyResult(HOST, PATH, query, 1514764700);
+    }
+}
@@ -0,0 +1,132 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkRevocationListTest {
+    static final String HOST = "example.cdn.byteark.com";
+
+    @TempDir
+    Path dir;
+
+    ByteArkRevocationList revocations;
+    ByteArkV2UrlSigner signer;
+
+    @BeforeEach
+    void setup() throws IOException {
+        revocations = new ByteArkRevocationList.Builder()
+                .withMaxTokenLifetime(3600)
+                .withExpectedEntries(16)
+                .build();
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withVerifyCache(new ByteArkVerifyCache(16))
+                .withRevocationList(revocations)
+                .build();
+    }
+
+    @Test
+    void revokeSignature() {
+        String query = signer.makeSignedQueryParams(HOST, "/path/to/file.png", 1514764800, null);
+        // Cached before the revocation
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(HOST, "/path/to/file.png", query, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(HOST, "/path/to/file.png", query, 1514764700));
+
+        revocations.revokeSignature("OsBgZpn9LTAJowa0UUhlYQ", 1514764800, 1514764700);
+        assertEquals(ByteArkSignedUrlVerifyResult.REVOKED, signer.verifyResult(HOST, "/path/to/file.png", query, 1514764700));
+        assertThrows(ByteArkSignedUrlInvalidConditionException.class,
+                () -> signer.verify(HOST, "/path/to/file.png", query, 1514764700));
+        assertTrue(revocations.isRevoked(null, "OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+        assertFalse(revocations.isRevoked(null, "OsBgZpn9LTAJowa0UUhlYR", 1514764700));
+
+        String other = signer.makeSignedQueryParams(HOST, "/path/to/other.png", 1514764800, null);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(HOST, "/path/to/other.png", other, 1514764700));
+        // Past its expiry the URL is no longer revoked, only expired
+        assertEquals(ByteArkSignedUrlVerifyResult.EXPIRED, signer.verifyResult(HOST, "/path/to/file.png", query, 1514764801));
+    }
+
+    @Test
+    void revokePathPrefix() {
+        revocations.revokePathPrefix("/live/takedown/", 1514764000);
+        revocations.revokePathPrefix("/vod/clip.mp4", 1514764000);
+        assertTrue(revocations.isRevoked("/live/takedown/720p/playlist.m3u8", null, 1514764700));
+        assertTrue(revocations.isRevoked("/live/takedown/", null, 1514764700));
+        assertFalse(revocations.isRevoked("/live/takedown", null, 1514764700));
+        assertFalse(revocations.isRevoked("/live/other/playlist.m3u8", null, 1514764700));
+        assertTrue(revocations.isRevoked("/vod/clip.mp4", null, 1514764700));
+        assertFalse(revocations.isRevoked("/vod/clip.mp4.bak", null, 1514764700));
+        // Tokens signed before the revocation have all expired by then
+        assertFalse(revocations.isRevoked("/live/takedown/720p/playlist.m3u8", null, 1514767601));
+
+        String query = signer.makeSignedQueryParams(HOST, "/live/takedown/playlist.m3u8", 1514764800, null);
+        assertEquals(ByteArkSignedUrlVerifyResult.REVOKED,
+                signer.verifyResult(HOST, "/live/takedown/playlist.m3u8", query, 1514764700));
+        assertThrows(IllegalArgumentException.class, () -> revocations.revokePathPrefix("", 1514764000));
+    }
+
+    @Test
+    void pruneAndGrow() {
+        for (int i = 0; i < 1000; i++) {
+            revocations.revokeSignature("signature" + i, 1514764000 + i, 1514760000);
+            revocations.revokePathPrefix("/path/" + i + "/", 1514762000);
+        }
+        assertEquals(2000, revocations.size());
+        for (int i = 0; i < 1000; i++) {
+            assertTrue(revocations.isRevoked("/path/" + i + "/file", "signature" + i, 1514764000));
+        }
+        long hits = revocations.getFilterHitCount();
+        for (int i = 1000; i < 2000; i++) {
+            assertFalse(revocations.isRevoked("/path/" + i + "/file", "signature" + i, 1514764000));
+        }
+        // Few lookups of entries that are not there get past the filter
+        assertTrue(revocations.getFilterHitCount() - hits < 20);
+
+        assertEquals(500, revocations.prune(1514764500));
+        assertEquals(1500, revocations.size());
+        assertFalse(revocations.isRevoked(null, "signature499", 1514764000));
+        assertTrue(revocations.isRevoked(null, "signature500", 1514764000));
+
+        // Adding prunes once the oldest entry is past due
+        revocations.revokeSignature("late", 1514800000, 1514770000);
+        assertEquals(1, revocations.size());
+        assertTrue(revocations.isRevoked(null, "late", 1514770000));
+    }
+
+    @Test
+    void saveAndLoad() throws IOException {
+        Path file = dir.resolve("revoked.bin");
+        ByteArkRevocationList saved = new ByteArkRevocationList.Builder()
+                .withSnapshotFile(file)
+                .build();
+        for (int i = 0; i < 100; i++) {
+            saved.revokeSignature("signature" + i, 1514764800, 1514764000);
+        }
+        saved.revokePathPrefix("/live/สด/", 1514764000);
+        saved.save();
+        assertFalse(Files.exists(dir.resolve("revoked.bin.tmp")));
+
+        ByteArkRevocationList loaded = new ByteArkRevocationList.Builder()
+                .withSnapshotFile(file)
+                .build();
+        assertEquals(101, loaded.size());
+        assertTrue(loaded.isRevoked("/live/สด/1.ts", "signature42", 1514764700));
+        assertTrue(loaded.isRevoked(null, "signature99", 1514764700));
+        assertFalse(loaded.isRevoked("/live/other/1.ts", "signature100", 1514764700));
+        assertEquals(0, loaded.getFalsePositiveCount());
+
+        Files.write(file, new byte[]{1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13});
+        assertThrows(IOException.class, () -> new ByteArkRevocationList.Builder().withSnapshotFile(file).build());
+        assertThrows(IllegalStateException.class, () -> revocations.save());
+    }
+}
@@ -0,0 +1,70 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Signer lookup in a registry of 100k keys with 1024 cached signers:
+ * {@code hot} cycles through 512 keys that stay cached, {@code cold} through
+ * all keys, so nearly every lookup builds a signer from the mapped file.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class ByteArkSignerRegistryBenchmark {
+    static final int KEYS = 100_000;
+
+    @Param({"hot", "cold"})
+    public String tenants;
+
+    Path file;
+    ByteArkSignerRegistry registry;
+    String[] accessIds;
+    int next;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkSignerRegistryBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        file = Files.createTempFile("byteark-keys", ".txt");
+        try (BufferedWriter writer = Files.newBufferedWriter(file)) {
+            for (int i = 0; i < KEYS; i++) {
+                writer.write("tenant" + i + " 31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85" + i + "\n");
+            }
+        }
+        registry = new ByteArkSignerRegistry.Builder(file).withMaxSigners(1024).build();
+        accessIds = new String[tenants.equals("hot") ? 512 : KEYS];
+        for (int i = 0; i < accessIds.length; i++) {
+            // Spread over the key space so that cold lookups miss the cache
+            accessIds[i] = "tenant" + (int) ((long) i * 7919 % KEYS);
+        }
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public void getSigner(Blackhole bh) {
+        bh.consume(registry.getSigner(accessIds[next++ % accessIds.length]));
+    }
+}
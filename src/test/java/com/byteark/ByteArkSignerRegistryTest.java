@@ -0,0 +1,121 @@
+package com.byteark;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkSignerRegistryTest {
+    static final String URL = "https://example.cdn.byteark.com/path/to/file.png";
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void signWithKeyFromFile() throws IOException {
+        Path file = write("keys",
+                "# access id, secret\n"
+                        + "\n"
+                        + "2Aj6Wkge4hi1ZYLp0DBG 31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7\r\n"
+                        + "  other\t  other-secret  \n"
+                        + "other replaced-secret");
+        ByteArkSignerRegistry registry = new ByteArkSignerRegistry.Builder(file).build();
+        assertEquals(3, registry.size());
+        assertTrue(registry.contains("other"));
+        assertFalse(registry.contains("missing"));
+        assertNull(registry.getSigner("missing"));
+
+        ByteArkV2UrlSigner signer = registry.getSigner("2Aj6Wkge4hi1ZYLp0DBG");
+        assertEquals(
+                "https://example.cdn.byteark.com/path/to/file.png"
+                        + "?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG"
+                        + "&x_ark_auth_type=ark-v2"
+                        + "&x_ark_expires=1514764800"
+                        + "&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ",
+                signer.sign(URL, 1514764800));
+        assertSame(signer, registry.getSigner("2Aj6Wkge4hi1ZYLp0DBG"));
+        assertEquals(1, registry.getHitCount());
+        assertEquals(1, registry.getMissCount());
+
+        String expected = newSigner("other", "replaced-secret").sign(URL, 1514764800);
+        assertEquals(expected, registry.getSigner("other").sign(URL, 1514764800));
+    }
+
+    @Test
+    void boundCachedSigners() throws IOException {
+        StringBuilder keys = new StringBuilder();
+        for (int i = 0; i < 1000; i++) {
+            keys.append("tenant").append(i).append(" secret").append(i).append('\n');
+        }
+        ByteArkSignerRegistry registry = new ByteArkSignerRegistry.Builder(write("keys", keys.toString()))
+                .withMaxSigners(16)
+                .build();
+        for (int i = 0; i < 1000; i++) {
+            String expected = newSigner("tenant" + i, "secret" + i).sign(URL, 1514764800);
+            assertEquals(expected, registry.getSigner("tenant" + i).sign(URL, 1514764800));
+        }
+        assertEquals(1000, registry.getMissCount());
+        assertTrue(registry.getEvictionCount() >= 1000 - 16);
+    }
+
+    @Test
+    void reloadChangedFile() throws IOException {
+        AtomicLong now = new AtomicLong(1000);
+        Path file = write("keys", "a secret-a\nb secret-b\nc secret-c\n");
+        ByteArkSignerRegistry registry = new ByteArkSignerRegistry.Builder(file)
+                .withCheckInterval(10)
+                .withReloadExecutor(Runnable::run)
+                .withClock(now::get)
+                .build();
+        ByteArkV2UrlSigner a = registry.getSigner("a");
+        ByteArkV2UrlSigner b = registry.getSigner("b");
+        assertNotNull(registry.getSigner("c"));
+
+        Files.move(write("keys.new", "a secret-a\nb rotated-b\nd secret-d\n"), file,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        now.addAndGet(5);
+        assertSame(b, registry.getSigner("b"));
+
+        now.addAndGet(5);
+        assertSame(a, registry.getSigner("a"));
+        assertEquals(1, registry.getReloadCount());
+        ByteArkV2UrlSigner rotated = registry.getSigner("b");
+        assertNotSame(b, rotated);
+        assertEquals(newSigner("b", "rotated-b").sign(URL, 1514764800), rotated.sign(URL, 1514764800));
+        assertNull(registry.getSigner("c"));
+        assertNotNull(registry.getSigner("d"));
+
+        Files.move(write("keys.bad", "a secret-a\nb\n"), file,
+                StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        now.addAndGet(10);
+        assertSame(a, registry.getSigner("a"));
+        assertNotNull(registry.getLastReloadError());
+        assertSame(rotated, registry.getSigner("b"));
+        assertThrows(IOException.class, registry::reload);
+    }
+
+    Path write(String name, String content) throws IOException {
+        return Files.write(dir.resolve(name), content.getBytes(StandardCharsets.UTF_8));
+    }
+
+    static ByteArkV2UrlSigner newSigner(String accessId, String accessSecret) {
+        return new ByteArkV2UrlSigner.Builder()
+                .withAccessId(accessId)
+                .withAccessSecret(accessSecret)
+                .build();
+    }
+}
@@ -0,0 +1,116 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import java.net.MalformedURLException;
+import java.util.HashMap;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteArkV2KeyRingVerifierTest {
+    ByteArkV2KeyRingVerifier verifier;
+
+    @BeforeEach
+    void setup() {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("2Aj6Wkge4hi1ZYLp0DBG", "31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7");
+        keys.put("NewKey00000000000000", "NewSecret000000000000000000000000000000");
+        verifier = new ByteArkV2KeyRingVerifier(keys);
+    }
+
+    @Test
+    void verifyWithEachKey() throws MalformedURLException {
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                verifier.verifyResult("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+
+        String signed = verifier.getSigner("NewKey00000000000000")
+                .sign("https://example.cdn.byteark.com/path/to/file.png", 1514764800);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, verifier.verifyResult(signed, 1514764700));
+        // A signature made with one secret does not pass under another access id
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                verifier.verifyResult(signed.replace("NewKey00000000000000", "2Aj6Wkge4hi1ZYLp0DBG"), 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                verifier.verifyResult(
+                        ByteArkV2UrlSignerTest.bytes("example.cdn.byteark.com", false),
+                        ByteArkV2UrlSignerTest.bytes(signed.substring(signed.indexOf("/path")), true),
+                        1514764700));
+    }
+
+    @Test
+    void rotateKeys() throws MalformedURLException {
+        String url = "https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ";
+        verifier.removeKey("2Aj6Wkge4hi1ZYLp0DBG");
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE, verifier.verifyResult(url, 1514764700));
+        verifier.putKey("2Aj6Wkge4hi1ZYLp0DBG", "31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7");
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, verifier.verifyResult(url, 1514764700));
+        assertEquals(2, verifier.getAccessIds().size());
+    }
+
+    @Test
+    void passSignerOptionsToEveryKey() throws Exception {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("2Aj6Wkge4hi1ZYLp0DBG", "31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7");
+        keys.put("NewKey00000000000000", "NewSecret000000000000000000000000000000");
+        ByteArkRevocationList revocations = new ByteArkRevocationList.Builder().build();
+        ByteArkV2UrlSignerMetrics metrics = new ByteArkV2UrlSignerMetrics();
+        ByteArkV2KeyRingVerifier keyRing = new ByteArkV2KeyRingVerifier.Builder()
+                .withKeys(keys)
+                .withRevocationList(revocations)
+                .withListener(metrics)
+                .withVerifyCacheSize(16)
+                .build();
+
+        String url = "https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ";
+        String signed = keyRing.getSigner("NewKey00000000000000")
+                .sign("https://example.cdn.byteark.com/path/to/file.png", 1514764800);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, keyRing.verifyResult(url, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, keyRing.verifyResult(signed, 1514764700));
+        assertEquals(2, metrics.getVerifyCount());
+
+        revocations.revokeSignature("OsBgZpn9LTAJowa0UUhlYQ", 1514764800, 1514764700);
+        assertEquals(ByteArkSignedUrlVerifyResult.REVOKED, keyRing.verifyResult(url, 1514764700));
+        revocations.revokePathPrefix("/path/", 1514764700);
+        assertEquals(ByteArkSignedUrlVerifyResult.REVOKED, keyRing.verifyResult(signed, 1514764700));
+
+        assertThrows(IllegalArgumentException.class, () -> new ByteArkV2KeyRingVerifier.Builder().withVerifyCacheSize(1));
+    }
+
+    @Test
+    void reportUnknownKeysToListener() throws MalformedURLException {
+        Map<String, String> keys = new HashMap<>();
+        keys.put("NewKey00000000000000", "NewSecret000000000000000000000000000000");
+        ByteArkV2UrlSignerMetrics metrics = new ByteArkV2UrlSignerMetrics();
+        ByteArkV2KeyRingVerifier keyRing = new ByteArkV2KeyRingVerifier.Builder()
+                .withKeys(keys)
+                .withListener(metrics)
+                .build();
+
+        // Signed with a key that has left the ring
+        String url = "https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ";
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE, keyRing.verifyResult(url, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.MISSING_ACCESS_ID,
+                keyRing.verifyResult("example.cdn.byteark.com", "/path/to/file.png", "x_ark_expires=1514764800", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.MISSING_ACCESS_ID,
+                keyRing.verifyResult(
+                        ByteArkV2UrlSignerTest.bytes("example.cdn.byteark.com", false),
+                        ByteArkV2UrlSignerTest.bytes("/path/to/file.png", true),
+                        1514764700));
+
+        assertEquals(3, metrics.getVerifyCount());
+        assertEquals(1, metrics.getInvalidSignatureCount());
+        assertEquals(2, metrics.getVerifyCount(ByteArkSignedUrlVerifyResult.MISSING_ACCESS_ID));
+        assertEquals(2, metrics.getMissingParamCount());
+    }
+
+    @Test
+    void missingAccessId() {
+        assertEquals(ByteArkSignedUrlVerifyResult.MISSING_ACCESS_ID,
+                verifier.verifyResult("example.cdn.byteark.com", "/path/to/file.png", "x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+        ByteArkSignedUrlMissingParamException e = assertThrows(ByteArkSignedUrlMissingParamException.class,
+                () -> verifier.verify("example.cdn.byteark.com", "/path/to/file.png", "x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+        assertEquals("Missing query parameter 'x_ark_access_id'", e.getMessage());
+    }
+}
@@ -1,48 +1,285 @@
 package com.byteark;
 
 import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.format.ResultFormatType;
 import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
 import org.openjdk.jmh.runner.options.Options;
 import org.openjdk.jmh.runner.options.OptionsBuilder;
 
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.HashMap;
+import java.util.Map;
 import java.util.concurrent.TimeUnit;
 
-@State(Scope.Thread)
+/**
+ * Sign and verify throughput over URL length, sign options and inputs,
+ * with allocated bytes per operation from the GC profiler.
+ *
+ * <p>{@link #main(String[])} runs these together with the verify cache,
+ * metrics and policy router benchmarks and writes CSV results to
+ * {@code target/jmh-result.csv}; {@link BenchmarkBaselineCheck} compares
+ * them with the committed baseline. Both run with {@code mvn verify -Pbenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
 public class ByteArkV2UrlSignerBenchmark {
-
-    private ByteArkV2UrlSigner signer;
+    static final String HOST = "example.cdn.byteark.com";
+    static final long EXPIRES = 1514764800;
+    static final long NOW = 1514764700;
 
     public static void main(String[] args) throws Exception {
         Options opt = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
                 .include(ByteArkV2UrlSignerBenchmark.class.getName() + ".*")
-                .forks(1)
-                .jvmArgs("-Xmx64M", "-Xmx64M")
-                .mode(Mode.Throughput)
-                .timeUnit(TimeUnit.SECONDS)
+                .include(ByteArkVerifyCacheBenchmark.class.getName() + ".*")
+                .include(ByteArkV2UrlSignerMetricsBenchmark.class.getName() + ".*")
+                .include(ByteArkPolicyRouterBenchmark.class.getName() + ".*")
+                .addProfiler(GCProfiler.class)
+                .resultFormat(ResultFormatType.CSV)
+                .result("target/jmh-result.csv")
                 .build();
 
         new Runner(opt).run();
     }
 
-    @Setup
-    public void setup() {
-        signer = new ByteArkV2UrlSigner.Builder()
+    static ByteArkV2UrlSigner newSigner(boolean skipUrlEncoding) {
+        return new ByteArkV2UrlSigner.Builder()
                 .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
                 .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withSkipUrlEncoding(skipUrlEncoding)
                 .build();
     }
 
+    /**
+     * A path of about {@code length} characters under /live/.
+     */
+    static String makePath(int length) {
+        StringBuilder sb = new StringBuilder("/live/");
+        int segment = 0;
+        while (sb.length() < length - 12) {
+            sb.append("dir-").append(segment++).append('/');
+        }
+        return sb.append("playlist.m3u8").toString();
+    }
+
+    /**
+     * The first {@code count} of: method, path_prefix, geo_allow, then
+     * custom policies.
+     */
+    static Map<String, String> makeOptions(int count) {
+        Map<String, String> options = new HashMap<>();
+        if (count > 0) {
+            options.put("method", "GET");
+        }
+        if (count > 1) {
+            options.put("path_prefix", "/live/");
+        }
+        if (count > 2) {
+            options.put("geo_allow", "TH,SG");
+        }
+        for (int i = 3; i < count; i++) {
+            options.put("custom_policy_" + i, "value " + i);
+        }
+        return options;
+    }
+
+    static ByteBuffer directBytes(String s) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = ByteBuffer.allocateDirect(bytes.length);
+        buffer.put(bytes).flip();
+        return buffer;
+    }
+
+    @State(Scope.Thread)
+    public static class SignState {
+        @Param({"32", "256"})
+        public int urlLength;
+
+        @Param({"0", "1", "3", "6"})
+        public int optionCount;
+
+        @Param({"false", "true"})
+        public boolean skipUrlEncoding;
+
+        ByteArkV2UrlSigner signer;
+        String url;
+        Map<String, String> options;
+        ByteArkV2UrlSigner.PreparedPolicy policy;
+        StringBuilder buffer;
+        ByteBuffer urlBytes;
+        ByteBuffer out;
+
+        @Setup
+        public void setup() {
+            signer = newSigner(skipUrlEncoding);
+            url = "https://" + HOST + makePath(urlLength);
+            options = makeOptions(optionCount);
+            policy = signer.prepare(options);
+            buffer = new StringBuilder(512);
+            urlBytes = directBytes(url);
+            out = ByteBuffer.allocateDirect(1024);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class VerifyState {
+        @Param({"32", "256"})
+        public int urlLength;
+
+        // Only options that travel in the query can be verified
+        @Param({"0", "2"})
+        public int policyCount;
+
+        @Param({"valid", "expired", "tampered"})
+        public String input;
+
+        ByteArkV2UrlSigner signer;
+        String url;
+        String path;
+        String query;
+        long now;
+        ByteBuffer hostBytes;
+        ByteBuffer targetBytes;
+
+        @Setup
+        public void setup() {
+            signer = newSigner(false);
+            path = makePath(urlLength);
+            Map<String, String> options = new HashMap<>();
+            if (policyCount > 0) {
+                options.put("path_prefix", "/live/");
+                options.put("geo_allow", "TH,SG");
+            }
+            query = signer.makeSignedQueryParams(HOST, path, EXPIRES, options);
+            now = NOW;
+            if (input.equals("expired")) {
+                now = EXPIRES + 1;
+            } else if (input.equals("tampered")) {
+                query = query.replace("x_ark_signature=", "x_ark_signature=A");
+            }
+            url = "https://" + HOST + path + "?" + query;
+            hostBytes = directBytes(HOST);
+            targetBytes = directBytes(path + "?" + query);
+
+            ByteArkSignedUrlVerifyResult expected = input.equals("valid")
+                    ? ByteArkSignedUrlVerifyResult.OK
+                    : input.equals("expired")
+                    ? ByteArkSignedUrlVerifyResult.EXPIRED
+                    : ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE;
+            if (signer.verifyResult(HOST, path, query, now) != expected) {
+                throw new IllegalStateException("Unexpected verify result for " + input + " input");
+            }
+        }
+    }
+
+    /**
+     * Rotates through URLs under one long path. With {@code pathPrefix} the
+     * string to sign before expires is the same for all of them and its MD5
+     * state is reused; without it, every URL has its own prefix.
+     */
+    @State(Scope.Thread)
+    public static class PrefixState {
+        @Param({"128", "1024"})
+        public int pathLength;
+
+        @Param({"0", "8"})
+        public int policyLines;
+
+        @Param({"false", "true"})
+        public boolean pathPrefix;
+
+        ByteArkV2UrlSigner signer;
+        ByteArkV2UrlSigner.PreparedPolicy policy;
+        String[] urls = new String[16];
+        int next;
+
+        @Setup
+        public void setup() {
+            signer = newSigner(false);
+            String dir = makePath(pathLength);
+            dir = dir.substring(0, dir.lastIndexOf('/') + 1);
+            for (int i = 0; i < urls.length; i++) {
+                urls[i] = "https://" + HOST + dir + "segment-" + i + ".ts";
+            }
+            Map<String, String> options = new HashMap<>();
+            if (pathPrefix) {
+                options.put("path_prefix", dir);
+            }
+            for (int i = 0; i < policyLines; i++) {
+                options.put("custom_policy_" + i, "value " + i);
+            }
+            policy = signer.prepare(options);
+        }
+
+        String nextUrl() {
+            String url = urls[next];
+            next = (next + 1) % urls.length;
+            return url;
+        }
+    }
+
+    @Benchmark
+    public void benchmarkSign(SignState state, Blackhole bh) {
+        bh.consume(state.signer.sign(state.url, EXPIRES, state.options));
+    }
+
+    @Benchmark
+    public void benchmarkSignPrepared(SignState state, Blackhole bh) {
+        bh.consume(state.signer.signPrepared(state.url, EXPIRES, state.policy));
+    }
+
+    @Benchmark
+    public void benchmarkSignInto(SignState state, Blackhole bh) {
+        StringBuilder buffer = state.buffer;
+        buffer.setLength(0);
+        bh.consume(state.signer.signPrepared(state.url, EXPIRES, state.policy, buffer));
+    }
+
+    @Benchmark
+    public void benchmarkSignByteBuffer(SignState state, Blackhole bh) {
+        ByteBuffer out = state.out;
+        out.clear();
+        bh.consume(state.signer.sign(state.urlBytes, EXPIRES, state.policy, out));
+    }
+
+    @Benchmark
+    public void benchmarkSignLongPrefix(PrefixState state, Blackhole bh) {
+        bh.consume(state.signer.signPrepared(state.nextUrl(), EXPIRES, state.policy));
+    }
+
+    @Benchmark
+    public void benchmarkVerify(VerifyState state, Blackhole bh) throws MalformedURLException {
+        try {
+            state.signer.verify(state.url, state.now);
+            bh.consume(true);
+        } catch (ByteArkSignedUrlMissingParamException
+                | ByteArkSignedUrlInvalidConditionException
+                | ByteArkSignedUrlExpiredException
+                | ByteArkSignedUrlInvalidSignatureException e) {
+            bh.consume(e);
+        }
+    }
+
+    @Benchmark
+    public void benchmarkVerifyResult(VerifyState state, Blackhole bh) throws MalformedURLException {
+        bh.consume(state.signer.verifyResult(state.url, state.now));
+    }
+
     @Benchmark
-    public void benchmarkSign() {
-        String signedUrl = signer.sign(
-                "https://example.cdn.byteark.com/path/to/file.png",
-                1514764800
-        );
+    public void benchmarkVerifyResultRawQuery(VerifyState state, Blackhole bh) {
+        bh.consume(state.signer.verifyResult(HOST, state.path, state.query, state.now));
     }
 
     @Benchmark
-    public void benchmarkVerify() throws MalformedURLException, ByteArkSignedUrlMissingParamException, ByteArkSignedUrlInvalidConditionException, ByteArkSignedUrlExpiredException, ByteArkSignedUrlInvalidSignatureException {
-        signer.verify("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700);
+    public void benchmarkVerifyResultByteBuffer(VerifyState state, Blackhole bh) {
+        bh.consume(state.signer.verifyResult(state.hostBytes, state.targetBytes, state.now));
     }
 }
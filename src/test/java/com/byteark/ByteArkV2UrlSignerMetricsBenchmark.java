@@ -0,0 +1,97 @@
+package com.byteark;
+
+import jdk.jfr.Recording;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of the metrics listener: {@code none} is a signer without a
+ * listener, {@code metrics} counts and records latency, and
+ * {@code recording} additionally has a JFR recording with the verify
+ * event enabled, so every failed verification is committed.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class ByteArkV2UrlSignerMetricsBenchmark {
+    static final String HOST = "example.cdn.byteark.com";
+    static final String PATH = "/live/1080p/playlist.m3u8";
+    static final long EXPIRES = 1514764800;
+    static final long NOW = 1514764700;
+
+    @Param({"none", "metrics", "recording"})
+    public String listener;
+
+    ByteArkV2UrlSigner signer;
+    ByteArkV2UrlSigner.PreparedPolicy policy;
+    String url;
+    String validQuery;
+    String tamperedQuery;
+    StringBuilder buffer = new StringBuilder(512);
+    Recording recording;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkV2UrlSignerMetricsBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        ByteArkV2UrlSigner.Builder builder = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7");
+        if (!listener.equals("none")) {
+            builder.withListener(new ByteArkV2UrlSignerMetrics());
+        }
+        if (listener.equals("recording")) {
+            recording = new Recording();
+            recording.enable("com.byteark.Verify");
+            recording.setToDisk(false);
+            recording.setMaxSize(16 << 20);
+            recording.start();
+        }
+        signer = builder.build();
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        policy = signer.prepare(options);
+        url = "https://" + HOST + PATH;
+        validQuery = signer.makeSignedQueryParams(HOST, PATH, EXPIRES, options);
+        tamperedQuery = validQuery.replace("x_ark_signature=", "x_ark_signature=A");
+    }
+
+    @TearDown
+    public void tearDown() {
+        if (recording != null) {
+            recording.close();
+        }
+    }
+
+    @Benchmark
+    public void sign(Blackhole bh) {
+        buffer.setLength(0);
+        bh.consume(signer.signPrepared(url, EXPIRES, policy, buffer));
+    }
+
+    @Benchmark
+    public void verifyValid(Blackhole bh) {
+        bh.consume(signer.verifyResult(HOST, PATH, validQuery, NOW));
+    }
+
+    @Benchmark
+    public void verifyTampered(Blackhole bh) {
+        bh.consume(signer.verifyResult(HOST, PATH, tamperedQuery, NOW));
+    }
+}
@@ -0,0 +1,99 @@
+package com.byteark;
+
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArkV2UrlSignerMetricsTest {
+    static final String HOST = "example.cdn.byteark.com";
+
+    ByteArkV2UrlSignerMetrics metrics;
+    ByteArkV2UrlSigner signer;
+
+    @BeforeEach
+    void setup() {
+        metrics = new ByteArkV2UrlSignerMetrics(1, TimeUnit.HOURS);
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withListener(metrics)
+                .build();
+    }
+
+    @Test
+    void countOutcomes() {
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        String query = signer.makeSignedQueryParams(HOST, "/live/playlist.m3u8", 1514764800, options);
+        signer.signPrepared("https://example.cdn.byteark.com/live/1.ts", 1514764800, signer.prepare(options));
+        assertEquals(2, metrics.getSignCount());
+        assertEquals(2, metrics.getSignLatency().getCount());
+
+        signer.verifyResult(HOST, "/live/playlist.m3u8", query, 1514764700);
+        signer.verifyResult(HOST, "/live/playlist.m3u8", query, 1514764900);
+        signer.verifyResult(HOST, "/vod/playlist.m3u8", query, 1514764700);
+        signer.verifyResult(HOST, "/live/playlist.m3u8", query.replace("x_ark_signature=", "x_ark_signature=A"), 1514764700);
+        signer.verifyResult(HOST, "/live/playlist.m3u8", "x_ark_expires=1514764800", 1514764700);
+
+        assertEquals(5, metrics.getVerifyCount());
+        assertEquals(1, metrics.getSuccessCount());
+        assertEquals(1, metrics.getExpiredCount());
+        assertEquals(1, metrics.getInvalidConditionCount());
+        assertEquals(1, metrics.getInvalidSignatureCount());
+        assertEquals(1, metrics.getMissingParamCount());
+        assertEquals(5, metrics.getVerifyLatency().getCount());
+        assertEquals(100, metrics.getTimeToExpiry().getMax());
+    }
+
+    @Test
+    void histogramPercentiles() {
+        ByteArkHistogram histogram = new ByteArkHistogram();
+        assertEquals(0, histogram.getValueAtPercentile(99));
+        for (long v = 1; v <= 1000; v++) {
+            histogram.record(v * 1000);
+        }
+        assertEquals(1000, histogram.getCount());
+        assertEquals(1_000_000, histogram.getMax());
+        long p50 = histogram.getValueAtPercentile(50);
+        long p99 = histogram.getValueAtPercentile(99);
+        assertTrue(p50 >= 500_000 && p50 <= 500_000 * 17 / 16, "p50 " + p50);
+        assertTrue(p99 >= 990_000 && p99 <= 1_000_000, "p99 " + p99);
+        assertEquals(1_000_000, histogram.getValueAtPercentile(100));
+
+        for (long v : new long[]{0, 15, 16, 17, 1000, Long.MAX_VALUE}) {
+            int bucket = ByteArkHistogram.bucketOf(v);
+            assertTrue(ByteArkHistogram.upperBoundOf(bucket) >= v);
+            assertTrue(bucket == 0 || ByteArkHistogram.upperBoundOf(bucket - 1) < v);
+        }
+    }
+
+    @Test
+    void emitJfrEventsForFailures(@TempDir Path dir) throws Exception {
+        String query = signer.makeSignedQueryParams(HOST, "/path/to/file.png", 1514764800, null);
+        Path file = dir.resolve("verify.jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable("com.byteark.Verify");
+            recording.start();
+            signer.verifyResult(HOST, "/path/to/file.png", query, 1514764700);
+            signer.verifyResult(HOST, "/path/to/file.png", query, 1514764900);
+            recording.stop();
+            recording.dump(file);
+        }
+        List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+        assertEquals(1, events.size());
+        assertEquals("EXPIRED", events.get(0).getString("result"));
+        assertEquals("/path/to/file.png", events.get(0).getString("path"));
+    }
+}
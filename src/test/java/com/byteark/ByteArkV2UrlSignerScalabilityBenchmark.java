@@ -0,0 +1,139 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.infra.ThreadParams;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Throughput of one signer shared by many threads.
+ *
+ * <p>{@link #main(String[])} runs the sign and verify benchmarks with 1, 2,
+ * 4, ... threads up to twice the available processors and prints the
+ * speedup over one thread; a signer without contention scales linearly up
+ * to the number of cores. The {@code mixed} group signs and verifies
+ * concurrently, as a server doing both would.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms512M", "-Xmx512M"})
+public class ByteArkV2UrlSignerScalabilityBenchmark {
+    static final String HOST = "example.cdn.byteark.com";
+    static final long EXPIRES = 1514764800;
+    static final long NOW = 1514764700;
+
+    public static void main(String[] args) throws Exception {
+        int maxThreads = Runtime.getRuntime().availableProcessors() * 2;
+        Map<String, Map<Integer, Double>> scores = new TreeMap<>();
+        for (int threads = 1; threads <= maxThreads; threads *= 2) {
+            Options opt = new OptionsBuilder()
+                    .parent(new CommandLineOptions(args))
+                    .include(ByteArkV2UrlSignerScalabilityBenchmark.class.getName() + ".(sign|verify)$")
+                    .threads(threads)
+                    .build();
+            Collection<RunResult> results = new Runner(opt).run();
+            for (RunResult result : results) {
+                scores.computeIfAbsent(result.getParams().getBenchmark(), k -> new TreeMap<>())
+                        .put(threads, result.getPrimaryResult().getScore());
+            }
+        }
+
+        System.out.println();
+        System.out.printf("%-80s %8s %14s %8s%n", "Benchmark", "Threads", "ops/s", "Speedup");
+        for (Map.Entry<String, Map<Integer, Double>> benchmark : scores.entrySet()) {
+            double single = benchmark.getValue().get(1);
+            for (Map.Entry<Integer, Double> score : benchmark.getValue().entrySet()) {
+                System.out.printf("%-80s %8d %14.0f %8.2f%n",
+                        benchmark.getKey(), score.getKey(), score.getValue(), score.getValue() / single);
+            }
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class SharedSigner {
+        ByteArkV2UrlSigner signer;
+        ByteArkV2UrlSigner.PreparedPolicy policy;
+
+        @Setup
+        public void setup() {
+            signer = new ByteArkV2UrlSigner.Builder()
+                    .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                    .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                    .build();
+            Map<String, String> options = new HashMap<>();
+            options.put("path_prefix", "/live/");
+            options.put("geo_allow", "TH,SG");
+            policy = signer.prepare(options);
+        }
+    }
+
+    /**
+     * URLs of the calling thread, distinct from other threads' URLs.
+     */
+    @State(Scope.Thread)
+    public static class Requests {
+        static final int COUNT = 64;
+
+        final List<String> urls = new ArrayList<>();
+        final List<String> paths = new ArrayList<>();
+        final List<String> queries = new ArrayList<>();
+        int next;
+
+        @Setup
+        public void setup(SharedSigner shared, ThreadParams threadParams) {
+            for (int i = 0; i < COUNT; i++) {
+                String path = "/live/" + threadParams.getThreadIndex() + "/" + i + "/playlist.m3u8";
+                String url = "https://" + HOST + path;
+                String signed = shared.signer.signPrepared(url, EXPIRES, shared.policy);
+                urls.add(url);
+                paths.add(path);
+                queries.add(signed.substring(signed.indexOf('?') + 1));
+            }
+        }
+
+        int next() {
+            int i = next;
+            next = (i + 1) % COUNT;
+            return i;
+        }
+    }
+
+    @Benchmark
+    public void sign(SharedSigner shared, Requests requests, Blackhole bh) {
+        bh.consume(shared.signer.signPrepared(requests.urls.get(requests.next()), EXPIRES, shared.policy));
+    }
+
+    @Benchmark
+    public void verify(SharedSigner shared, Requests requests, Blackhole bh) {
+        int i = requests.next();
+        bh.consume(shared.signer.verifyResult(HOST, requests.paths.get(i), requests.queries.get(i), NOW));
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(1)
+    public void mixedSign(SharedSigner shared, Requests requests, Blackhole bh) {
+        sign(shared, requests, bh);
+    }
+
+    @Benchmark
+    @Group("mixed")
+    @GroupThreads(3)
+    public void mixedVerify(SharedSigner shared, Requests requests, Blackhole bh) {
+        verify(shared, requests, bh);
+    }
+}
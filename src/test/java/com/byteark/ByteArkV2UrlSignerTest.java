@@ -3,11 +3,25 @@ package com.byteark;
 import org.junit.jupiter.api.BeforeEach;
 import org.junit.jupiter.api.Test;
 
+import java.io.IOException;
+import java.io.StringWriter;
 import java.net.MalformedURLException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.Future;
+import java.util.stream.Collectors;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
 import static org.junit.jupiter.api.Assertions.assertThrows;
 
 class ByteArkV2UrlSignerTest {
@@ -32,6 +46,25 @@ class ByteArkV2UrlSignerTest {
                 signedUrl);
     }
 
+    @Test
+    void signUrlWithQuery() throws MalformedURLException {
+        String signedUrl = signer.sign(
+                "https://example.cdn.byteark.com/path/to/file.png?w=100&h=50#top",
+                1514764800
+        );
+        assertEquals(
+                "https://example.cdn.byteark.com/path/to/file.png?w=100&h=50&x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ#top",
+                signedUrl);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(signedUrl, 1514764700));
+
+        // Signing a signed URL again replaces its signed parameters
+        String resigned = signer.signPrepared(signedUrl, 1514768400, signer.prepare(null));
+        assertEquals(signer.sign("https://example.cdn.byteark.com/path/to/file.png?w=100&h=50#top", 1514768400), resigned);
+        assertEquals(Arrays.asList(resigned),
+                signer.signAll(Arrays.asList(signedUrl), 1514768400, null));
+        assertThrows(RuntimeException.class, () -> signer.sign("/path/to/file.png", 1514764800));
+    }
+
     @Test
     void signHLS() {
         Map<String, String> options = new HashMap<>();
@@ -46,6 +79,252 @@ class ByteArkV2UrlSignerTest {
                 signedUrl);
     }
 
+    @Test
+    void signWithPolicies() {
+        Map<String, String> options = new HashMap<>();
+        options.put("Method", "HEAD");
+        options.put("path_prefix", "/live/");
+        options.put("Geo-Allow", "TH,SG");
+        options.put("client_ip", "103.253.132.65");
+        String signedUrl = signer.sign(
+                "https://example.cdn.byteark.com/live/playlist.m3u8",
+                1514764800,
+                options
+        );
+        assertEquals(
+                "https://example.cdn.byteark.com/live/playlist.m3u8?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_client_ip=1&x_ark_expires=1514764800&x_ark_geo_allow=TH%2CSG&x_ark_path_prefix=%2Flive%2F&x_ark_signature=JWJgfXiwXfflWdOmU7jrYg",
+                signedUrl);
+
+        ByteArkV2UrlSigner rawSigner = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withSkipUrlEncoding(true)
+                .build();
+        assertEquals(
+                "https://example.cdn.byteark.com/live/playlist.m3u8?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_client_ip=1&x_ark_expires=1514764800&x_ark_geo_allow=TH,SG&x_ark_path_prefix=/live/&x_ark_signature=JWJgfXiwXfflWdOmU7jrYg",
+                rawSigner.sign("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764800, options));
+    }
+
+    @Test
+    void signWithClientIpRange() throws MalformedURLException {
+        Map<String, String> options = new HashMap<>();
+        options.put("client_ip_range", "203.0.113.0/24,2001:db8::/32");
+        String signedUrl = signer.sign("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764800, options);
+        // The networks are carried in the query, not "1" as for client_ip, so verify can check them
+        assertEquals(
+                "https://example.cdn.byteark.com/live/playlist.m3u8?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_client_ip_range=203.0.113.0%2F24%2C2001%3Adb8%3A%3A%2F32&x_ark_expires=1514764800&x_ark_signature=XHP8FNjp1ciMqVfiC7Amsw",
+                signedUrl);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(signedUrl, "203.0.113.9", 1514764700));
+    }
+
+    @Test
+    void signIntoBuffer() throws IOException {
+        StringBuilder sb = new StringBuilder("<a href=\"");
+        signer.sign("https://example.cdn.byteark.com/path/to/file.png", 1514764800, null, sb);
+        assertEquals(
+                "<a href=\"https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ",
+                sb.toString());
+
+        StringWriter writer = new StringWriter();
+        signer.sign("https://example.cdn.byteark.com/path/to/file.png", 1514764800, null, (Appendable) writer);
+        assertEquals(
+                "https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ",
+                writer.toString());
+    }
+
+    @Test
+    void signIntoByteBuffer() {
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        options.put("geo_allow", "TH,SG");
+        ByteArkV2UrlSigner.PreparedPolicy policy = signer.prepare(options);
+        String[] urls = {
+                "https://example.cdn.byteark.com/live/playlist.m3u8",
+                "https://user@example.cdn.byteark.com:8443/live/720p/playlist.m3u8",
+                "http://[::1]:8080/live/segment.ts",
+                "https://example.cdn.byteark.com/live/1.ts?token=a&x_ark_expires=1#t=5",
+        };
+        for (String url : urls) {
+            for (boolean direct : new boolean[]{false, true}) {
+                ByteBuffer in = bytes("xx" + url, direct);
+                in.position(2);
+                ByteBuffer out = direct ? ByteBuffer.allocateDirect(512) : ByteBuffer.allocate(512);
+                out.put((byte) '>');
+                signer.sign(in, 1514764800, policy, out);
+                assertEquals(2, in.position());
+                assertEquals(">" + signer.signPrepared(url, 1514764800, policy), string(out));
+            }
+        }
+
+        ByteBuffer out = ByteBuffer.allocate(256);
+        signer.makeSignedQueryParams(
+                bytes("example.cdn.byteark.com", true),
+                bytes("/live/playlist.m3u8", false),
+                1514764800,
+                policy,
+                out);
+        assertEquals(
+                signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/playlist.m3u8", 1514764800, options),
+                string(out));
+    }
+
+    @Test
+    void signWithPreparedPolicy() {
+        Map<String, String> options = new HashMap<>();
+        options.put("Method", "HEAD");
+        options.put("path_prefix", "/live/");
+        options.put("Geo-Allow", "TH,SG");
+        options.put("client_ip", "103.253.132.65");
+        ByteArkV2UrlSigner.PreparedPolicy policy = signer.prepare(options);
+        options.clear();
+        assertEquals(
+                "https://example.cdn.byteark.com/live/playlist.m3u8?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_client_ip=1&x_ark_expires=1514764800&x_ark_geo_allow=TH%2CSG&x_ark_path_prefix=%2Flive%2F&x_ark_signature=JWJgfXiwXfflWdOmU7jrYg",
+                signer.signPrepared("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764800, policy));
+        assertEquals(
+                "https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ",
+                signer.signPrepared("https://example.cdn.byteark.com/path/to/file.png", 1514764800, signer.prepare(null)));
+
+        ByteArkV2UrlSigner otherSigner = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .build();
+        assertThrows(IllegalArgumentException.class,
+                () -> otherSigner.signPrepared("https://example.cdn.byteark.com/live/playlist.m3u8", 1514764800, policy));
+    }
+
+    @Test
+    void signWithSharedPrefix() throws Exception {
+        // Long enough for the string to sign before expires to span MD5 blocks
+        StringBuilder prefix = new StringBuilder("/live/");
+        while (prefix.length() < 150) {
+            prefix.append("event-2018/");
+        }
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", prefix.toString());
+        options.put("custom_policy_a", "first value");
+        options.put("custom_policy_b", "second value");
+        ByteArkV2UrlSigner.PreparedPolicy policy = signer.prepare(options);
+
+        for (int i = 0; i < 4; i++) {
+            String url = "https://example.cdn.byteark.com" + prefix + "segment-" + i + ".ts";
+            long expires = 1514764800 + i;
+            // A fresh thread has never seen the prefix, so it hashes from scratch
+            ExecutorService fresh = Executors.newSingleThreadExecutor();
+            String expected = fresh.submit(() -> signer.sign(url, expires, options)).get();
+            fresh.shutdown();
+
+            assertEquals(expected, signer.sign(url, expires, options));
+            assertEquals(expected, signer.signPrepared(url, expires, policy));
+        }
+    }
+
+    @Test
+    void signAll() {
+        List<String> urls = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            urls.add("https://example.cdn.byteark.com/live/segment-" + i + ".ts");
+        }
+        urls.add("https://other.cdn.byteark.com/live/playlist.m3u8");
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+
+        List<String> expected = new ArrayList<>();
+        for (String url : urls) {
+            expected.add(signer.sign(url, 1514764800, options));
+        }
+        assertEquals(expected, signer.signAll(urls, 1514764800, options));
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            assertEquals(expected, signer.signAll(urls, 1514764800, options, pool));
+        } finally {
+            pool.shutdown();
+        }
+        assertEquals(expected,
+                signer.signAll(urls.stream().parallel(), 1514764800, options).collect(Collectors.toList()));
+
+        List<String> paths = Arrays.asList(
+                "https://example.cdn.byteark.com/path/to/file.png",
+                "https://example.cdn.byteark.com/path/to/file.png",
+                "https://example.cdn.byteark.com/path/to/other.png");
+        List<String> signedPaths = signer.signAll(paths, 1514764800, null);
+        for (int i = 0; i < paths.size(); i++) {
+            assertEquals(signer.sign(paths.get(i), 1514764800), signedPaths.get(i));
+        }
+
+        // Only queries shared through path_prefix are kept, one per host up to the cap
+        Map<String, String> queries = new HashMap<>();
+        ByteArkV2UrlSigner.PreparedPolicy perPath = signer.prepare(null);
+        for (int i = 0; i < 10; i++) {
+            signer.sharedQueryParams("example.cdn.byteark.com", "/live/" + i + ".ts", 1514764800, perPath, queries);
+        }
+        assertEquals(0, queries.size());
+        ByteArkV2UrlSigner.PreparedPolicy shared = signer.prepare(options);
+        for (int i = 0; i < ByteArkV2UrlSigner.MAX_SHARED_QUERIES + 10; i++) {
+            signer.sharedQueryParams("host" + i + ".cdn.byteark.com", "/live/1.ts", 1514764800, shared, queries);
+        }
+        assertEquals(10, queries.size());
+    }
+
+    @Test
+    void signAndVerifyConcurrently() throws Exception {
+        // Distinct inputs, some long enough to outgrow the per-thread buffers
+        int inputs = 64;
+        String[] urls = new String[inputs];
+        String[] paths = new String[inputs];
+        List<Map<String, String>> options = new ArrayList<>();
+        List<ByteArkV2UrlSigner.PreparedPolicy> policies = new ArrayList<>();
+        String[] expected = new String[inputs];
+        for (int i = 0; i < inputs; i++) {
+            StringBuilder path = new StringBuilder("/live/").append(i);
+            while (i % 8 == 0 && path.length() < 10000) {
+                path.append("/segment");
+            }
+            paths[i] = path.append("/playlist.m3u8").toString();
+            urls[i] = "https://example.cdn.byteark.com" + paths[i];
+            Map<String, String> o = new HashMap<>();
+            if (i % 2 == 1) {
+                o.put("path_prefix", "/live/" + i + "/");
+            }
+            if (i % 3 == 1) {
+                o.put("geo_allow", "TH,SG");
+            }
+            options.add(o);
+            policies.add(signer.prepare(o));
+            expected[i] = signer.sign(urls[i], 1514764800, o);
+        }
+
+        int threads = 8;
+        ExecutorService pool = Executors.newFixedThreadPool(threads);
+        try {
+            CountDownLatch start = new CountDownLatch(1);
+            List<Future<?>> futures = new ArrayList<>();
+            for (int t = 0; t < threads; t++) {
+                int offset = t * 7;
+                futures.add(pool.submit(() -> {
+                    start.await();
+                    for (int n = 0; n < 2000; n++) {
+                        int i = (offset + n) % inputs;
+                        String signed = signer.sign(urls[i], 1514764800, options.get(i));
+                        assertEquals(expected[i], signed);
+                        assertEquals(expected[i], signer.signPrepared(urls[i], 1514764800, policies.get(i)));
+                        String query = signed.substring(signed.indexOf('?') + 1);
+                        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                                signer.verifyResult("example.cdn.byteark.com", paths[i], query, 1514764700));
+                        assertNotEquals(ByteArkSignedUrlVerifyResult.OK,
+                                signer.verifyResult("example.cdn.byteark.com", paths[(i + 1) % inputs], query, 1514764700));
+                    }
+                    return null;
+                }));
+            }
+            start.countDown();
+            for (Future<?> future : futures) {
+                future.get();
+            }
+        } finally {
+            pool.shutdownNow();
+        }
+    }
+
     @Test
     void verify() throws MalformedURLException,
             ByteArkSignedUrlInvalidConditionException,
@@ -72,6 +351,132 @@ class ByteArkV2UrlSignerTest {
         );
     }
 
+    @Test
+    void verifyResult() throws MalformedURLException {
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.EXPIRED,
+                signer.verifyResult("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514769900));
+        ByteArkSignedUrlVerifyResult missing = signer.verifyResult("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800", 1514764700);
+        assertEquals(ByteArkSignedUrlVerifyResult.MISSING_SIGNATURE, missing);
+        assertEquals("x_ark_signature", missing.getMissingParam());
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                signer.verifyResult("https://example.cdn.byteark.com/live2/playlist.m3u8?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_path_prefix=%2Flive%2F&x_ark_signature=7JGsff2mBQEOoSYHTjxiVQ", 1514761000));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                signer.verifyResult("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=15147648OO&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700));
+
+        ByteArkSignedUrlMissingParamException e = assertThrows(ByteArkSignedUrlMissingParamException.class,
+                () -> signer.verify("https://example.cdn.byteark.com/path/to/file.png?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ", 1514764700)
+        );
+        assertEquals("Missing query parameter 'x_ark_expires'", e.getMessage());
+        assertEquals(0, e.getStackTrace().length);
+    }
+
+    @Test
+    void verifySplitRequest() throws ByteArkSignedUrlInvalidConditionException,
+            ByteArkSignedUrlExpiredException,
+            ByteArkSignedUrlInvalidSignatureException,
+            ByteArkSignedUrlMissingParamException {
+        signer.verify("example.cdn.byteark.com", "/live/playlist.m3u8",
+                "x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_path_prefix=%2Flive%2F&x_ark_signature=7JGsff2mBQEOoSYHTjxiVQ",
+                1514764700);
+        // Unrelated parameters are ignored and encoded keys are decoded
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("example.cdn.byteark.com", "/live/playlist.m3u8",
+                        "start=10&x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x%5Fark%5Fexpires=1514764800&x_ark_path_prefix=/live/&x_ark_signature=7JGsff2mBQEOoSYHTjxiVQ&token",
+                        1514764700));
+        Map<String, String> options = new HashMap<>();
+        options.put("path_prefix", "/live/");
+        options.put("geo_allow", "TH,SG");
+        String query = signer.makeSignedQueryParams("example.cdn.byteark.com", "/live/1080p/playlist.m3u8", 1514764800, options);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("example.cdn.byteark.com", "/live/720p/playlist.m3u8", query, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                signer.verifyResult("example.cdn.byteark.com", "/live/720p/playlist.m3u8",
+                        query.replace("TH%2CSG", "TH%2CMY"), 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.MISSING_EXPIRES,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", null, 1514764700));
+    }
+
+    @Test
+    void verifyByteBuffer() {
+        String query = "x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_path_prefix=%2Flive%2F&x_ark_signature=7JGsff2mBQEOoSYHTjxiVQ";
+        for (boolean direct : new boolean[]{false, true}) {
+            ByteBuffer host = bytes("example.cdn.byteark.com", direct);
+            ByteBuffer target = bytes("/live/playlist.m3u8?start=10&" + query + "#t=5", direct);
+            assertEquals(ByteArkSignedUrlVerifyResult.OK, signer.verifyResult(host, target, 1514764700));
+            assertEquals(0, target.position());
+            assertEquals(ByteArkSignedUrlVerifyResult.EXPIRED, signer.verifyResult(host, target, 1514764801));
+            assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                    signer.verifyResult(host, bytes("/vod/playlist.m3u8?" + query, direct), 1514764700));
+            assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                    signer.verifyResult(bytes("other.cdn.byteark.com", direct), target, 1514764700));
+            assertEquals(ByteArkSignedUrlVerifyResult.MISSING_EXPIRES,
+                    signer.verifyResult(host, bytes("/live/playlist.m3u8", direct), 1514764700));
+        }
+    }
+
+    @Test
+    void verifyClientConditions() {
+        ByteArkIpTrie geoIp = new ByteArkIpTrie.Builder()
+                .add("103.253.132.0/22", "TH")
+                .add("2001:db8::/32", "SG")
+                .add("198.51.100.0/24", "US")
+                .build();
+        ByteArkV2UrlSigner geoSigner = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withGeoIp(geoIp)
+                .withVerifyCache(new ByteArkVerifyCache(16))
+                .build();
+        String host = "example.cdn.byteark.com";
+        String path = "/live/playlist.m3u8";
+
+        // client_ip is signed in place of the value in the query
+        Map<String, String> options = new HashMap<>();
+        options.put("client_ip", "103.253.132.65");
+        options.put("geo_allow", "TH,SG");
+        String query = geoSigner.makeSignedQueryParams(host, path, 1514764800, options);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, query, "103.253.132.65", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, query, "103.253.132.65", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                geoSigner.verifyResult(host, path, query, "103.253.132.66", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, query, "198.51.100.7", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, query, "not-an-ip", 1514764700));
+
+        options.clear();
+        options.put("client_ip_range", "203.0.113.0/24, 2001:db8:1::/48");
+        String rangeQuery = geoSigner.makeSignedQueryParams(host, path, 1514764800, options);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, rangeQuery, "203.0.113.200", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, rangeQuery, "[2001:db8:1:ff::1]", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, rangeQuery, "203.0.114.1", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, rangeQuery, "2001:db8:2::1", 1514764700));
+        // Without a client address the conditions are not checked
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, rangeQuery, 1514764700));
+
+        options.clear();
+        options.put("geo_allow", "sg");
+        String geoQuery = geoSigner.makeSignedQueryParams(host, path, 1514764800, options);
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                geoSigner.verifyResult(host, path, geoQuery, "2001:db8::1", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, geoQuery, "103.253.132.65", 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_CONDITION,
+                geoSigner.verifyResult(host, path, geoQuery, "192.0.2.1", 1514764700));
+        // Without a table geo_allow is left to the CDN
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult(host, path, geoQuery, "192.0.2.1", 1514764700));
+    }
+
     @Test
     void makeQueryParams() {
         String signedQueryParams = signer.makeSignedQueryParams(
@@ -84,4 +489,18 @@ class ByteArkV2UrlSignerTest {
                 "x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ",
                 signedQueryParams);
     }
+    static ByteBuffer bytes(String s, boolean direct) {
+        byte[] bytes = s.getBytes(StandardCharsets.US_ASCII);
+        ByteBuffer buffer = direct ? ByteBuffer.allocateDirect(bytes.length) : ByteBuffer.allocate(bytes.length);
+        buffer.put(bytes);
+        buffer.flip();
+        return buffer;
+    }
+
+    static String string(ByteBuffer written) {
+        written.flip();
+        byte[] bytes = new byte[written.remaining()];
+        written.get(bytes);
+        return new String(bytes, StandardCharsets.US_ASCII);
+    }
 }
@@ -0,0 +1,76 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class ByteArkVerifyCacheBenchmark {
+    private static final int HOT_URLS = 64;
+    private static final int COLD_URLS = 1 << 16;
+
+    @Param({"0", "50", "90", "99"})
+    public int hitPercent;
+
+    @Param({"true", "false"})
+    public boolean cached;
+
+    private ByteArkV2UrlSigner signer;
+    private String[] hotPaths;
+    private String[] hotQueries;
+    private String[] coldPaths;
+    private String[] coldQueries;
+    private int next;
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArkVerifyCacheBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() {
+        ByteArkV2UrlSigner.Builder builder = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7");
+        if (cached) {
+            // Much smaller than the cold set, so cold URLs have been evicted by the time they repeat
+            builder.withVerifyCache(new ByteArkVerifyCache(4096));
+        }
+        signer = builder.build();
+
+        hotPaths = new String[HOT_URLS];
+        hotQueries = new String[HOT_URLS];
+        for (int i = 0; i < HOT_URLS; i++) {
+            hotPaths[i] = "/live/hot/segment-" + i + ".ts";
+            hotQueries[i] = signer.makeSignedQueryParams("example.cdn.byteark.com", hotPaths[i], 1514764800, null);
+        }
+        coldPaths = new String[COLD_URLS];
+        coldQueries = new String[COLD_URLS];
+        for (int i = 0; i < COLD_URLS; i++) {
+            coldPaths[i] = "/vod/cold/segment-" + i + ".ts";
+            coldQueries[i] = signer.makeSignedQueryParams("example.cdn.byteark.com", coldPaths[i], 1514764800, null);
+        }
+    }
+
+    @Benchmark
+    public ByteArkSignedUrlVerifyResult verify() {
+        int n = next++;
+        if (n % 100 < hitPercent) {
+            int i = n & (HOT_URLS - 1);
+            return signer.verifyResult("example.cdn.byteark.com", hotPaths[i], hotQueries[i], 1514764700);
+        }
+        int i = n & (COLD_URLS - 1);
+        return signer.verifyResult("example.cdn.byteark.com", coldPaths[i], coldQueries[i], 1514764700);
+    }
+}
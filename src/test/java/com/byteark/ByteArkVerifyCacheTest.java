@@ -0,0 +1,80 @@
+package com.byteark;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ByteArkVerifyCacheTest {
+    ByteArkVerifyCache cache;
+    ByteArkV2UrlSigner signer;
+
+    @BeforeEach
+    void setup() {
+        cache = new ByteArkVerifyCache(16);
+        signer = new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("31sX5C0lcBiWuGPTzRszYvjxzzI3aCZjJi85ZyB7")
+                .withVerifyCache(cache)
+                .build();
+    }
+
+    @Test
+    void cachesValidUrls() {
+        String query = "x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ";
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", query, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", query, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", "t=1&" + query, 1514764700));
+        assertEquals(1, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        // Rejections are never cached
+        String tampered = query.replace("OsBgZpn9LTAJowa0UUhlYQ", "OsBgZpn9LTAJowa0UUhlY4");
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", tampered, 1514764700));
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", tampered, 1514764700));
+        assertEquals(1, cache.size());
+        assertEquals(ByteArkSignedUrlVerifyResult.INVALID_SIGNATURE,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/other.png", query, 1514764700));
+    }
+
+    @Test
+    void evictsAtExpiry() {
+        String query = "x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=OsBgZpn9LTAJowa0UUhlYQ";
+        signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", query, 1514764700);
+        signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", query, 1514764700);
+        assertEquals(1, cache.size());
+        assertEquals(ByteArkSignedUrlVerifyResult.EXPIRED,
+                signer.verifyResult("example.cdn.byteark.com", "/path/to/file.png", query, 1514764801));
+        cache.purgeExpired(1514764801);
+        assertEquals(0, cache.size());
+        assertEquals(1, cache.getEvictionCount());
+    }
+
+    @Test
+    void staysBounded() {
+        for (int i = 0; i < 100; i++) {
+            String query = signer.makeSignedQueryParams("example.cdn.byteark.com", "/path/" + i + ".png", 1514764800, null);
+            for (int j = 0; j < 2; j++) {
+                assertEquals(ByteArkSignedUrlVerifyResult.OK,
+                        signer.verifyResult("example.cdn.byteark.com", "/path/" + i + ".png", query, 1514764700));
+            }
+        }
+        assertEquals(16, cache.size());
+        assertEquals(84, cache.getEvictionCount());
+    }
+
+    @Test
+    void belongsToOneSigner() {
+        assertThrows(IllegalStateException.class, () -> new ByteArkV2UrlSigner.Builder()
+                .withAccessId("2Aj6Wkge4hi1ZYLp0DBG")
+                .withAccessSecret("another")
+                .withVerifyCache(cache)
+                .build());
+    }
+}
@@ -0,0 +1,57 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The {@link ByteArrays} helpers on an access log line. Run it with
+ * {@code target/classes} on the class path for the Java 8 versions and
+ * with the jar for the versions the running JDK picks.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class ByteArraysBenchmark {
+    static final String LINE = "203.0.113.9 - - [01/Jan/2018:00:00:00 +0000] "
+            + "\"GET /vod/2019/09/movie/720p/segment-00042.ts?x_ark_access_id=2Aj6Wkge4hi1ZYLp0DBG"
+            + "&x_ark_auth_type=ark-v2&x_ark_expires=1514764800&x_ark_signature=cLwtn96a-YPY7jt8ZKSf_Q HTTP/1.1\" "
+            + "200 1048576 \"-\" \"Mozilla/5.0\"\n";
+
+    byte[] line = LINE.getBytes(StandardCharsets.US_ASCII);
+    byte[] copy = line.clone();
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(ByteArraysBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public int indexOfNewline() {
+        return ByteArrays.indexOf(line, (byte) '\n', 0, line.length);
+    }
+
+    @Benchmark
+    public boolean equalsLine() {
+        return ByteArrays.equals(line, copy, line.length);
+    }
+
+    @Benchmark
+    public int getIntLE() {
+        int h = 0;
+        for (int i = 0; i + 4 <= 64; i += 4) {
+            h += ByteArrays.getIntLE(line, i);
+        }
+        return h;
+    }
+}
@@ -0,0 +1,53 @@
+package com.byteark;
+
+import org.junit.jupiter.api.Test;
+
+import java.nio.charset.StandardCharsets;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ByteArraysTest {
+    @Test
+    void getIntLE() {
+        byte[] b = {0x01, 0x02, 0x03, 0x04, (byte) 0xff, (byte) 0xfe, (byte) 0xfd, (byte) 0x80};
+        assertEquals(0x04030201, ByteArrays.getIntLE(b, 0));
+        assertEquals(0x80fdfeff, ByteArrays.getIntLE(b, 4));
+        assertEquals(0xff040302, ByteArrays.getIntLE(b, 1));
+    }
+
+    @Test
+    void equalsComparesPrefix() {
+        byte[] a = "/live/ch7/720p".getBytes(StandardCharsets.US_ASCII);
+        byte[] b = "/live/ch7/480p".getBytes(StandardCharsets.US_ASCII);
+        assertTrue(ByteArrays.equals(a, b, 10));
+        assertFalse(ByteArrays.equals(a, b, 11));
+        assertTrue(ByteArrays.equals(a, b, 0));
+    }
+
+    @Test
+    void indexOf() {
+        byte[] b = new byte[40];
+        for (int i = 0; i < b.length; i++) {
+            b[i] = (byte) ('a' + i % 20);
+        }
+        assertEquals(b.length, ByteArrays.indexOf(b, (byte) '\n', 0, b.length));
+        for (int i = 0; i < b.length; i++) {
+            byte old = b[i];
+            b[i] = '\n';
+            for (int from = 0; from <= i; from++) {
+                assertEquals(i, ByteArrays.indexOf(b, (byte) '\n', from, b.length));
+            }
+            assertEquals(i, ByteArrays.indexOf(b, (byte) '\n', 0, i));
+            b[i] = old;
+        }
+        // The first match wins within a word, and bytes at or over 0x80 match exactly
+        b[9] = (byte) 0x81;
+        b[11] = (byte) 0x80;
+        b[13] = (byte) 0x80;
+        assertEquals(11, ByteArrays.indexOf(b, (byte) 0x80, 0, b.length));
+        assertEquals(9, ByteArrays.indexOf(b, (byte) 0x81, 0, b.length));
+        assertEquals(b.length, ByteArrays.indexOf(b, (byte) 0, 0, b.length));
+    }
+}
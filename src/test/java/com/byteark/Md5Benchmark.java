@@ -0,0 +1,75 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.security.DigestException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The built-in MD5 against {@link MessageDigest}, and resuming from the
+ * saved state of a prefix that leaves only {@code tailLength} bytes to hash.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class Md5Benchmark {
+    @Param({"64", "256", "1024"})
+    public int length;
+
+    // Expires, newline and a 40-character secret
+    @Param({"51"})
+    public int tailLength;
+
+    byte[] input;
+    byte[] out = new byte[16];
+    MessageDigest messageDigest;
+    Md5 md5 = new Md5();
+    Md5 prefix = new Md5();
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(Md5Benchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Setup
+    public void setup() throws NoSuchAlgorithmException {
+        input = new byte[length + tailLength];
+        new Random(1).nextBytes(input);
+        messageDigest = MessageDigest.getInstance("MD5");
+        prefix.update(input, 0, length);
+    }
+
+    @Benchmark
+    public byte[] messageDigest() throws DigestException {
+        messageDigest.update(input, 0, input.length);
+        messageDigest.digest(out, 0, 16);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] md5() {
+        md5.update(input, 0, input.length);
+        md5.digest(out, 0);
+        return out;
+    }
+
+    @Benchmark
+    public byte[] md5ResumePrefix() {
+        md5.copyFrom(prefix);
+        md5.update(input, length, tailLength);
+        md5.digest(out, 0);
+        return out;
+    }
+}
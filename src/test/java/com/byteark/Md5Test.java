@@ -0,0 +1,52 @@
+package com.byteark;
+
+import org.junit.jupiter.api.Test;
+
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Random;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+
+class Md5Test {
+    @Test
+    void matchesMessageDigest() throws NoSuchAlgorithmException {
+        MessageDigest expected = MessageDigest.getInstance("MD5");
+        Md5 md5 = new Md5();
+        Random random = new Random(42);
+        byte[] out = new byte[16];
+        for (int length = 0; length < 300; length++) {
+            byte[] input = new byte[length];
+            random.nextBytes(input);
+            // Feed in uneven pieces to cross block boundaries
+            int off = 0;
+            while (off < length) {
+                int n = Math.min(length - off, 1 + random.nextInt(70));
+                md5.update(input, off, n);
+                off += n;
+            }
+            md5.digest(out, 0);
+            assertArrayEquals(expected.digest(input), out, "length " + length);
+        }
+    }
+
+    @Test
+    void resumesFromCopiedState() throws NoSuchAlgorithmException {
+        MessageDigest expected = MessageDigest.getInstance("MD5");
+        Random random = new Random(7);
+        byte[] out = new byte[16];
+        for (int prefixLength = 0; prefixLength < 200; prefixLength += 13) {
+            byte[] input = new byte[prefixLength + 40];
+            random.nextBytes(input);
+            Md5 prefix = new Md5();
+            prefix.update(input, 0, prefixLength);
+            Md5 md5 = new Md5();
+            for (int i = 0; i < 2; i++) {
+                md5.copyFrom(prefix);
+                md5.update(input, prefixLength, 40);
+                md5.digest(out, 0);
+                assertArrayEquals(expected.digest(input), out, "prefix " + prefixLength);
+            }
+        }
+    }
+}
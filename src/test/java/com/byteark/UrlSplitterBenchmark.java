@@ -0,0 +1,56 @@
+package com.byteark;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.net.MalformedURLException;
+import java.net.URL;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Extracting host, path and query for signing: {@link UrlSplitter} against
+ * {@link java.net.URL}, which {@code sign} used before.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = {"-Xms256M", "-Xmx256M"})
+@State(Scope.Thread)
+public class UrlSplitterBenchmark {
+    @Param({
+            "https://example.cdn.byteark.com/live/1080p/playlist.m3u8",
+            "https://user@example.cdn.byteark.com:8443/vod/2019/09/movie/720p/segment-00042.ts?w=100&h=50#t=10",
+    })
+    public String url;
+
+    UrlSplitter splitter = new UrlSplitter();
+
+    public static void main(String[] args) throws Exception {
+        Options opt = new OptionsBuilder()
+                .include(UrlSplitterBenchmark.class.getName() + ".*")
+                .build();
+
+        new Runner(opt).run();
+    }
+
+    @Benchmark
+    public void javaNetUrl(Blackhole bh) throws MalformedURLException {
+        URL parsed = new URL(url);
+        bh.consume(parsed.getHost());
+        bh.consume(parsed.getPath());
+        bh.consume(parsed.getQuery());
+    }
+
+    @Benchmark
+    public void urlSplitter(Blackhole bh) {
+        splitter.split(url);
+        bh.consume(splitter.host.length());
+        bh.consume(splitter.path.length());
+        bh.consume(splitter.query.length());
+        splitter.clear();
+    }
+}